@@ -0,0 +1,309 @@
+/*
+ * Copyright 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput;
+
+import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.media.tv.TvContract;
+import android.net.Uri;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An in-memory stand-in for TvProvider, for measuring the sync and the tune lookups without the
+ * variance of the system database. Reach it through a {@link android.test.mock.MockContentResolver}
+ * which only the benchmark uses, so that the rest of the process keeps talking to TvProvider.
+ *
+ * <p>It supports the URIs the app uses: the channels of an input, a channel, the programs of a
+ * channel with or without a time range, and a program. Selections aren't supported. Every call
+ * takes the configured latency, and an {@code applyBatch} counts as a single call.
+ */
+public final class FakeTvProvider extends ContentProvider {
+    // TvContract.PARAM_INPUT and the others are hidden.
+    private static final String PARAM_INPUT = "input";
+    private static final String PARAM_CHANNEL = "channel";
+    private static final String PARAM_START_TIME = "start_time";
+    private static final String PARAM_END_TIME = "end_time";
+    private static final String PATH_CHANNEL = "channel";
+    private static final String PATH_PROGRAM = "program";
+
+    // The row IDs start far above the ones of TvProvider, so that they are never mistaken for
+    // real channels or programs, e.g. by a cache that outlives the benchmark.
+    private static final long FIRST_ROW_ID = 1L << 40;
+
+    private final Map<Long, ContentValues> mChannels = new TreeMap<>();
+    private final Map<Long, ContentValues> mPrograms = new HashMap<>();
+    // The programs of each channel, by row ID.
+    private final Map<Long, Map<Long, ContentValues>> mChannelPrograms = new HashMap<>();
+    private long mNextRowId = FIRST_ROW_ID;
+
+    private long mCallLatencyUs;
+    private long mRowLatencyUs;
+    private int mBatchDepth;
+
+    private static final Comparator<ContentValues> START_TIME_ORDER =
+            new Comparator<ContentValues>() {
+                @Override
+                public int compare(ContentValues lhs, ContentValues rhs) {
+                    int result = Long.compare(
+                            getLong(lhs, TvContract.Programs.COLUMN_START_TIME_UTC_MILLIS),
+                            getLong(rhs, TvContract.Programs.COLUMN_START_TIME_UTC_MILLIS));
+                    return result != 0 ? result : Long.compare(
+                            getLong(lhs, TvContract.Programs._ID),
+                            getLong(rhs, TvContract.Programs._ID));
+                }
+            };
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    /**
+     * Sets how long each call takes. A call which reads or writes {@code n} rows takes
+     * {@code callLatencyUs + n * rowLatencyUs}.
+     */
+    public synchronized void setLatency(long callLatencyUs, long rowLatencyUs) {
+        mCallLatencyUs = callLatencyUs;
+        mRowLatencyUs = rowLatencyUs;
+    }
+
+    public synchronized int getChannelCount() {
+        return mChannels.size();
+    }
+
+    public synchronized int getProgramCount() {
+        return mPrograms.size();
+    }
+
+    @Override
+    public synchronized Cursor query(Uri uri, String[] projection, String selection,
+            String[] selectionArgs, String sortOrder) {
+        checkNoSelection(selection);
+        List<ContentValues> rows = new ArrayList<>();
+        String table = getTable(uri);
+        Long id = getId(uri);
+        if (PATH_CHANNEL.equals(table)) {
+            String inputId = uri.getQueryParameter(PARAM_INPUT);
+            for (ContentValues channel : id != null ? singleton(mChannels.get(id))
+                    : mChannels.values()) {
+                String channelInputId = channel.getAsString(TvContract.Channels.COLUMN_INPUT_ID);
+                if (inputId == null || inputId.equals(channelInputId)) {
+                    rows.add(channel);
+                }
+            }
+        } else {
+            String channelId = uri.getQueryParameter(PARAM_CHANNEL);
+            Iterable<ContentValues> programs;
+            if (id != null) {
+                programs = singleton(mPrograms.get(id));
+            } else if (channelId != null) {
+                Map<Long, ContentValues> channelPrograms =
+                        mChannelPrograms.get(Long.parseLong(channelId));
+                programs = channelPrograms != null ? channelPrograms.values()
+                        : Collections.<ContentValues>emptyList();
+            } else {
+                programs = mPrograms.values();
+            }
+            String startTime = uri.getQueryParameter(PARAM_START_TIME);
+            String endTime = uri.getQueryParameter(PARAM_END_TIME);
+            for (ContentValues program : programs) {
+                // The same overlap test as TvProvider, which includes both ends.
+                if (startTime == null || (getLong(program,
+                        TvContract.Programs.COLUMN_START_TIME_UTC_MILLIS) <= Long.parseLong(endTime)
+                        && getLong(program, TvContract.Programs.COLUMN_END_TIME_UTC_MILLIS)
+                                >= Long.parseLong(startTime))) {
+                    rows.add(program);
+                }
+            }
+            Collections.sort(rows, START_TIME_ORDER);
+        }
+        if (projection == null) {
+            projection = getColumns(rows);
+        }
+        MatrixCursor cursor = new MatrixCursor(projection, rows.size());
+        for (ContentValues row : rows) {
+            Object[] values = new Object[projection.length];
+            for (int i = 0; i < projection.length; ++i) {
+                values[i] = row.get(projection[i]);
+            }
+            cursor.addRow(values);
+        }
+        simulateLatency(rows.size());
+        return cursor;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return null;
+    }
+
+    @Override
+    public synchronized Uri insert(Uri uri, ContentValues values) {
+        long id = mNextRowId++;
+        ContentValues row = new ContentValues(values);
+        row.put(TvContract.BaseTvColumns._ID, id);
+        if (PATH_CHANNEL.equals(getTable(uri))) {
+            mChannels.put(id, row);
+            simulateLatency(1);
+            return TvContract.buildChannelUri(id);
+        }
+        mPrograms.put(id, row);
+        getChannelPrograms(row).put(id, row);
+        simulateLatency(1);
+        return TvContract.buildProgramUri(id);
+    }
+
+    @Override
+    public synchronized int update(Uri uri, ContentValues values, String selection,
+            String[] selectionArgs) {
+        checkNoSelection(selection);
+        Long id = getId(uri);
+        boolean isChannel = PATH_CHANNEL.equals(getTable(uri));
+        ContentValues row = id == null ? null : (isChannel ? mChannels : mPrograms).get(id);
+        if (row == null) {
+            simulateLatency(0);
+            return 0;
+        }
+        if (!isChannel) {
+            getChannelPrograms(row).remove(id);
+        }
+        row.putAll(values);
+        row.put(TvContract.BaseTvColumns._ID, id);
+        if (!isChannel) {
+            getChannelPrograms(row).put(id, row);
+        }
+        simulateLatency(1);
+        return 1;
+    }
+
+    @Override
+    public synchronized int delete(Uri uri, String selection, String[] selectionArgs) {
+        checkNoSelection(selection);
+        Long id = getId(uri);
+        int count = 0;
+        if (id != null && PATH_CHANNEL.equals(getTable(uri))) {
+            if (mChannels.remove(id) != null) {
+                count++;
+                // The programs of a channel go with it, like in TvProvider.
+                Map<Long, ContentValues> channelPrograms = mChannelPrograms.remove(id);
+                if (channelPrograms != null) {
+                    mPrograms.keySet().removeAll(channelPrograms.keySet());
+                    count += channelPrograms.size();
+                }
+            }
+        } else if (id != null) {
+            ContentValues row = mPrograms.remove(id);
+            if (row != null) {
+                getChannelPrograms(row).remove(id);
+                count++;
+            }
+        } else {
+            throw new IllegalArgumentException("Deleting all rows is not supported: " + uri);
+        }
+        simulateLatency(count);
+        return count;
+    }
+
+    @Override
+    public synchronized ContentProviderResult[] applyBatch(
+            ArrayList<ContentProviderOperation> operations) throws OperationApplicationException {
+        // The operations take only their row latency. The call latency is paid once.
+        mBatchDepth++;
+        try {
+            return super.applyBatch(operations);
+        } finally {
+            mBatchDepth--;
+            simulateLatency(0);
+        }
+    }
+
+    private Map<Long, ContentValues> getChannelPrograms(ContentValues program) {
+        long channelId = getLong(program, TvContract.Programs.COLUMN_CHANNEL_ID);
+        Map<Long, ContentValues> channelPrograms = mChannelPrograms.get(channelId);
+        if (channelPrograms == null) {
+            channelPrograms = new HashMap<>();
+            mChannelPrograms.put(channelId, channelPrograms);
+        }
+        return channelPrograms;
+    }
+
+    private void simulateLatency(int rows) {
+        long latencyUs = (mBatchDepth > 0 ? 0 : mCallLatencyUs) + rows * mRowLatencyUs;
+        if (latencyUs <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(latencyUs / 1000, (int) (latencyUs % 1000) * 1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String getTable(Uri uri) {
+        List<String> segments = uri.getPathSegments();
+        String table = segments.isEmpty() ? null : segments.get(0);
+        if (!PATH_CHANNEL.equals(table) && !PATH_PROGRAM.equals(table)) {
+            throw new IllegalArgumentException("Unsupported URI: " + uri);
+        }
+        return table;
+    }
+
+    private static Long getId(Uri uri) {
+        return uri.getPathSegments().size() > 1 ? ContentUris.parseId(uri) : null;
+    }
+
+    private static void checkNoSelection(String selection) {
+        if (selection != null) {
+            throw new IllegalArgumentException("Selections are not supported: " + selection);
+        }
+    }
+
+    private static List<ContentValues> singleton(ContentValues row) {
+        return row != null ? Collections.singletonList(row)
+                : Collections.<ContentValues>emptyList();
+    }
+
+    private static String[] getColumns(List<ContentValues> rows) {
+        List<String> columns = new ArrayList<>();
+        for (ContentValues row : rows) {
+            for (String column : row.keySet()) {
+                if (!columns.contains(column)) {
+                    columns.add(column);
+                }
+            }
+        }
+        return columns.toArray(new String[columns.size()]);
+    }
+
+    private static long getLong(ContentValues values, String column) {
+        Long value = values.getAsLong(column);
+        return value != null ? value : 0;
+    }
+}
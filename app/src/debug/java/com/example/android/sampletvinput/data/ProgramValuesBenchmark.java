@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput.data;
+
+import android.content.ContentValues;
+import android.media.tv.TvContentRating;
+import android.media.tv.TvContract;
+import android.os.SystemClock;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the time of {@link Program#toContentValues} and {@link ProgramValuesCache} on the
+ * device, for a channel which repeats a few programs over and over like the channels of the sample
+ * feed. Run it on a debug build with {@code adb shell dumpsys activity service
+ * com.example.android.sampletvinput/.syncadapter.SyncService benchmark-values [programs]}. The
+ * allocations can be compared with the allocation tracker of DDMS while it runs.
+ */
+public final class ProgramValuesBenchmark {
+    private static final int DISTINCT_PROGRAMS = 8;
+    private static final long PROGRAM_DURATION_MS = 1000 * 60 * 30;  // 30 min
+    private static final int RUNS = 5;
+
+    private ProgramValuesBenchmark() {
+    }
+
+    public static void run(PrintWriter writer, int programCount) {
+        List<Program> programs = createPrograms(programCount);
+        // Warm up so that neither run pays for class loading and the JIT.
+        serialize(programs, null);
+        serialize(programs, new ProgramValuesCache());
+
+        writer.println("Serialized " + programCount + " programs with " + DISTINCT_PROGRAMS
+                + " distinct contents, best of " + RUNS + " runs:");
+        writer.println("  toContentValues:    " + measure(programs, false) / 1000 + "us");
+        writer.println("  ProgramValuesCache: " + measure(programs, true) / 1000 + "us");
+    }
+
+    /**
+     * Returns the shortest time of the runs, which is the one least disturbed by the GC and the
+     * rest of the system.
+     */
+    private static long measure(List<Program> programs, boolean useCache) {
+        long minTimeNs = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; ++i) {
+            long startNs = SystemClock.elapsedRealtimeNanos();
+            serialize(programs, useCache ? new ProgramValuesCache() : null);
+            minTimeNs = Math.min(minTimeNs, SystemClock.elapsedRealtimeNanos() - startNs);
+        }
+        return minTimeNs;
+    }
+
+    private static int serialize(List<Program> programs, ProgramValuesCache cache) {
+        // Use the values so that the work can't be skipped.
+        int size = 0;
+        for (Program program : programs) {
+            ContentValues values =
+                    cache != null ? cache.toContentValues(program) : program.toContentValues();
+            size += values.size();
+        }
+        return size;
+    }
+
+    private static List<Program> createPrograms(int programCount) {
+        TvContentRating[] ratings = {
+                TvContentRating.createRating("com.android.tv", "US_TV", "US_TV_PG",
+                        "US_TV_D", "US_TV_L")};
+        String[] genres = {TvContract.Programs.Genres.MOVIES, TvContract.Programs.Genres.DRAMA};
+        List<Program> programs = new ArrayList<>(programCount);
+        long startMs = System.currentTimeMillis();
+        for (int i = 0; i < programCount; ++i) {
+            int content = i % DISTINCT_PROGRAMS;
+            programs.add(new Program.Builder()
+                    .setChannelId(1)
+                    .setTitle("Program " + content)
+                    .setDescription("Description of program " + content)
+                    .setPosterArtUri("http://example.com/poster/" + content + ".png")
+                    .setCanonicalGenres(genres)
+                    .setContentRatings(ratings)
+                    .setInternalProviderData("0,http://example.com/video/" + content + ".mp4")
+                    .setStartTimeUtcMillis(startMs + i * PROGRAM_DURATION_MS)
+                    .setEndTimeUtcMillis(startMs + (i + 1) * PROGRAM_DURATION_MS)
+                    .build());
+        }
+        return programs;
+    }
+}
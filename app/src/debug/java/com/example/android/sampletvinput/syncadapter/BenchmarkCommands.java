@@ -0,0 +1,84 @@
+/*
+ * Copyright 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput.syncadapter;
+
+import android.content.Context;
+
+import com.example.android.sampletvinput.data.ProgramValuesBenchmark;
+
+import java.io.PrintWriter;
+
+/**
+ * The dump commands which run the benchmarks. They only exist in debug builds.
+ */
+final class BenchmarkCommands {
+    private static final String USAGE_VALUES = "Usage: benchmark-values [programs]";
+    private static final String USAGE_SYNC =
+            "Usage: benchmark-sync [call latency us] [row latency us]";
+    private static final int PROGRAM_COUNT = 10000;
+    // Keeps the programs of a run well within the heap.
+    private static final int MAX_PROGRAM_COUNT = 1000000;
+    // Roughly what a call and a row cost in TvProvider on a low-end device.
+    private static final long CALL_LATENCY_US = 2000;
+    private static final long ROW_LATENCY_US = 20;
+
+    private BenchmarkCommands() {
+    }
+
+    /**
+     * Runs the benchmark named by the first argument, if any.
+     *
+     * @return Whether the arguments named a benchmark.
+     */
+    static boolean run(Context context, PrintWriter writer, String[] args) {
+        if (args.length > 0 && "benchmark-values".equals(args[0])) {
+            long programCount = parseArg(args, 1, PROGRAM_COUNT);
+            if (args.length > 2 || programCount <= 0 || programCount > MAX_PROGRAM_COUNT) {
+                writer.println(USAGE_VALUES);
+            } else {
+                ProgramValuesBenchmark.run(writer, (int) programCount);
+            }
+            return true;
+        }
+        if (args.length > 0 && "benchmark-sync".equals(args[0])) {
+            long callLatencyUs = parseArg(args, 1, CALL_LATENCY_US);
+            long rowLatencyUs = parseArg(args, 2, ROW_LATENCY_US);
+            if (args.length > 3 || callLatencyUs < 0 || rowLatencyUs < 0) {
+                writer.println(USAGE_SYNC);
+            } else {
+                SyncBenchmark.run(context, writer, callLatencyUs, rowLatencyUs);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return The argument at the given index, the default if there is none, or -1 if it isn't a
+     *         number.
+     */
+    private static long parseArg(String[] args, int index, long defaultValue) {
+        if (args.length <= index) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(args[index]);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
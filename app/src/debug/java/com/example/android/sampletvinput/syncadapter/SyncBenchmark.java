@@ -0,0 +1,134 @@
+/*
+ * Copyright 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput.syncadapter;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SyncResult;
+import android.media.tv.TvContract;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.test.mock.MockContentResolver;
+
+import com.example.android.sampletvinput.FakeTvProvider;
+import com.example.android.sampletvinput.InstrumentedResolver;
+import com.example.android.sampletvinput.TvContractUtils;
+import com.example.android.sampletvinput.rich.RichFeedUtil;
+import com.example.android.sampletvinput.xmltv.XmlTvParser;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs full syncs and tune lookups of the rich feed against a {@link FakeTvProvider} with a fixed
+ * latency, so that the numbers depend on the sync code only and not on the state of TvProvider.
+ *
+ * <p>It runs an initial sync, a sync of the unchanged feed, which only appends, and a sync after
+ * the sync state is cleared, which compares all the programs, followed by a lookup of the current
+ * program of every channel. The sync goes through a resolver and a sync state of its own, so
+ * neither TvProvider nor the state of the real syncs is touched, even if one runs meanwhile.
+ */
+final class SyncBenchmark {
+    // The input ID of the channels in the fake provider, so that their sync state is never mixed
+    // up with the one of a real input.
+    private static final String INPUT_ID = "benchmark";
+    private static final String SYNC_STATE_PREFS_NAME = "sync_state_benchmark";
+    private static final long TUNE_LOOKAHEAD_MS = 1000 * 60 * 60 * 6;  // 6 hours
+
+    private SyncBenchmark() {
+    }
+
+    /**
+     * @param callLatencyUs How long every call to the provider takes.
+     * @param rowLatencyUs How long every row read or written takes, in addition.
+     */
+    static void run(Context context, PrintWriter writer, long callLatencyUs, long rowLatencyUs) {
+        XmlTvParser.TvListing listings = RichFeedUtil.getRichTvListings(context);
+        if (listings == null) {
+            writer.println("Failed to load the feed");
+            return;
+        }
+        FakeTvProvider provider = new FakeTvProvider();
+        provider.setLatency(callLatencyUs, rowLatencyUs);
+        MockContentResolver resolver = new MockContentResolver();
+        resolver.addProvider(TvContract.AUTHORITY, provider);
+        InstrumentedResolver.markFake(resolver);
+        SyncStateStore syncStateStore = new SyncStateStore(context, SYNC_STATE_PREFS_NAME);
+        syncStateStore.clear(INPUT_ID);
+        try {
+            List<Uri> channelUris = insertChannels(resolver, listings.channels);
+            writer.println("Benchmark: channels=" + channelUris.size() + " feedPrograms="
+                    + listings.programs.size() + " callLatency=" + callLatencyUs + "us rowLatency="
+                    + rowLatencyUs + "us");
+
+            SyncAdapter syncAdapter = new SyncAdapter(context, resolver, syncStateStore);
+            runSync(syncAdapter, listings, "initial", writer);
+            runSync(syncAdapter, listings, "unchanged", writer);
+            // Without the watermarks, every channel is compared with the feed.
+            syncStateStore.clear(INPUT_ID);
+            runSync(syncAdapter, listings, "diff", writer);
+            writer.println("programs=" + provider.getProgramCount());
+
+            long tuneStartNs = SystemClock.elapsedRealtimeNanos();
+            long maxTuneNs = 0;
+            int misses = 0;
+            for (Uri channelUri : channelUris) {
+                long startNs = SystemClock.elapsedRealtimeNanos();
+                long nowMs = System.currentTimeMillis();
+                if (TvContractUtils.getProgramPlaybackInfo(resolver, channelUri, nowMs,
+                        nowMs + TUNE_LOOKAHEAD_MS, 1).isEmpty()) {
+                    misses++;
+                }
+                maxTuneNs = Math.max(maxTuneNs, SystemClock.elapsedRealtimeNanos() - startNs);
+            }
+            long tuneNs = SystemClock.elapsedRealtimeNanos() - tuneStartNs;
+            writer.println("tune: lookups=" + channelUris.size() + " misses=" + misses + " avg="
+                    + (channelUris.isEmpty() ? 0 : tuneNs / channelUris.size() / 1000)
+                    + "us max=" + maxTuneNs / 1000 + "us");
+        } finally {
+            syncStateStore.clear(INPUT_ID);
+        }
+    }
+
+    private static List<Uri> insertChannels(ContentResolver resolver,
+            List<XmlTvParser.XmlTvChannel> channels) {
+        List<Uri> channelUris = new ArrayList<>();
+        for (XmlTvParser.XmlTvChannel channel : channels) {
+            ContentValues values = new ContentValues();
+            values.put(TvContract.Channels.COLUMN_INPUT_ID, INPUT_ID);
+            values.put(TvContract.Channels.COLUMN_DISPLAY_NUMBER, channel.displayNumber);
+            values.put(TvContract.Channels.COLUMN_DISPLAY_NAME, channel.displayName);
+            values.put(TvContract.Channels.COLUMN_ORIGINAL_NETWORK_ID, channel.originalNetworkId);
+            values.put(TvContract.Channels.COLUMN_TRANSPORT_STREAM_ID, channel.transportStreamId);
+            values.put(TvContract.Channels.COLUMN_SERVICE_ID, channel.serviceId);
+            channelUris.add(InstrumentedResolver.insert(resolver, "benchmark.channels",
+                    TvContract.Channels.CONTENT_URI, values));
+        }
+        return channelUris;
+    }
+
+    private static void runSync(SyncAdapter syncAdapter, XmlTvParser.TvListing listings,
+            String name, PrintWriter writer) {
+        SyncStats stats = new SyncStats(INPUT_ID);
+        syncAdapter.syncInput(INPUT_ID, false, listings, stats, new SyncResult());
+        stats.finish();
+        writer.print(name + ": ");
+        stats.dump(writer);
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.net.Uri;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.os.TransactionTooLargeException;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Accumulates {@link ContentProviderOperation}s and applies them in batches whose estimated
+ * parcel size stays under a byte budget, so that neither long rows cause
+ * {@link TransactionTooLargeException} nor short rows end up in needlessly small batches.
+ *
+ * <p>If a batch is still rejected as too large, it is split in half and retried, and the budget
+ * is lowered for the following batches. The rejection may also come from the reply, after the
+ * provider applied the batch, in which case retrying its updates and deletes is harmless but
+ * retrying its inserts duplicates them. Such retries are counted, see
+ * {@link #getUncertainRetryCount()}.
+ */
+public class ContentProviderBatcher {
+    private static final String TAG = "ContentProviderBatcher";
+
+    /**
+     * The binder transaction buffer is 1MB and is shared by all the transactions in progress in
+     * the process, so stay well below it.
+     */
+    public static final int DEFAULT_BYTE_BUDGET = 256 * 1024;
+
+    // Type, flags, selection, back references and the other fixed fields of an operation.
+    private static final int OPERATION_OVERHEAD_BYTES = 64;
+    private static final int MIN_BYTE_BUDGET = 4 * 1024;
+
+    private static final int TYPE_INSERT = 0;
+    private static final int TYPE_UPDATE = 1;
+    private static final int TYPE_DELETE = 2;
+
+    private final ContentResolver mResolver;
+    private final String mAuthority;
+    private final boolean mKeepResults;
+    private int mByteBudget;
+    private boolean mDryRun;
+    private String mCallSite = "batch";
+
+    private final ArrayList<ContentProviderOperation> mPendingOps = new ArrayList<>();
+    // The types of the pending operations, which ContentProviderOperation doesn't expose.
+    private final ArrayList<Integer> mPendingTypes = new ArrayList<>();
+    private int mPendingBytes;
+    private final List<ContentProviderResult> mResults = new ArrayList<>();
+
+    private int mOperationCount;
+    private int mInsertCount;
+    private int mUpdateCount;
+    private int mDeleteCount;
+    private int mBatchCount;
+    private int mSplitCount;
+    private int mUncertainRetryCount;
+    private long mAppliedBytes;
+    private int mMaxBatchBytes;
+    private int mMaxBatchSize;
+    private long mApplyTimeMs;
+
+    /**
+     * @param resolver The resolver to apply the batches with.
+     * @param authority The authority of the provider, e.g. {@code TvContract.AUTHORITY}.
+     * @param keepResults Whether to keep the {@link ContentProviderResult}s of the applied
+     *         operations. See {@link #getResults()}.
+     */
+    public ContentProviderBatcher(ContentResolver resolver, String authority,
+            boolean keepResults) {
+        this(resolver, authority, keepResults, DEFAULT_BYTE_BUDGET);
+    }
+
+    public ContentProviderBatcher(ContentResolver resolver, String authority, boolean keepResults,
+            int byteBudget) {
+        mResolver = resolver;
+        mAuthority = authority;
+        mKeepResults = keepResults;
+        mByteBudget = Math.max(byteBudget, MIN_BYTE_BUDGET);
+    }
+
+    /**
+     * If set, the batches are formed and counted as usual but never applied, so that the effect of
+     * a sync can be measured without writing anything. No results are kept in this mode.
+     */
+    public void setDryRun(boolean dryRun) {
+        mDryRun = dryRun;
+    }
+
+    /**
+     * Sets the name the batches are recorded under by {@link InstrumentedResolver}.
+     */
+    public void setCallSite(String callSite) {
+        mCallSite = callSite;
+    }
+
+    public void insert(Uri uri, ContentValues values)
+            throws RemoteException, OperationApplicationException {
+        add(ContentProviderOperation.newInsert(uri).withValues(values).build(), TYPE_INSERT,
+                estimateBytes(uri, values));
+    }
+
+    public void update(Uri uri, ContentValues values)
+            throws RemoteException, OperationApplicationException {
+        add(ContentProviderOperation.newUpdate(uri).withValues(values).build(), TYPE_UPDATE,
+                estimateBytes(uri, values));
+    }
+
+    public void delete(Uri uri) throws RemoteException, OperationApplicationException {
+        add(ContentProviderOperation.newDelete(uri).build(), TYPE_DELETE,
+                estimateBytes(uri, null));
+    }
+
+    private void add(ContentProviderOperation op, int type, int bytes)
+            throws RemoteException, OperationApplicationException {
+        if (!mPendingOps.isEmpty() && mPendingBytes + bytes > mByteBudget) {
+            flush();
+        }
+        mPendingOps.add(op);
+        mPendingTypes.add(type);
+        mPendingBytes += bytes;
+        mOperationCount++;
+    }
+
+    /**
+     * Applies all the pending operations.
+     */
+    public void flush() throws RemoteException, OperationApplicationException {
+        if (mPendingOps.isEmpty()) {
+            return;
+        }
+        ArrayList<ContentProviderOperation> ops = new ArrayList<>(mPendingOps);
+        List<Integer> types = new ArrayList<>(mPendingTypes);
+        int bytes = mPendingBytes;
+        mPendingOps.clear();
+        mPendingTypes.clear();
+        mPendingBytes = 0;
+        apply(ops, types, bytes);
+    }
+
+    private void apply(ArrayList<ContentProviderOperation> ops, List<Integer> types, int bytes)
+            throws RemoteException, OperationApplicationException {
+        ContentProviderResult[] results = null;
+        long applyStartMs = SystemClock.elapsedRealtime();
+        try {
+            if (!mDryRun) {
+                results = InstrumentedResolver.applyBatch(mResolver, mCallSite, mAuthority, ops);
+            }
+        } catch (TransactionTooLargeException e) {
+            mApplyTimeMs += SystemClock.elapsedRealtime() - applyStartMs;
+            // Either the request was too large and never reached the provider, or the reply was
+            // and the whole batch has been applied. There is no telling which.
+            if (ops.size() <= 1) {
+                throw e;
+            }
+            mSplitCount++;
+            mByteBudget = Math.max(bytes / 2, MIN_BYTE_BUDGET);
+            if (types.contains(TYPE_INSERT)) {
+                mUncertainRetryCount++;
+                Log.w(TAG, "Batch of " + ops.size() + " operations (~" + bytes + " bytes) is too"
+                        + " large. Retrying in halves with a budget of " + mByteBudget
+                        + " bytes, which duplicates its inserts if it was applied anyway.");
+            } else {
+                Log.w(TAG, "Batch of " + ops.size() + " operations (~" + bytes + " bytes) is too"
+                        + " large. Retrying in halves with a budget of " + mByteBudget + " bytes.");
+            }
+            int half = ops.size() / 2;
+            apply(new ArrayList<>(ops.subList(0, half)), types.subList(0, half), bytes / 2);
+            apply(new ArrayList<>(ops.subList(half, ops.size())),
+                    types.subList(half, types.size()), bytes - bytes / 2);
+            return;
+        }
+        mApplyTimeMs += SystemClock.elapsedRealtime() - applyStartMs;
+        mBatchCount++;
+        mAppliedBytes += bytes;
+        mMaxBatchBytes = Math.max(mMaxBatchBytes, bytes);
+        mMaxBatchSize = Math.max(mMaxBatchSize, ops.size());
+        for (int type : types) {
+            switch (type) {
+                case TYPE_INSERT:
+                    mInsertCount++;
+                    break;
+                case TYPE_UPDATE:
+                    mUpdateCount++;
+                    break;
+                case TYPE_DELETE:
+                    mDeleteCount++;
+                    break;
+            }
+        }
+        if (mKeepResults && results != null) {
+            Collections.addAll(mResults, results);
+        }
+    }
+
+    /**
+     * Returns the results of the applied operations in the order they were added. The result of
+     * an operation is at the index which {@link #getOperationCount()} returned right before the
+     * operation was added. Empty unless {@code keepResults} was set.
+     */
+    public List<ContentProviderResult> getResults() {
+        return mResults;
+    }
+
+    /** Returns the number of operations added so far, including the pending ones. */
+    public int getOperationCount() {
+        return mOperationCount;
+    }
+
+    /** Returns the number of inserts in the applied batches. */
+    public int getInsertCount() {
+        return mInsertCount;
+    }
+
+    /** Returns the number of updates in the applied batches. */
+    public int getUpdateCount() {
+        return mUpdateCount;
+    }
+
+    /** Returns the number of deletes in the applied batches. */
+    public int getDeleteCount() {
+        return mDeleteCount;
+    }
+
+    /** Returns the number of successful {@code applyBatch} calls. */
+    public int getBatchCount() {
+        return mBatchCount;
+    }
+
+    /** Returns how many times a batch had to be split because it was too large. */
+    public int getSplitCount() {
+        return mSplitCount;
+    }
+
+    /**
+     * Returns how many of the batches which were split contained inserts. Any of them may have been
+     * applied before it was rejected, so that its retried inserts are duplicates.
+     */
+    public int getUncertainRetryCount() {
+        return mUncertainRetryCount;
+    }
+
+    /** Returns the estimated total bytes of the applied batches. */
+    public long getAppliedBytes() {
+        return mAppliedBytes;
+    }
+
+    /** Returns the estimated bytes of the largest applied batch. */
+    public int getMaxBatchBytes() {
+        return mMaxBatchBytes;
+    }
+
+    /** Returns the number of operations in the largest applied batch. */
+    public int getMaxBatchSize() {
+        return mMaxBatchSize;
+    }
+
+    /** Returns the total time spent in {@code applyBatch}, including the failed calls. */
+    public long getApplyTimeMs() {
+        return mApplyTimeMs;
+    }
+
+    /**
+     * Estimates how many bytes the operation takes when it is written to a {@link android.os.Parcel}.
+     * This follows the layout of {@code Parcel.writeValue} closely enough to budget the batches,
+     * without actually marshalling anything.
+     */
+    static int estimateBytes(Uri uri, ContentValues values) {
+        int bytes = OPERATION_OVERHEAD_BYTES + estimateStringBytes(uri.toString());
+        if (values != null) {
+            for (Map.Entry<String, Object> entry : values.valueSet()) {
+                bytes += estimateStringBytes(entry.getKey()) + 4;  // key and value type
+                Object value = entry.getValue();
+                if (value instanceof String) {
+                    bytes += estimateStringBytes((String) value);
+                } else if (value instanceof byte[]) {
+                    bytes += 4 + align4(((byte[]) value).length);
+                } else if (value instanceof Long || value instanceof Double) {
+                    bytes += 8;
+                } else if (value != null) {
+                    bytes += 4;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private static int estimateStringBytes(String value) {
+        // Length followed by the UTF-16 characters and a null terminator, padded to 4 bytes.
+        return value == null ? 4 : 4 + align4((value.length() + 1) * 2);
+    }
+
+    private static int align4(int bytes) {
+        return (bytes + 3) & ~3;
+    }
+}
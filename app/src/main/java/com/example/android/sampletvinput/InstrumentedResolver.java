@@ -0,0 +1,345 @@
+/*
+ * Copyright 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.database.AbstractWindowedCursor;
+import android.database.Cursor;
+import android.database.CursorWindow;
+import android.database.CursorWrapper;
+import android.net.Uri;
+import android.os.RemoteException;
+import android.os.SystemClock;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+/**
+ * Calls {@link ContentResolver} and records how long the calls to TvProvider take, per call site,
+ * operation and type of URI, so that it can be told how much of a tune or a sync is spent in the
+ * provider. The numbers are kept for the life of the process and printed by {@link #dump}.
+ *
+ * <p>The call site is a short name chosen by the caller, e.g. {@code "sync.channel_map"}.
+ *
+ * <p>The calls made with a resolver passed to {@link #markFake}, e.g. one which a benchmark routes
+ * to a fake provider, are recorded under a {@code "fake "} prefix so that they don't mix with the
+ * ones of TvProvider.
+ */
+public final class InstrumentedResolver {
+    private static final String OP_QUERY = "query";
+    private static final String OP_INSERT = "insert";
+    private static final String OP_UPDATE = "update";
+    private static final String OP_DELETE = "delete";
+    private static final String OP_APPLY_BATCH = "applyBatch";
+
+    // The upper bounds of the latency histogram buckets. The last bucket has no upper bound.
+    private static final long[] BUCKET_BOUNDS_MS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000};
+
+    private static final String FAKE_PREFIX = "fake ";
+
+    private static final Map<String, OperationStats> sStats = new TreeMap<>();
+    // Guarded by sStats. Weak, so that a benchmark doesn't have to unmark its resolver.
+    private static final Set<ContentResolver> sFakeResolvers =
+            Collections.newSetFromMap(new WeakHashMap<ContentResolver, Boolean>());
+
+    private InstrumentedResolver() {
+    }
+
+    /**
+     * Records the calls made with the resolver apart from the ones made with the resolver of the
+     * app, e.g. because the resolver routes them to a fake provider.
+     */
+    public static void markFake(ContentResolver resolver) {
+        synchronized (sStats) {
+            sFakeResolvers.add(resolver);
+        }
+    }
+
+    /**
+     * Queries the provider. The time includes running the query and filling the first cursor
+     * window, which is where the provider does most of its work.
+     */
+    public static Cursor query(ContentResolver resolver, String site, Uri uri,
+            String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        long startNs = SystemClock.elapsedRealtimeNanos();
+        Cursor cursor = null;
+        try {
+            cursor = resolver.query(uri, projection, selection, selectionArgs, sortOrder);
+            int rows = cursor != null ? cursor.getCount() : 0;
+            record(resolver, site, OP_QUERY, uri, startNs, rows, getWindowRows(cursor), false);
+            return cursor;
+        } catch (RuntimeException e) {
+            if (cursor != null) {
+                cursor.close();
+            }
+            record(resolver, site, OP_QUERY, uri, startNs, 0, 0, true);
+            throw e;
+        }
+    }
+
+    public static Uri insert(ContentResolver resolver, String site, Uri uri,
+            ContentValues values) {
+        long startNs = SystemClock.elapsedRealtimeNanos();
+        boolean failed = true;
+        Uri rowUri = null;
+        try {
+            rowUri = resolver.insert(uri, values);
+            failed = false;
+            return rowUri;
+        } finally {
+            record(resolver, site, OP_INSERT, uri, startNs, rowUri != null ? 1 : 0, 0, failed);
+        }
+    }
+
+    public static int update(ContentResolver resolver, String site, Uri uri,
+            ContentValues values, String where, String[] selectionArgs) {
+        long startNs = SystemClock.elapsedRealtimeNanos();
+        boolean failed = true;
+        int rows = 0;
+        try {
+            rows = resolver.update(uri, values, where, selectionArgs);
+            failed = false;
+            return rows;
+        } finally {
+            record(resolver, site, OP_UPDATE, uri, startNs, rows, 0, failed);
+        }
+    }
+
+    public static int delete(ContentResolver resolver, String site, Uri uri, String where,
+            String[] selectionArgs) {
+        long startNs = SystemClock.elapsedRealtimeNanos();
+        boolean failed = true;
+        int rows = 0;
+        try {
+            rows = resolver.delete(uri, where, selectionArgs);
+            failed = false;
+            return rows;
+        } finally {
+            record(resolver, site, OP_DELETE, uri, startNs, rows, 0, failed);
+        }
+    }
+
+    /**
+     * Applies the batch. It is recorded under the URI of its first operation, and its row count
+     * is the number of operations.
+     */
+    public static ContentProviderResult[] applyBatch(ContentResolver resolver, String site,
+            String authority, ArrayList<ContentProviderOperation> operations)
+            throws RemoteException, OperationApplicationException {
+        long startNs = SystemClock.elapsedRealtimeNanos();
+        boolean failed = true;
+        try {
+            ContentProviderResult[] results = resolver.applyBatch(authority, operations);
+            failed = false;
+            return results;
+        } finally {
+            Uri uri = operations.isEmpty() ? null : operations.get(0).getUri();
+            record(resolver, site, OP_APPLY_BATCH, uri, startNs, operations.size(), 0, failed);
+        }
+    }
+
+    /**
+     * Returns a copy of the numbers recorded so far, keyed by
+     * {@code "<site> <operation> <uri type>"}.
+     */
+    public static Map<String, OperationStats> getStats() {
+        Map<String, OperationStats> stats = new TreeMap<>();
+        synchronized (sStats) {
+            for (Map.Entry<String, OperationStats> entry : sStats.entrySet()) {
+                stats.put(entry.getKey(), new OperationStats(entry.getValue()));
+            }
+        }
+        return stats;
+    }
+
+    public static void reset() {
+        synchronized (sStats) {
+            sStats.clear();
+        }
+    }
+
+    public static void dump(PrintWriter writer) {
+        writer.println("TvProvider access:");
+        for (Map.Entry<String, OperationStats> entry : getStats().entrySet()) {
+            writer.println("  " + entry.getKey() + " " + entry.getValue());
+        }
+    }
+
+    /**
+     * Returns the type of the URI with the IDs left out, e.g. {@code "program?channel"} for the
+     * programs of a channel, or {@code "channel/#"} for a single channel.
+     */
+    static String getUriType(Uri uri) {
+        if (uri == null) {
+            return "none";
+        }
+        StringBuilder type = new StringBuilder();
+        for (String segment : uri.getPathSegments()) {
+            if (type.length() > 0) {
+                type.append('/');
+            }
+            type.append(isNumber(segment) ? "#" : segment);
+        }
+        if (uri.getQueryParameter("channel") != null) {
+            type.append("?channel");
+        }
+        return type.length() > 0 ? type.toString() : uri.getAuthority();
+    }
+
+    private static boolean isNumber(String segment) {
+        for (int i = 0; i < segment.length(); ++i) {
+            if (!Character.isDigit(segment.charAt(i))) {
+                return false;
+            }
+        }
+        return !segment.isEmpty();
+    }
+
+    private static int getWindowRows(Cursor cursor) {
+        while (cursor instanceof CursorWrapper) {
+            cursor = ((CursorWrapper) cursor).getWrappedCursor();
+        }
+        if (cursor instanceof AbstractWindowedCursor) {
+            CursorWindow window = ((AbstractWindowedCursor) cursor).getWindow();
+            return window != null ? window.getNumRows() : 0;
+        }
+        return 0;
+    }
+
+    private static void record(ContentResolver resolver, String site, String operation, Uri uri,
+            long startNs, int rows, int windowRows, boolean failed) {
+        long elapsedNs = SystemClock.elapsedRealtimeNanos() - startNs;
+        synchronized (sStats) {
+            String key = (sFakeResolvers.contains(resolver) ? FAKE_PREFIX : "") + site + " "
+                    + operation + " " + getUriType(uri);
+            OperationStats stats = sStats.get(key);
+            if (stats == null) {
+                stats = new OperationStats();
+                sStats.put(key, stats);
+            }
+            stats.add(elapsedNs, rows, windowRows, failed);
+        }
+    }
+
+    /**
+     * The numbers of an operation at a call site on a type of URI.
+     */
+    public static final class OperationStats {
+        private int mCount;
+        private int mErrorCount;
+        private long mTotalNs;
+        private long mMaxNs;
+        private long mRows;
+        private int mMaxWindowRows;
+        private final int[] mHistogram;
+
+        private OperationStats() {
+            mHistogram = new int[BUCKET_BOUNDS_MS.length + 1];
+        }
+
+        private OperationStats(OperationStats other) {
+            mCount = other.mCount;
+            mErrorCount = other.mErrorCount;
+            mTotalNs = other.mTotalNs;
+            mMaxNs = other.mMaxNs;
+            mRows = other.mRows;
+            mMaxWindowRows = other.mMaxWindowRows;
+            mHistogram = other.mHistogram.clone();
+        }
+
+        private void add(long elapsedNs, int rows, int windowRows, boolean failed) {
+            mCount++;
+            if (failed) {
+                mErrorCount++;
+            }
+            mTotalNs += elapsedNs;
+            mMaxNs = Math.max(mMaxNs, elapsedNs);
+            mRows += rows;
+            mMaxWindowRows = Math.max(mMaxWindowRows, windowRows);
+            long elapsedMs = elapsedNs / 1000000;
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS_MS.length && elapsedMs >= BUCKET_BOUNDS_MS[bucket]) {
+                bucket++;
+            }
+            mHistogram[bucket]++;
+        }
+
+        public int getCount() {
+            return mCount;
+        }
+
+        public int getErrorCount() {
+            return mErrorCount;
+        }
+
+        public long getTotalMs() {
+            return mTotalNs / 1000000;
+        }
+
+        public long getMaxMs() {
+            return mMaxNs / 1000000;
+        }
+
+        /** Returns the rows returned, inserted, updated or deleted, or the batched operations. */
+        public long getRows() {
+            return mRows;
+        }
+
+        /** Returns the most rows a query got in its first cursor window. */
+        public int getMaxWindowRows() {
+            return mMaxWindowRows;
+        }
+
+        /**
+         * Returns the number of calls per latency bucket. Bucket {@code i} counts the calls which
+         * took less than the {@code i}-th of 1, 2, 5, 10, 20, 50, 100, 200, 500 and 1000ms, and
+         * the last one the rest.
+         */
+        public int[] getHistogram() {
+            return mHistogram.clone();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append("count=").append(mCount)
+                    .append(" errors=").append(mErrorCount)
+                    .append(" rows=").append(mRows)
+                    .append(" maxWindowRows=").append(mMaxWindowRows)
+                    .append(" avg=").append(mCount > 0 ? mTotalNs / mCount / 1000 : 0).append("us")
+                    .append(" max=").append(mMaxNs / 1000).append("us")
+                    .append(" hist=[");
+            for (int i = 0; i < mHistogram.length; ++i) {
+                if (i > 0) {
+                    builder.append(' ');
+                }
+                builder.append(i < BUCKET_BOUNDS_MS.length ? "<" + BUCKET_BOUNDS_MS[i] : ">=1000")
+                        .append(':').append(mHistogram[i]);
+            }
+            return builder.append("]").toString();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput;
+
+import android.media.tv.TvContentRating;
+import android.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Interns the {@link TvContentRating}s and the rating lists of the programs, so that each of the
+ * few distinct values a lineup has is parsed only once.
+ *
+ * <p>The returned arrays are shared by all the callers and must not be modified. Copy them before
+ * handing them out, as {@link TvContractUtils#stringToContentRatings} does.
+ */
+public final class TvContentRatingCache {
+    private static final int MAX_RATINGS = 256;
+    private static final int MAX_RATING_LISTS = 128;
+    private static final TvContentRating[] EMPTY_RATINGS = new TvContentRating[0];
+
+    // The flattened ratings and the comma-separated lists of them.
+    private static final LruCache<String, TvContentRating> sRatings = new LruCache<>(MAX_RATINGS);
+    private static final LruCache<String, TvContentRating[]> sRatingLists =
+            new LruCache<>(MAX_RATING_LISTS);
+
+    private TvContentRatingCache() {
+    }
+
+    /**
+     * Returns the rating for its flattened form. See {@link TvContentRating#flattenToString}.
+     */
+    public static TvContentRating getRating(String flattenedRating) {
+        TvContentRating rating = sRatings.get(flattenedRating);
+        if (rating == null) {
+            rating = TvContentRating.unflattenFromString(flattenedRating);
+            sRatings.put(flattenedRating, rating);
+        }
+        return rating;
+    }
+
+    /**
+     * Returns the ratings of a comma-separated list of flattened ratings, or an empty array if
+     * the list is empty.
+     */
+    public static TvContentRating[] getRatings(String commaSeparatedRatings) {
+        if (commaSeparatedRatings.isEmpty()) {
+            return EMPTY_RATINGS;
+        }
+        TvContentRating[] ratings = sRatingLists.get(commaSeparatedRatings);
+        if (ratings == null) {
+            ratings = parseRatings(commaSeparatedRatings);
+            sRatingLists.put(commaSeparatedRatings, ratings);
+        }
+        return ratings;
+    }
+
+    /**
+     * Returns the comma-separated list of the flattened ratings, or {@code null} if there are
+     * none.
+     */
+    public static String toString(TvContentRating[] ratings) {
+        if (ratings == null || ratings.length == 0) {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder(ratings[0].flattenToString());
+        for (int i = 1; i < ratings.length; ++i) {
+            builder.append(',').append(ratings[i].flattenToString());
+        }
+        return builder.toString();
+    }
+
+    private static TvContentRating[] parseRatings(String commaSeparatedRatings) {
+        List<TvContentRating> ratings = new ArrayList<>();
+        int start = 0;
+        final int length = commaSeparatedRatings.length();
+        while (start <= length) {
+            int end = commaSeparatedRatings.indexOf(',', start);
+            if (end < 0) {
+                end = length;
+            }
+            String rating = commaSeparatedRatings.substring(start, end).trim();
+            if (!rating.isEmpty()) {
+                ratings.add(getRating(rating));
+            }
+            start = end + 1;
+        }
+        return ratings.toArray(new TvContentRating[ratings.size()]);
+    }
+}
@@ -16,9 +16,11 @@
 
 package com.example.android.sampletvinput;
 
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
 import android.media.tv.TvContentRating;
 import android.media.tv.TvContract;
@@ -26,13 +28,16 @@ import android.media.tv.TvContract.Channels;
 import android.media.tv.TvContract.Programs;
 import android.net.Uri;
 import android.os.AsyncTask;
+import android.os.RemoteException;
 import android.text.TextUtils;
 import android.util.Log;
 import android.util.LongSparseArray;
 import android.util.Pair;
 import android.util.SparseArray;
 
+import com.example.android.sampletvinput.data.InternalProviderData;
 import com.example.android.sampletvinput.data.Program;
+import com.example.android.sampletvinput.data.ProgramCursorReader;
 import com.example.android.sampletvinput.rich.RichTvInputService.PlaybackInfo;
 import com.example.android.sampletvinput.xmltv.XmlTvParser;
 
@@ -42,6 +47,8 @@ import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -73,7 +80,8 @@ public class TvContractUtils {
         Cursor cursor = null;
         ContentResolver resolver = context.getContentResolver();
         try {
-            cursor = resolver.query(channelsUri, projection, null, null, null);
+            cursor = InstrumentedResolver.query(resolver, "channels.update", channelsUri,
+                    projection, null, null, null);
             while (cursor != null && cursor.moveToNext()) {
                 long rowId = cursor.getLong(0);
                 int originalNetworkId = cursor.getInt(1);
@@ -86,38 +94,61 @@ public class TvContractUtils {
         }
 
         // If a channel exists, update it. If not, insert a new one.
+        ContentProviderBatcher batcher = new ContentProviderBatcher(resolver, TvContract.AUTHORITY,
+                true);
+        batcher.setCallSite("channels.update");
         ContentValues values = new ContentValues();
         values.put(Channels.COLUMN_INPUT_ID, inputId);
         Map<Uri, String> logos = new HashMap<>();
-        for (XmlTvParser.XmlTvChannel channel : channels) {
-            values.put(Channels.COLUMN_DISPLAY_NUMBER, channel.displayNumber);
-            values.put(Channels.COLUMN_DISPLAY_NAME, channel.displayName);
-            values.put(Channels.COLUMN_ORIGINAL_NETWORK_ID, channel.originalNetworkId);
-            values.put(Channels.COLUMN_TRANSPORT_STREAM_ID, channel.transportStreamId);
-            values.put(Channels.COLUMN_SERVICE_ID, channel.serviceId);
-            Long rowId = mExistingChannelsMap.get(channel.originalNetworkId);
-            Uri uri;
-            if (rowId == null) {
-                uri = resolver.insert(TvContract.Channels.CONTENT_URI, values);
-            } else {
-                uri = TvContract.buildChannelUri(rowId);
-                resolver.update(uri, values, null, null);
-                mExistingChannelsMap.remove(channel.originalNetworkId);
+        // Logos of the inserted channels, keyed by the index of the insert operation. Their URIs
+        // are known only after the batch is applied.
+        SparseArray<String> insertedLogos = new SparseArray<>();
+        try {
+            for (XmlTvParser.XmlTvChannel channel : channels) {
+                values.put(Channels.COLUMN_DISPLAY_NUMBER, channel.displayNumber);
+                values.put(Channels.COLUMN_DISPLAY_NAME, channel.displayName);
+                values.put(Channels.COLUMN_ORIGINAL_NETWORK_ID, channel.originalNetworkId);
+                values.put(Channels.COLUMN_TRANSPORT_STREAM_ID, channel.transportStreamId);
+                values.put(Channels.COLUMN_SERVICE_ID, channel.serviceId);
+                Long rowId = mExistingChannelsMap.get(channel.originalNetworkId);
+                boolean hasLogo = !TextUtils.isEmpty(channel.icon.src);
+                if (rowId == null) {
+                    if (hasLogo) {
+                        insertedLogos.put(batcher.getOperationCount(), channel.icon.src);
+                    }
+                    batcher.insert(TvContract.Channels.CONTENT_URI, values);
+                } else {
+                    Uri uri = TvContract.buildChannelUri(rowId);
+                    batcher.update(uri, values);
+                    mExistingChannelsMap.remove(channel.originalNetworkId);
+                    if (hasLogo) {
+                        logos.put(TvContract.buildChannelLogoUri(uri), channel.icon.src);
+                    }
+                }
             }
-            if (!TextUtils.isEmpty(channel.icon.src)) {
-                logos.put(TvContract.buildChannelLogoUri(uri), channel.icon.src);
+
+            // Deletes channels which don't exist in the new feed.
+            int size = mExistingChannelsMap.size();
+            for(int i = 0; i < size; ++i) {
+                Long rowId = mExistingChannelsMap.valueAt(i);
+                batcher.delete(TvContract.buildChannelUri(rowId));
+            }
+            batcher.flush();
+        } catch (RemoteException | OperationApplicationException e) {
+            Log.e(TAG, "Failed to update channels.", e);
+            return;
+        }
+
+        List<ContentProviderResult> results = batcher.getResults();
+        for (int i = 0; i < insertedLogos.size(); ++i) {
+            Uri uri = results.get(insertedLogos.keyAt(i)).uri;
+            if (uri != null) {
+                logos.put(TvContract.buildChannelLogoUri(uri), insertedLogos.valueAt(i));
             }
         }
         if (!logos.isEmpty()) {
             new InsertLogosTask(context).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, logos);
         }
-
-        // Deletes channels which don't exist in the new feed.
-        int size = mExistingChannelsMap.size();
-        for(int i = 0; i < size; ++i) {
-            Long rowId = mExistingChannelsMap.valueAt(i);
-            resolver.delete(TvContract.buildChannelUri(rowId), null, null);
-        }
     }
 
     private static String getVideoFormat(int videoHeight) {
@@ -135,7 +166,8 @@ public class TvContractUtils {
         LongSparseArray<XmlTvParser.XmlTvChannel> channelMap = new LongSparseArray<>();
         Cursor cursor = null;
         try {
-            cursor = resolver.query(uri, projection, null, null, null);
+            cursor = InstrumentedResolver.query(resolver, "channels.map", uri, projection, null,
+                    null, null);
             if (cursor == null || cursor.getCount() == 0) {
                 return null;
             }
@@ -156,18 +188,76 @@ public class TvContractUtils {
         return channelMap;
     }
 
+    /**
+     * Returns the IDs of the channels of the input in the order of their display numbers, e.g.
+     * "2", "2-1", "10", or an empty array if there are none.
+     */
+    public static long[] getChannelIdsInDisplayOrder(ContentResolver resolver, String inputId) {
+        Uri uri = TvContract.buildChannelsUriForInput(inputId);
+        String[] projection = { Channels._ID, Channels.COLUMN_DISPLAY_NUMBER };
+        List<Pair<Long, String>> channels = new ArrayList<>();
+        Cursor cursor = null;
+        try {
+            cursor = InstrumentedResolver.query(resolver, "channels.order", uri, projection, null,
+                    null, null);
+            while (cursor != null && cursor.moveToNext()) {
+                channels.add(Pair.create(cursor.getLong(0), cursor.getString(1)));
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Unable to get channels of " + inputId, e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        Collections.sort(channels, new Comparator<Pair<Long, String>>() {
+            @Override
+            public int compare(Pair<Long, String> lhs, Pair<Long, String> rhs) {
+                return compareDisplayNumbers(lhs.second, rhs.second);
+            }
+        });
+        long[] channelIds = new long[channels.size()];
+        for (int i = 0; i < channelIds.length; ++i) {
+            channelIds[i] = channels.get(i).first;
+        }
+        return channelIds;
+    }
+
+    /**
+     * Compares the numeric parts of the display numbers as numbers, so that "9" comes before
+     * "10" and "5-1" after "5".
+     */
+    static int compareDisplayNumbers(String lhs, String rhs) {
+        String[] lhsParts = lhs == null ? new String[0] : lhs.split("\\D+");
+        String[] rhsParts = rhs == null ? new String[0] : rhs.split("\\D+");
+        for (int i = 0; i < lhsParts.length && i < rhsParts.length; ++i) {
+            int result;
+            try {
+                result = Long.compare(Long.parseLong(lhsParts[i]), Long.parseLong(rhsParts[i]));
+            } catch (NumberFormatException e) {
+                result = lhsParts[i].compareTo(rhsParts[i]);
+            }
+            if (result != 0) {
+                return result;
+            }
+        }
+        return Integer.compare(lhsParts.length, rhsParts.length);
+    }
+
     public static List<Program> getPrograms(ContentResolver resolver, Uri channelUri) {
         Uri uri = TvContract.buildProgramsUriForChannel(channelUri);
         Cursor cursor = null;
         List<Program> programs = new ArrayList<>();
         try {
             // TvProvider returns programs chronological order by default.
-            cursor = resolver.query(uri, null, null, null, null);
+            cursor = InstrumentedResolver.query(resolver, "programs.list", uri,
+                    ProgramCursorReader.PROJECTION, null, null, null);
             if (cursor == null || cursor.getCount() == 0) {
                 return programs;
             }
+            ProgramCursorReader reader = new ProgramCursorReader(cursor);
             while (cursor.moveToNext()) {
-                programs.add(Program.fromCursor(cursor));
+                programs.add(reader.read());
             }
         } catch (Exception e) {
             Log.w(TAG, "Unable to get programs for " + channelUri, e);
@@ -192,15 +282,15 @@ public class TvContractUtils {
         Cursor cursor = null;
         List<PlaybackInfo> list = new ArrayList<>();
         try {
-            cursor = resolver.query(uri, projection, null, null, null);
+            cursor = InstrumentedResolver.query(resolver, "programs.playback_info", uri,
+                    projection, null, null, Programs.COLUMN_START_TIME_UTC_MILLIS);
             while (cursor.moveToNext()) {
                 long startMs = cursor.getLong(0);
                 long endMs = cursor.getLong(1);
                 TvContentRating[] ratings = stringToContentRatings(cursor.getString(2));
-                Pair<Integer, String> values = parseInternalProviderData(cursor.getString(3));
-                int videoType = values.first;
-                String videoUrl = values.second;
-                list.add(new PlaybackInfo(startMs, endMs, videoUrl, videoType, ratings));
+                InternalProviderData data = InternalProviderData.parse(cursor.getString(3));
+                list.add(new PlaybackInfo(startMs, endMs, data.getVideoUrl(),
+                        data.getVideoType(), ratings));
                 if (list.size() > maxProgramInReturn) {
                     break;
                 }
@@ -216,15 +306,16 @@ public class TvContractUtils {
     }
 
     public static String convertVideoInfoToInternalProviderData(int videotype, String videoUrl) {
-        return videotype + "," + videoUrl;
+        return new InternalProviderData.Builder()
+                .setVideoType(videotype)
+                .setVideoUrl(videoUrl)
+                .build()
+                .encode();
     }
 
     public static Pair<Integer, String> parseInternalProviderData(String internalData) {
-        String[] values = internalData.split(",", 2);
-        if (values.length != 2) {
-            throw new IllegalArgumentException(internalData);
-        }
-        return new Pair<>(Integer.parseInt(values[0]), values[1]);
+        InternalProviderData data = InternalProviderData.parse(internalData);
+        return new Pair<>(data.getVideoType(), data.getVideoUrl());
     }
 
     public static void insertUrl(Context context, Uri contentUri, URL sourceUrl) {
@@ -269,25 +360,12 @@ public class TvContractUtils {
         if (TextUtils.isEmpty(commaSeparatedRatings)) {
             return null;
         }
-        String[] ratings = commaSeparatedRatings.split("\\s*,\\s*");
-        TvContentRating[] contentRatings = new TvContentRating[ratings.length];
-        for (int i = 0; i < contentRatings.length; ++i) {
-            contentRatings[i] = TvContentRating.unflattenFromString(ratings[i]);
-        }
-        return contentRatings;
+        // The cached array is shared. Don't let the callers modify it.
+        return TvContentRatingCache.getRatings(commaSeparatedRatings).clone();
     }
 
     public static String contentRatingsToString(TvContentRating[] contentRatings) {
-        if (contentRatings == null || contentRatings.length == 0) {
-            return null;
-        }
-        final String DELIMITER = ",";
-        StringBuilder ratings = new StringBuilder(contentRatings[0].flattenToString());
-        for (int i = 1; i < contentRatings.length; ++i) {
-            ratings.append(DELIMITER);
-            ratings.append(contentRatings[i].flattenToString());
-        }
-        return ratings.toString();
+        return TvContentRatingCache.toString(contentRatings);
     }
 
     private static XmlTvParser.XmlTvChannel getChannelByNumber(String channelNumber,
@@ -20,47 +20,41 @@ import android.content.ContentValues;
 import android.database.Cursor;
 import android.media.tv.TvContentRating;
 import android.media.tv.TvContract;
-import android.text.TextUtils;
 
-import com.example.android.sampletvinput.TvContractUtils;
-
-import java.util.Arrays;
-import java.util.Objects;
+import com.example.android.sampletvinput.epg.Fingerprint;
 
 /**
  * A convenience class to create and insert program information into the database.
+ *
+ * <p>A program is an occurrence of a {@link ProgramContent} in a channel at a time. The content is
+ * immutable, so that the occurrences of a repeated program can share it. See
+ * {@link Builder#setContent}.
  */
 public final class Program implements Comparable<Program> {
     private static final long INVALID_LONG_VALUE = -1;
-    private static final int INVALID_INT_VALUE = -1;
+    private static final int INVALID_INT_VALUE = ProgramContent.INVALID_INT_VALUE;
+
+    // Changing how the fingerprint is computed needs a new seed, so that the fingerprints stored
+    // by the older versions never match.
+    private static final long FINGERPRINT_SEED = Fingerprint.OFFSET_BASIS ^ 3;
+
+    private static final ProgramContent EMPTY_CONTENT = new ProgramContent.Builder().build();
 
     private long mProgramId;
     private long mChannelId;
-    private String mTitle;
-    private String mEpisodeTitle;
-    private int mSeasonNumber;
-    private int mEpisodeNumber;
     private long mStartTimeUtcMillis;
     private long mEndTimeUtcMillis;
-    private String mDescription;
-    private String mLongDescription;
-    private int mVideoWidth;
-    private int mVideoHeight;
-    private String mPosterArtUri;
-    private String mThumbnailUri;
-    private String[] mCanonicalGenres;
-    private TvContentRating[] mContentRatings;
-    private String mInternalProviderData;
+    private ProgramContent mContent;
+    // Written before the volatile flag, so that the threads which see the flag see the value.
+    private long mFingerprint;
+    private volatile boolean mHasFingerprint;
 
     private Program() {
         mChannelId = INVALID_LONG_VALUE;
         mProgramId = INVALID_LONG_VALUE;
-        mSeasonNumber = INVALID_INT_VALUE;
-        mEpisodeNumber = INVALID_INT_VALUE;
         mStartTimeUtcMillis = INVALID_LONG_VALUE;
         mEndTimeUtcMillis = INVALID_LONG_VALUE;
-        mVideoWidth = INVALID_INT_VALUE;
-        mVideoHeight = INVALID_INT_VALUE;
+        mContent = EMPTY_CONTENT;
     }
 
     public long getProgramId() {
@@ -71,20 +65,24 @@ public final class Program implements Comparable<Program> {
         return mChannelId;
     }
 
+    public ProgramContent getContent() {
+        return mContent;
+    }
+
     public String getTitle() {
-        return mTitle;
+        return mContent.getTitle();
     }
 
     public String getEpisodeTitle() {
-        return mEpisodeTitle;
+        return mContent.getEpisodeTitle();
     }
 
     public int getSeasonNumber() {
-        return mSeasonNumber;
+        return mContent.getSeasonNumber();
     }
 
     public int getEpisodeNumber() {
-        return mEpisodeNumber;
+        return mContent.getEpisodeNumber();
     }
 
     public long getStartTimeUtcMillis() {
@@ -96,70 +94,82 @@ public final class Program implements Comparable<Program> {
     }
 
     public String getDescription() {
-        return mDescription;
+        return mContent.getDescription();
     }
 
     public String getLongDescription() {
-        return mLongDescription;
+        return mContent.getLongDescription();
     }
 
     public int getVideoWidth() {
-        return mVideoWidth;
+        return mContent.getVideoWidth();
     }
 
     public int getVideoHeight() {
-        return mVideoHeight;
+        return mContent.getVideoHeight();
     }
 
     public String[] getCanonicalGenres() {
-        return mCanonicalGenres;
+        return mContent.getCanonicalGenres();
     }
 
     public TvContentRating[] getContentRatings() {
-        return mContentRatings;
+        return mContent.getContentRatings();
     }
 
     public String getPosterArtUri() {
-        return mPosterArtUri;
+        return mContent.getPosterArtUri();
     }
 
     public String getThumbnailUri() {
-        return mThumbnailUri;
+        return mContent.getThumbnailUri();
     }
 
     public String getInternalProviderData() {
-        return mInternalProviderData;
+        return mContent.getInternalProviderData();
+    }
+
+    /**
+     * Returns a 64-bit hash of all the columns of the program except its ID. It is computed once,
+     * or read back from {@link TvContract.Programs#COLUMN_VERSION_NUMBER} where
+     * {@link #toContentValues()} stores it.
+     */
+    public long getFingerprint() {
+        if (!mHasFingerprint) {
+            long hash = FINGERPRINT_SEED;
+            hash = Fingerprint.add(hash, mChannelId);
+            hash = Fingerprint.add(hash, mStartTimeUtcMillis);
+            hash = Fingerprint.add(hash, mEndTimeUtcMillis);
+            // Computed once per content, however many times it is repeated.
+            hash = Fingerprint.add(hash, mContent.getFingerprint());
+            mFingerprint = hash;
+            mHasFingerprint = true;
+        }
+        return mFingerprint;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(mChannelId, mStartTimeUtcMillis, mEndTimeUtcMillis,
-                mTitle, mEpisodeTitle, mDescription, mLongDescription, mVideoWidth, mVideoHeight,
-                mPosterArtUri, mThumbnailUri, mContentRatings, mCanonicalGenres, mSeasonNumber,
-                mEpisodeNumber);
+        long fingerprint = getFingerprint();
+        return (int) (fingerprint ^ (fingerprint >>> 32));
     }
 
+    /**
+     * Compares the fingerprints first, and all the columns only if they match.
+     */
     @Override
     public boolean equals(Object other) {
         if (!(other instanceof Program)) {
             return false;
         }
         Program program = (Program) other;
+        if (getFingerprint() != program.getFingerprint()) {
+            return false;
+        }
         return mChannelId == program.mChannelId
                 && mStartTimeUtcMillis == program.mStartTimeUtcMillis
                 && mEndTimeUtcMillis == program.mEndTimeUtcMillis
-                && Objects.equals(mTitle, program.mTitle)
-                && Objects.equals(mEpisodeTitle, program.mEpisodeTitle)
-                && Objects.equals(mDescription, program.mDescription)
-                && Objects.equals(mLongDescription, program.mLongDescription)
-                && mVideoWidth == program.mVideoWidth
-                && mVideoHeight == program.mVideoHeight
-                && Objects.equals(mPosterArtUri, program.mPosterArtUri)
-                && Objects.equals(mThumbnailUri, program.mThumbnailUri)
-                && Arrays.equals(mContentRatings, program.mContentRatings)
-                && Arrays.equals(mCanonicalGenres, program.mCanonicalGenres)
-                && mSeasonNumber == program.mSeasonNumber
-                && mEpisodeNumber == program.mEpisodeNumber;
+                && mContent.equals(program.mContent);
     }
 
     @Override
@@ -172,19 +182,9 @@ public final class Program implements Comparable<Program> {
         return "Program{"
                 + "programId=" + mProgramId
                 + ", channelId=" + mChannelId
-                + ", title=" + mTitle
-                + ", episodeTitle=" + mEpisodeTitle
-                + ", seasonNumber=" + mSeasonNumber
-                + ", episodeNumber=" + mEpisodeNumber
                 + ", startTimeUtcSec=" + mStartTimeUtcMillis
                 + ", endTimeUtcSec=" + mEndTimeUtcMillis
-                + ", videoWidth=" + mVideoWidth
-                + ", videoHeight=" + mVideoHeight
-                + ", contentRatings=" + mContentRatings
-                + ", posterArtUri=" + mPosterArtUri
-                + ", thumbnailUri=" + mThumbnailUri
-                + ", contentRatings=" + mContentRatings
-                + ", genres=" + mCanonicalGenres
+                + ", " + mContent
                 + "}";
     }
 
@@ -195,76 +195,31 @@ public final class Program implements Comparable<Program> {
 
         mProgramId = other.mProgramId;
         mChannelId = other.mChannelId;
-        mTitle = other.mTitle;
-        mEpisodeTitle = other.mEpisodeTitle;
-        mSeasonNumber = other.mSeasonNumber;
-        mEpisodeNumber = other.mEpisodeNumber;
         mStartTimeUtcMillis = other.mStartTimeUtcMillis;
         mEndTimeUtcMillis = other.mEndTimeUtcMillis;
-        mDescription = other.mDescription;
-        mLongDescription = other.mLongDescription;
-        mVideoWidth = other.mVideoWidth;
-        mVideoHeight = other.mVideoHeight;
-        mPosterArtUri = other.mPosterArtUri;
-        mThumbnailUri = other.mThumbnailUri;
-        mCanonicalGenres = other.mCanonicalGenres;
-        mContentRatings = other.mContentRatings;
+        // The content is immutable, so it is shared rather than copied.
+        mContent = other.mContent;
+        // The copy is about to be modified.
+        mHasFingerprint = false;
     }
 
     public ContentValues toContentValues() {
         ContentValues values = new ContentValues();
+        putScheduleValues(values);
+        mContent.putValues(values);
+        return values;
+    }
+
+    /**
+     * Puts the channel, the time and the fingerprint of the program, which is all that differs
+     * between the occurrences of a repeated program.
+     */
+    void putScheduleValues(ContentValues values) {
         if (mChannelId != INVALID_LONG_VALUE) {
             values.put(TvContract.Programs.COLUMN_CHANNEL_ID, mChannelId);
         } else {
             values.putNull(TvContract.Programs.COLUMN_CHANNEL_ID);
         }
-        if (!TextUtils.isEmpty(mTitle)) {
-            values.put(TvContract.Programs.COLUMN_TITLE, mTitle);
-        } else {
-            values.putNull(TvContract.Programs.COLUMN_TITLE);
-        }
-        if (!TextUtils.isEmpty(mEpisodeTitle)) {
-            values.put(TvContract.Programs.COLUMN_EPISODE_TITLE, mEpisodeTitle);
-        } else {
-            values.putNull(TvContract.Programs.COLUMN_EPISODE_TITLE);
-        }
-        if (mSeasonNumber != INVALID_INT_VALUE) {
-            values.put(TvContract.Programs.COLUMN_SEASON_NUMBER, mSeasonNumber);
-        } else {
-            values.putNull(TvContract.Programs.COLUMN_SEASON_NUMBER);
-        }
-        if (mEpisodeNumber != INVALID_INT_VALUE) {
-            values.put(TvContract.Programs.COLUMN_EPISODE_NUMBER, mEpisodeNumber);
-        } else {
-            values.putNull(TvContract.Programs.COLUMN_EPISODE_NUMBER);
-        }
-        if (!TextUtils.isEmpty(mDescription)) {
-            values.put(TvContract.Programs.COLUMN_SHORT_DESCRIPTION, mDescription);
-        } else {
-            values.putNull(TvContract.Programs.COLUMN_SHORT_DESCRIPTION);
-        }
-        if (!TextUtils.isEmpty(mPosterArtUri)) {
-            values.put(TvContract.Programs.COLUMN_POSTER_ART_URI, mPosterArtUri);
-        } else {
-            values.putNull(TvContract.Programs.COLUMN_POSTER_ART_URI);
-        }
-        if (!TextUtils.isEmpty(mThumbnailUri)) {
-            values.put(TvContract.Programs.COLUMN_THUMBNAIL_URI, mThumbnailUri);
-        } else {
-            values.putNull(TvContract.Programs.COLUMN_THUMBNAIL_URI);
-        }
-        if (mCanonicalGenres != null && mCanonicalGenres.length > 0) {
-            values.put(TvContract.Programs.COLUMN_CANONICAL_GENRE,
-                    TvContract.Programs.Genres.encode(mCanonicalGenres));
-        } else {
-            values.putNull(TvContract.Programs.COLUMN_CANONICAL_GENRE);
-        }
-        if (mContentRatings != null && mContentRatings.length > 0) {
-            values.put(TvContract.Programs.COLUMN_CONTENT_RATING,
-                    TvContractUtils.contentRatingsToString(mContentRatings));
-        } else {
-            values.putNull(TvContract.Programs.COLUMN_CONTENT_RATING);
-        }
         if (mStartTimeUtcMillis != INVALID_LONG_VALUE) {
             values.put(TvContract.Programs.COLUMN_START_TIME_UTC_MILLIS, mStartTimeUtcMillis);
         } else {
@@ -275,100 +230,25 @@ public final class Program implements Comparable<Program> {
         } else {
             values.putNull(TvContract.Programs.COLUMN_END_TIME_UTC_MILLIS);
         }
-        if (mVideoWidth != INVALID_INT_VALUE) {
-            values.put(TvContract.Programs.COLUMN_VIDEO_WIDTH, mVideoWidth);
-        } else {
-            values.putNull(TvContract.Programs.COLUMN_VIDEO_WIDTH);
-        }
-        if (mVideoHeight != INVALID_INT_VALUE) {
-            values.put(TvContract.Programs.COLUMN_VIDEO_HEIGHT, mVideoHeight);
-        } else {
-            values.putNull(TvContract.Programs.COLUMN_VIDEO_HEIGHT);
-        }
-        if (!TextUtils.isEmpty(mInternalProviderData)) {
-            values.put(TvContract.Programs.COLUMN_INTERNAL_PROVIDER_DATA, mInternalProviderData);
-        } else {
-            values.putNull(TvContract.Programs.COLUMN_INTERNAL_PROVIDER_DATA);
-        }
-        return values;
+        // The fingerprint covers the channel and the time too.
+        values.put(TvContract.Programs.COLUMN_VERSION_NUMBER, getFingerprint());
     }
 
+    /**
+     * Reads the program at the current position of the cursor. Use {@link ProgramCursorReader} to
+     * read many rows of the same cursor.
+     */
     public static Program fromCursor(Cursor cursor) {
-        Builder builder = new Builder();
-        int index = cursor.getColumnIndex(TvContract.Programs._ID);
-        if (index >= 0 && !cursor.isNull(index)) {
-            builder.setProgramId(cursor.getLong(index));
-        }
-        index = cursor.getColumnIndex(TvContract.Programs.COLUMN_CHANNEL_ID);
-        if (index >= 0 && !cursor.isNull(index)) {
-            builder.setChannelId(cursor.getLong(index));
-        }
-        index = cursor.getColumnIndex(TvContract.Programs.COLUMN_TITLE);
-        if (index >= 0 && !cursor.isNull(index)) {
-            builder.setTitle(cursor.getString(index));
-        }
-        index = cursor.getColumnIndex(TvContract.Programs.COLUMN_EPISODE_TITLE);
-        if (index >= 0 && !cursor.isNull(index)) {
-            builder.setEpisodeTitle(cursor.getString(index));
-        }
-        index = cursor.getColumnIndex(TvContract.Programs.COLUMN_SEASON_NUMBER);
-        if(index >= 0 && !cursor.isNull(index)) {
-            builder.setSeasonNumber(cursor.getInt(index));
-        }
-        index = cursor.getColumnIndex(TvContract.Programs.COLUMN_EPISODE_NUMBER);
-        if(index >= 0 && !cursor.isNull(index)) {
-            builder.setEpisodeNumber(cursor.getInt(index));
-        }
-        index = cursor.getColumnIndex(TvContract.Programs.COLUMN_SHORT_DESCRIPTION);
-        if (index >= 0 && !cursor.isNull(index)) {
-            builder.setDescription(cursor.getString(index));
-        }
-        index = cursor.getColumnIndex(TvContract.Programs.COLUMN_LONG_DESCRIPTION);
-        if (index >= 0 && !cursor.isNull(index)) {
-            builder.setLongDescription(cursor.getString(index));
-        }
-        index = cursor.getColumnIndex(TvContract.Programs.COLUMN_POSTER_ART_URI);
-        if (index >= 0 && !cursor.isNull(index)) {
-            builder.setPosterArtUri(cursor.getString(index));
-        }
-        index = cursor.getColumnIndex(TvContract.Programs.COLUMN_THUMBNAIL_URI);
-        if (index >= 0 && !cursor.isNull(index)) {
-            builder.setThumbnailUri(cursor.getString(index));
-        }
-        index = cursor.getColumnIndex(TvContract.Programs.COLUMN_CANONICAL_GENRE);
-        if (index >= 0 && !cursor.isNull(index)) {
-            builder.setCanonicalGenres(TvContract.Programs.Genres.decode(cursor.getString(index)));
-        }
-        index = cursor.getColumnIndex(TvContract.Programs.COLUMN_CONTENT_RATING);
-        if (index >= 0 && !cursor.isNull(index)) {
-            builder.setContentRatings(TvContractUtils.stringToContentRatings(cursor.getString(
-                    index)));
-        }
-        index = cursor.getColumnIndex(TvContract.Programs.COLUMN_START_TIME_UTC_MILLIS);
-        if (index >= 0 && !cursor.isNull(index)) {
-            builder.setStartTimeUtcMillis(cursor.getLong(index));
-        }
-        index = cursor.getColumnIndex(TvContract.Programs.COLUMN_END_TIME_UTC_MILLIS);
-        if (index >= 0 && !cursor.isNull(index)) {
-            builder.setEndTimeUtcMillis(cursor.getLong(index));
-        }
-        index = cursor.getColumnIndex(TvContract.Programs.COLUMN_VIDEO_WIDTH);
-        if (index >= 0 && !cursor.isNull(index)) {
-            builder.setVideoWidth((int) cursor.getLong(index));
-        }
-        index = cursor.getColumnIndex(TvContract.Programs.COLUMN_VIDEO_HEIGHT);
-        if (index >= 0 && !cursor.isNull(index)) {
-            builder.setVideoHeight((int) cursor.getLong(index));
-        }
-        index = cursor.getColumnIndex(TvContract.Programs.COLUMN_INTERNAL_PROVIDER_DATA);
-        if (index >= 0 && !cursor.isNull(index)) {
-            builder.setInternalProviderData(cursor.getString(index));
-        }
-        return builder.build();
+        return new ProgramCursorReader(cursor).read();
     }
 
+    /**
+     * Builds a program. The content setters, e.g. {@link #setTitle}, build a new
+     * {@link ProgramContent}, while {@link #setContent} shares an existing one.
+     */
     public static final class Builder {
         private final Program mProgram;
+        private ProgramContent.Builder mContentBuilder;
 
         public Builder() {
             mProgram = new Program();
@@ -389,23 +269,29 @@ public final class Program implements Comparable<Program> {
             return this;
         }
 
+        public Builder setContent(ProgramContent content) {
+            mProgram.mContent = content;
+            mContentBuilder = null;
+            return this;
+        }
+
         public Builder setTitle(String title) {
-            mProgram.mTitle = title;
+            getContentBuilder().setTitle(title);
             return this;
         }
 
         public Builder setEpisodeTitle(String episodeTitle) {
-            mProgram.mEpisodeTitle = episodeTitle;
+            getContentBuilder().setEpisodeTitle(episodeTitle);
             return this;
         }
 
         public Builder setSeasonNumber(int seasonNumber) {
-            mProgram.mSeasonNumber = seasonNumber;
+            getContentBuilder().setSeasonNumber(seasonNumber);
             return this;
         }
 
         public Builder setEpisodeNumber(int episodeNumber) {
-            mProgram.mEpisodeNumber = episodeNumber;
+            getContentBuilder().setEpisodeNumber(episodeNumber);
             return this;
         }
 
@@ -420,51 +306,72 @@ public final class Program implements Comparable<Program> {
         }
 
         public Builder setDescription(String description) {
-            mProgram.mDescription = description;
+            getContentBuilder().setDescription(description);
             return this;
         }
 
         public Builder setLongDescription(String longDescription) {
-            mProgram.mLongDescription = longDescription;
+            getContentBuilder().setLongDescription(longDescription);
             return this;
         }
 
         public Builder setVideoWidth(int width) {
-            mProgram.mVideoWidth = width;
+            getContentBuilder().setVideoWidth(width);
             return this;
         }
 
         public Builder setVideoHeight(int height) {
-            mProgram.mVideoHeight = height;
+            getContentBuilder().setVideoHeight(height);
             return this;
         }
 
         public Builder setContentRatings(TvContentRating[] contentRatings) {
-            mProgram.mContentRatings = contentRatings;
+            getContentBuilder().setContentRatings(contentRatings);
             return this;
         }
 
         public Builder setPosterArtUri(String posterArtUri) {
-            mProgram.mPosterArtUri = posterArtUri;
+            getContentBuilder().setPosterArtUri(posterArtUri);
             return this;
         }
 
         public Builder setThumbnailUri(String thumbnailUri) {
-            mProgram.mThumbnailUri = thumbnailUri;
+            getContentBuilder().setThumbnailUri(thumbnailUri);
             return this;
         }
 
         public Builder setCanonicalGenres(String[] genres) {
-            mProgram.mCanonicalGenres = genres;
+            getContentBuilder().setCanonicalGenres(genres);
             return this;
         }
 
         public Builder setInternalProviderData(String data) {
-            mProgram.mInternalProviderData = data;
+            getContentBuilder().setInternalProviderData(data);
             return this;
         }
 
+        /**
+         * Sets the fingerprint which {@link #toContentValues()} stored, so that it isn't computed
+         * again. Must be called after all the other setters.
+         */
+        Builder setFingerprint(long fingerprint) {
+            mProgram.mFingerprint = fingerprint;
+            mProgram.mHasFingerprint = true;
+            return this;
+        }
+
+        private ProgramContent.Builder getContentBuilder() {
+            if (mContentBuilder == null) {
+                mContentBuilder = new ProgramContent.Builder(mProgram.mContent);
+            }
+            return mContentBuilder;
+        }
+
         public Program build() {
+            if (mContentBuilder != null) {
+                mProgram.mContent = mContentBuilder.build();
+                mContentBuilder = null;
+            }
             return mProgram;
         }
     }
@@ -0,0 +1,426 @@
+/*
+ * Copyright 2015 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput.data;
+
+import android.content.ContentValues;
+import android.media.tv.TvContentRating;
+import android.media.tv.TvContract;
+import android.text.TextUtils;
+
+import com.example.android.sampletvinput.TvContentRatingCache;
+import com.example.android.sampletvinput.TvContractUtils;
+import com.example.android.sampletvinput.epg.Fingerprint;
+
+import java.util.Objects;
+
+/**
+ * The content of a {@link Program}, i.e. everything but its ID, channel and time. It is immutable
+ * and thread-safe, so that all the occurrences of a repeated program can share a single instance.
+ */
+public final class ProgramContent {
+    static final int INVALID_INT_VALUE = -1;
+
+    private final String mTitle;
+    private final String mEpisodeTitle;
+    private final int mSeasonNumber;
+    private final int mEpisodeNumber;
+    private final String mDescription;
+    private final String mLongDescription;
+    private final int mVideoWidth;
+    private final int mVideoHeight;
+    private final String mPosterArtUri;
+    private final String mThumbnailUri;
+    private final String mInternalProviderData;
+    // The genres and the content ratings are kept encoded, as in the database, and decoded only
+    // when asked for, so that the programs read from the database don't decode them for nothing.
+    // The decoded arrays are never handed out, only copies of them.
+    private final String mEncodedGenres;
+    private final String mEncodedContentRatings;
+    private volatile String[] mCanonicalGenres;
+    private volatile TvContentRating[] mContentRatings;
+    // Written before the volatile flag, so that the threads which see the flag see the value.
+    private long mFingerprint;
+    private volatile boolean mHasFingerprint;
+
+    private ProgramContent(Builder builder) {
+        mTitle = builder.mTitle;
+        mEpisodeTitle = builder.mEpisodeTitle;
+        mSeasonNumber = builder.mSeasonNumber;
+        mEpisodeNumber = builder.mEpisodeNumber;
+        mDescription = builder.mDescription;
+        mLongDescription = builder.mLongDescription;
+        mVideoWidth = builder.mVideoWidth;
+        mVideoHeight = builder.mVideoHeight;
+        mPosterArtUri = builder.mPosterArtUri;
+        mThumbnailUri = builder.mThumbnailUri;
+        mInternalProviderData = builder.mInternalProviderData;
+        mCanonicalGenres = builder.mCanonicalGenres;
+        if (builder.mEncodedGenres == null && mCanonicalGenres != null
+                && mCanonicalGenres.length > 0) {
+            mEncodedGenres = TvContract.Programs.Genres.encode(mCanonicalGenres);
+        } else {
+            mEncodedGenres = builder.mEncodedGenres;
+        }
+        mContentRatings = builder.mContentRatings;
+        if (builder.mEncodedContentRatings == null && mContentRatings != null
+                && mContentRatings.length > 0) {
+            mEncodedContentRatings = TvContractUtils.contentRatingsToString(mContentRatings);
+        } else {
+            mEncodedContentRatings = builder.mEncodedContentRatings;
+        }
+    }
+
+    public String getTitle() {
+        return mTitle;
+    }
+
+    public String getEpisodeTitle() {
+        return mEpisodeTitle;
+    }
+
+    public int getSeasonNumber() {
+        return mSeasonNumber;
+    }
+
+    public int getEpisodeNumber() {
+        return mEpisodeNumber;
+    }
+
+    public String getDescription() {
+        return mDescription;
+    }
+
+    public String getLongDescription() {
+        return mLongDescription;
+    }
+
+    public int getVideoWidth() {
+        return mVideoWidth;
+    }
+
+    public int getVideoHeight() {
+        return mVideoHeight;
+    }
+
+    public String getPosterArtUri() {
+        return mPosterArtUri;
+    }
+
+    public String getThumbnailUri() {
+        return mThumbnailUri;
+    }
+
+    public String getInternalProviderData() {
+        return mInternalProviderData;
+    }
+
+    public String[] getCanonicalGenres() {
+        String[] genres = mCanonicalGenres;
+        if (genres == null && mEncodedGenres != null) {
+            // Two threads may both decode them, which is harmless.
+            genres = TvContract.Programs.Genres.decode(mEncodedGenres);
+            mCanonicalGenres = genres;
+        }
+        return genres != null ? genres.clone() : null;
+    }
+
+    public TvContentRating[] getContentRatings() {
+        TvContentRating[] contentRatings = mContentRatings;
+        if (contentRatings == null && mEncodedContentRatings != null) {
+            // Shared by all the contents with the same ratings, which is fine since it's never
+            // handed out.
+            contentRatings = TvContentRatingCache.getRatings(mEncodedContentRatings);
+            mContentRatings = contentRatings;
+        }
+        return contentRatings != null ? contentRatings.clone() : null;
+    }
+
+    /**
+     * Returns the genres as stored in {@link TvContract.Programs#COLUMN_CANONICAL_GENRE}, or
+     * {@code null} if there are none.
+     */
+    String getEncodedGenres() {
+        return mEncodedGenres;
+    }
+
+    /**
+     * Returns the content ratings as stored in {@link TvContract.Programs#COLUMN_CONTENT_RATING},
+     * or {@code null} if there are none.
+     */
+    String getEncodedContentRatings() {
+        return mEncodedContentRatings;
+    }
+
+    /**
+     * Returns a 64-bit hash of all the fields, computed once.
+     */
+    long getFingerprint() {
+        if (!mHasFingerprint) {
+            long hash = Fingerprint.OFFSET_BASIS;
+            hash = Fingerprint.add(hash, mTitle);
+            hash = Fingerprint.add(hash, mEpisodeTitle);
+            hash = Fingerprint.add(hash, mSeasonNumber);
+            hash = Fingerprint.add(hash, mEpisodeNumber);
+            hash = Fingerprint.add(hash, mDescription);
+            hash = Fingerprint.add(hash, mLongDescription);
+            hash = Fingerprint.add(hash, mVideoWidth);
+            hash = Fingerprint.add(hash, mVideoHeight);
+            hash = Fingerprint.add(hash, mPosterArtUri);
+            hash = Fingerprint.add(hash, mThumbnailUri);
+            hash = Fingerprint.add(hash, mEncodedGenres);
+            hash = Fingerprint.add(hash, mEncodedContentRatings);
+            hash = Fingerprint.add(hash, mInternalProviderData);
+            mFingerprint = hash;
+            mHasFingerprint = true;
+        }
+        return mFingerprint;
+    }
+
+    @Override
+    public int hashCode() {
+        long fingerprint = getFingerprint();
+        return (int) (fingerprint ^ (fingerprint >>> 32));
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof ProgramContent)) {
+            return false;
+        }
+        ProgramContent content = (ProgramContent) other;
+        return getFingerprint() == content.getFingerprint()
+                && Objects.equals(mTitle, content.mTitle)
+                && Objects.equals(mEpisodeTitle, content.mEpisodeTitle)
+                && Objects.equals(mDescription, content.mDescription)
+                && Objects.equals(mLongDescription, content.mLongDescription)
+                && mVideoWidth == content.mVideoWidth
+                && mVideoHeight == content.mVideoHeight
+                && Objects.equals(mPosterArtUri, content.mPosterArtUri)
+                && Objects.equals(mThumbnailUri, content.mThumbnailUri)
+                && Objects.equals(mEncodedContentRatings, content.mEncodedContentRatings)
+                && Objects.equals(mEncodedGenres, content.mEncodedGenres)
+                && mSeasonNumber == content.mSeasonNumber
+                && mEpisodeNumber == content.mEpisodeNumber
+                && Objects.equals(mInternalProviderData, content.mInternalProviderData);
+    }
+
+    /**
+     * Puts all the columns of the content.
+     */
+    void putValues(ContentValues values) {
+        if (!TextUtils.isEmpty(mTitle)) {
+            values.put(TvContract.Programs.COLUMN_TITLE, mTitle);
+        } else {
+            values.putNull(TvContract.Programs.COLUMN_TITLE);
+        }
+        if (!TextUtils.isEmpty(mEpisodeTitle)) {
+            values.put(TvContract.Programs.COLUMN_EPISODE_TITLE, mEpisodeTitle);
+        } else {
+            values.putNull(TvContract.Programs.COLUMN_EPISODE_TITLE);
+        }
+        if (mSeasonNumber != INVALID_INT_VALUE) {
+            values.put(TvContract.Programs.COLUMN_SEASON_NUMBER, mSeasonNumber);
+        } else {
+            values.putNull(TvContract.Programs.COLUMN_SEASON_NUMBER);
+        }
+        if (mEpisodeNumber != INVALID_INT_VALUE) {
+            values.put(TvContract.Programs.COLUMN_EPISODE_NUMBER, mEpisodeNumber);
+        } else {
+            values.putNull(TvContract.Programs.COLUMN_EPISODE_NUMBER);
+        }
+        if (!TextUtils.isEmpty(mDescription)) {
+            values.put(TvContract.Programs.COLUMN_SHORT_DESCRIPTION, mDescription);
+        } else {
+            values.putNull(TvContract.Programs.COLUMN_SHORT_DESCRIPTION);
+        }
+        if (!TextUtils.isEmpty(mPosterArtUri)) {
+            values.put(TvContract.Programs.COLUMN_POSTER_ART_URI, mPosterArtUri);
+        } else {
+            values.putNull(TvContract.Programs.COLUMN_POSTER_ART_URI);
+        }
+        if (!TextUtils.isEmpty(mThumbnailUri)) {
+            values.put(TvContract.Programs.COLUMN_THUMBNAIL_URI, mThumbnailUri);
+        } else {
+            values.putNull(TvContract.Programs.COLUMN_THUMBNAIL_URI);
+        }
+        values.put(TvContract.Programs.COLUMN_CANONICAL_GENRE, mEncodedGenres);
+        values.put(TvContract.Programs.COLUMN_CONTENT_RATING, mEncodedContentRatings);
+        if (mVideoWidth != INVALID_INT_VALUE) {
+            values.put(TvContract.Programs.COLUMN_VIDEO_WIDTH, mVideoWidth);
+        } else {
+            values.putNull(TvContract.Programs.COLUMN_VIDEO_WIDTH);
+        }
+        if (mVideoHeight != INVALID_INT_VALUE) {
+            values.put(TvContract.Programs.COLUMN_VIDEO_HEIGHT, mVideoHeight);
+        } else {
+            values.putNull(TvContract.Programs.COLUMN_VIDEO_HEIGHT);
+        }
+        if (!TextUtils.isEmpty(mInternalProviderData)) {
+            values.put(TvContract.Programs.COLUMN_INTERNAL_PROVIDER_DATA, mInternalProviderData);
+        } else {
+            values.putNull(TvContract.Programs.COLUMN_INTERNAL_PROVIDER_DATA);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "title=" + mTitle
+                + ", episodeTitle=" + mEpisodeTitle
+                + ", seasonNumber=" + mSeasonNumber
+                + ", episodeNumber=" + mEpisodeNumber
+                + ", videoWidth=" + mVideoWidth
+                + ", videoHeight=" + mVideoHeight
+                + ", posterArtUri=" + mPosterArtUri
+                + ", thumbnailUri=" + mThumbnailUri
+                + ", contentRatings=" + mEncodedContentRatings
+                + ", genres=" + mEncodedGenres;
+    }
+
+    public static final class Builder {
+        private String mTitle;
+        private String mEpisodeTitle;
+        private int mSeasonNumber = INVALID_INT_VALUE;
+        private int mEpisodeNumber = INVALID_INT_VALUE;
+        private String mDescription;
+        private String mLongDescription;
+        private int mVideoWidth = INVALID_INT_VALUE;
+        private int mVideoHeight = INVALID_INT_VALUE;
+        private String mPosterArtUri;
+        private String mThumbnailUri;
+        private String mInternalProviderData;
+        private String[] mCanonicalGenres;
+        private String mEncodedGenres;
+        private TvContentRating[] mContentRatings;
+        private String mEncodedContentRatings;
+
+        public Builder() {
+        }
+
+        public Builder(ProgramContent other) {
+            mTitle = other.mTitle;
+            mEpisodeTitle = other.mEpisodeTitle;
+            mSeasonNumber = other.mSeasonNumber;
+            mEpisodeNumber = other.mEpisodeNumber;
+            mDescription = other.mDescription;
+            mLongDescription = other.mLongDescription;
+            mVideoWidth = other.mVideoWidth;
+            mVideoHeight = other.mVideoHeight;
+            mPosterArtUri = other.mPosterArtUri;
+            mThumbnailUri = other.mThumbnailUri;
+            mInternalProviderData = other.mInternalProviderData;
+            // The encoded forms are enough, and the decoded ones, if any, are never modified.
+            mCanonicalGenres = other.mCanonicalGenres;
+            mEncodedGenres = other.mEncodedGenres;
+            mContentRatings = other.mContentRatings;
+            mEncodedContentRatings = other.mEncodedContentRatings;
+        }
+
+        public Builder setTitle(String title) {
+            mTitle = title;
+            return this;
+        }
+
+        public Builder setEpisodeTitle(String episodeTitle) {
+            mEpisodeTitle = episodeTitle;
+            return this;
+        }
+
+        public Builder setSeasonNumber(int seasonNumber) {
+            mSeasonNumber = seasonNumber;
+            return this;
+        }
+
+        public Builder setEpisodeNumber(int episodeNumber) {
+            mEpisodeNumber = episodeNumber;
+            return this;
+        }
+
+        public Builder setDescription(String description) {
+            mDescription = description;
+            return this;
+        }
+
+        public Builder setLongDescription(String longDescription) {
+            mLongDescription = longDescription;
+            return this;
+        }
+
+        public Builder setVideoWidth(int width) {
+            mVideoWidth = width;
+            return this;
+        }
+
+        public Builder setVideoHeight(int height) {
+            mVideoHeight = height;
+            return this;
+        }
+
+        public Builder setPosterArtUri(String posterArtUri) {
+            mPosterArtUri = posterArtUri;
+            return this;
+        }
+
+        public Builder setThumbnailUri(String thumbnailUri) {
+            mThumbnailUri = thumbnailUri;
+            return this;
+        }
+
+        public Builder setInternalProviderData(String data) {
+            mInternalProviderData = data;
+            return this;
+        }
+
+        public Builder setCanonicalGenres(String[] genres) {
+            mCanonicalGenres = genres != null ? genres.clone() : null;
+            mEncodedGenres = null;
+            return this;
+        }
+
+        /**
+         * Sets the genres as stored in the database, to be decoded only when asked for.
+         */
+        Builder setEncodedCanonicalGenres(String genres) {
+            mCanonicalGenres = null;
+            mEncodedGenres = genres;
+            return this;
+        }
+
+        public Builder setContentRatings(TvContentRating[] contentRatings) {
+            mContentRatings = contentRatings != null ? contentRatings.clone() : null;
+            mEncodedContentRatings = null;
+            return this;
+        }
+
+        /**
+         * Sets the content ratings as stored in {@link TvContract.Programs#COLUMN_CONTENT_RATING},
+         * e.g. as {@code XmlTvParser.getAndroidRatings} returns them, to be decoded only when
+         * asked for.
+         */
+        public Builder setEncodedContentRatings(String contentRatings) {
+            mContentRatings = null;
+            mEncodedContentRatings = TextUtils.isEmpty(contentRatings) ? null : contentRatings;
+            return this;
+        }
+
+        public ProgramContent build() {
+            return new ProgramContent(this);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2015 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput.data;
+
+import android.database.Cursor;
+import android.media.tv.TvContract;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads {@link Program}s from a cursor over the programs table.
+ *
+ * <p>The column indices are resolved once per cursor instead of once per row. The genres and the
+ * content ratings are kept in their encoded form until they are asked for, since comparing the
+ * programs with {@link Program#equals} doesn't need them decoded. The rows with the same content,
+ * e.g. the occurrences of a repeated program, share a single {@link ProgramContent}.
+ */
+public final class ProgramCursorReader {
+    /**
+     * The columns which {@link Program} holds. Querying with this instead of {@code null} leaves
+     * out the columns it doesn't use, e.g. the audio language and the broadcast genres.
+     */
+    public static final String[] PROJECTION = {
+            TvContract.Programs._ID,
+            TvContract.Programs.COLUMN_CHANNEL_ID,
+            TvContract.Programs.COLUMN_TITLE,
+            TvContract.Programs.COLUMN_EPISODE_TITLE,
+            TvContract.Programs.COLUMN_SEASON_NUMBER,
+            TvContract.Programs.COLUMN_EPISODE_NUMBER,
+            TvContract.Programs.COLUMN_SHORT_DESCRIPTION,
+            TvContract.Programs.COLUMN_LONG_DESCRIPTION,
+            TvContract.Programs.COLUMN_POSTER_ART_URI,
+            TvContract.Programs.COLUMN_THUMBNAIL_URI,
+            TvContract.Programs.COLUMN_CANONICAL_GENRE,
+            TvContract.Programs.COLUMN_CONTENT_RATING,
+            TvContract.Programs.COLUMN_START_TIME_UTC_MILLIS,
+            TvContract.Programs.COLUMN_END_TIME_UTC_MILLIS,
+            TvContract.Programs.COLUMN_VIDEO_WIDTH,
+            TvContract.Programs.COLUMN_VIDEO_HEIGHT,
+            TvContract.Programs.COLUMN_INTERNAL_PROVIDER_DATA,
+            TvContract.Programs.COLUMN_VERSION_NUMBER
+    };
+
+    private final Cursor mCursor;
+    private final int mProgramIdIndex;
+    private final int mChannelIdIndex;
+    private final int mTitleIndex;
+    private final int mEpisodeTitleIndex;
+    private final int mSeasonNumberIndex;
+    private final int mEpisodeNumberIndex;
+    private final int mDescriptionIndex;
+    private final int mLongDescriptionIndex;
+    private final int mPosterArtUriIndex;
+    private final int mThumbnailUriIndex;
+    private final int mGenresIndex;
+    private final int mContentRatingsIndex;
+    private final int mStartTimeIndex;
+    private final int mEndTimeIndex;
+    private final int mVideoWidthIndex;
+    private final int mVideoHeightIndex;
+    private final int mInternalProviderDataIndex;
+    private final int mFingerprintIndex;
+    private final Map<ProgramContent, ProgramContent> mContents = new HashMap<>();
+
+    /**
+     * @param cursor The cursor to read from. It may have any subset of the columns of the programs
+     *         table.
+     */
+    public ProgramCursorReader(Cursor cursor) {
+        mCursor = cursor;
+        mProgramIdIndex = cursor.getColumnIndex(TvContract.Programs._ID);
+        mChannelIdIndex = cursor.getColumnIndex(TvContract.Programs.COLUMN_CHANNEL_ID);
+        mTitleIndex = cursor.getColumnIndex(TvContract.Programs.COLUMN_TITLE);
+        mEpisodeTitleIndex = cursor.getColumnIndex(TvContract.Programs.COLUMN_EPISODE_TITLE);
+        mSeasonNumberIndex = cursor.getColumnIndex(TvContract.Programs.COLUMN_SEASON_NUMBER);
+        mEpisodeNumberIndex = cursor.getColumnIndex(TvContract.Programs.COLUMN_EPISODE_NUMBER);
+        mDescriptionIndex = cursor.getColumnIndex(TvContract.Programs.COLUMN_SHORT_DESCRIPTION);
+        mLongDescriptionIndex = cursor.getColumnIndex(
+                TvContract.Programs.COLUMN_LONG_DESCRIPTION);
+        mPosterArtUriIndex = cursor.getColumnIndex(TvContract.Programs.COLUMN_POSTER_ART_URI);
+        mThumbnailUriIndex = cursor.getColumnIndex(TvContract.Programs.COLUMN_THUMBNAIL_URI);
+        mGenresIndex = cursor.getColumnIndex(TvContract.Programs.COLUMN_CANONICAL_GENRE);
+        mContentRatingsIndex = cursor.getColumnIndex(TvContract.Programs.COLUMN_CONTENT_RATING);
+        mStartTimeIndex = cursor.getColumnIndex(TvContract.Programs.COLUMN_START_TIME_UTC_MILLIS);
+        mEndTimeIndex = cursor.getColumnIndex(TvContract.Programs.COLUMN_END_TIME_UTC_MILLIS);
+        mVideoWidthIndex = cursor.getColumnIndex(TvContract.Programs.COLUMN_VIDEO_WIDTH);
+        mVideoHeightIndex = cursor.getColumnIndex(TvContract.Programs.COLUMN_VIDEO_HEIGHT);
+        mInternalProviderDataIndex = cursor.getColumnIndex(
+                TvContract.Programs.COLUMN_INTERNAL_PROVIDER_DATA);
+        mFingerprintIndex = cursor.getColumnIndex(TvContract.Programs.COLUMN_VERSION_NUMBER);
+    }
+
+    /**
+     * Reads the program at the current position of the cursor.
+     */
+    public Program read() {
+        Program.Builder builder = new Program.Builder();
+        if (hasValue(mProgramIdIndex)) {
+            builder.setProgramId(mCursor.getLong(mProgramIdIndex));
+        }
+        if (hasValue(mChannelIdIndex)) {
+            builder.setChannelId(mCursor.getLong(mChannelIdIndex));
+        }
+        if (hasValue(mStartTimeIndex)) {
+            builder.setStartTimeUtcMillis(mCursor.getLong(mStartTimeIndex));
+        }
+        if (hasValue(mEndTimeIndex)) {
+            builder.setEndTimeUtcMillis(mCursor.getLong(mEndTimeIndex));
+        }
+        builder.setContent(readContent());
+        if (hasValue(mFingerprintIndex)) {
+            // Written by Program.toContentValues(), so that it doesn't need to be computed again.
+            builder.setFingerprint(mCursor.getLong(mFingerprintIndex));
+        }
+        return builder.build();
+    }
+
+    private ProgramContent readContent() {
+        ProgramContent.Builder builder = new ProgramContent.Builder();
+        if (hasValue(mTitleIndex)) {
+            builder.setTitle(mCursor.getString(mTitleIndex));
+        }
+        if (hasValue(mEpisodeTitleIndex)) {
+            builder.setEpisodeTitle(mCursor.getString(mEpisodeTitleIndex));
+        }
+        if (hasValue(mSeasonNumberIndex)) {
+            builder.setSeasonNumber(mCursor.getInt(mSeasonNumberIndex));
+        }
+        if (hasValue(mEpisodeNumberIndex)) {
+            builder.setEpisodeNumber(mCursor.getInt(mEpisodeNumberIndex));
+        }
+        if (hasValue(mDescriptionIndex)) {
+            builder.setDescription(mCursor.getString(mDescriptionIndex));
+        }
+        if (hasValue(mLongDescriptionIndex)) {
+            builder.setLongDescription(mCursor.getString(mLongDescriptionIndex));
+        }
+        if (hasValue(mPosterArtUriIndex)) {
+            builder.setPosterArtUri(mCursor.getString(mPosterArtUriIndex));
+        }
+        if (hasValue(mThumbnailUriIndex)) {
+            builder.setThumbnailUri(mCursor.getString(mThumbnailUriIndex));
+        }
+        if (hasValue(mGenresIndex)) {
+            builder.setEncodedCanonicalGenres(mCursor.getString(mGenresIndex));
+        }
+        if (hasValue(mContentRatingsIndex)) {
+            builder.setEncodedContentRatings(mCursor.getString(mContentRatingsIndex));
+        }
+        if (hasValue(mVideoWidthIndex)) {
+            builder.setVideoWidth((int) mCursor.getLong(mVideoWidthIndex));
+        }
+        if (hasValue(mVideoHeightIndex)) {
+            builder.setVideoHeight((int) mCursor.getLong(mVideoHeightIndex));
+        }
+        if (hasValue(mInternalProviderDataIndex)) {
+            builder.setInternalProviderData(mCursor.getString(mInternalProviderDataIndex));
+        }
+        ProgramContent content = builder.build();
+        ProgramContent sharedContent = mContents.get(content);
+        if (sharedContent != null) {
+            return sharedContent;
+        }
+        mContents.put(content, content);
+        return content;
+    }
+
+    private boolean hasValue(int index) {
+        return index >= 0 && !mCursor.isNull(index);
+    }
+}
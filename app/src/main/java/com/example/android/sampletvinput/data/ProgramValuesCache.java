@@ -0,0 +1,67 @@
+/*
+ * Copyright 2015 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput.data;
+
+import android.content.ContentValues;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Serializes programs to {@link ContentValues}, encoding the content of each distinct program
+ * only once. The following occurrences of the same content, e.g. of a repeated program, reuse
+ * the encoded values and only get their channel and time patched in.
+ *
+ * <p>The returned values are shared with the other occurrences and are only valid until the next
+ * call. Pass them to something that copies them right away, such as
+ * {@link android.content.ContentProviderOperation.Builder#withValues}.
+ */
+public final class ProgramValuesCache {
+    // Bounds the memory of a feed without repeated programs.
+    private static final int MAX_TEMPLATES = 256;
+
+    private final Map<ProgramContent, ContentValues> mTemplates = new HashMap<>();
+    private int mHitCount;
+    private int mMissCount;
+
+    public ContentValues toContentValues(Program program) {
+        ProgramContent content = program.getContent();
+        ContentValues values = mTemplates.get(content);
+        if (values != null) {
+            mHitCount++;
+            program.putScheduleValues(values);
+            return values;
+        }
+        mMissCount++;
+        if (mTemplates.size() >= MAX_TEMPLATES) {
+            mTemplates.clear();
+        }
+        values = program.toContentValues();
+        mTemplates.put(content, values);
+        return values;
+    }
+
+    /** Returns the number of programs whose content was already encoded. */
+    public int getHitCount() {
+        return mHitCount;
+    }
+
+    /** Returns the number of programs whose content had to be encoded. */
+    public int getMissCount() {
+        return mMissCount;
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2015 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput.data;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.media.tv.TvContract;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.sampletvinput.InstrumentedResolver;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Reads the programs of a channel which overlap a time window, in chronological order. The window
+ * is queried a page at a time and only as the iteration reaches it, so that the caller never
+ * holds more than a page of programs nor reads the programs it doesn't get to.
+ *
+ * <p>Each page is read in full and its cursor closed before its programs are returned, so that
+ * the caller may modify the programs while iterating. The IDs of the programs in the window are
+ * read by the first call of {@link #hasNext}, before the caller gets to modify anything, and only
+ * those programs are returned, each at most once. So the later pages neither return the programs
+ * the caller inserted nor return again the ones it updated to start later.
+ */
+public final class ProgramWindowReader implements Iterator<Program> {
+    private static final String TAG = "ProgramWindowReader";
+
+    public static final long DEFAULT_PAGE_DURATION_MS = 1000 * 60 * 60 * 12;  // 12 hours
+
+    private final ContentResolver mResolver;
+    private final Uri mChannelUri;
+    private final long mStartTimeMs;
+    private final long mEndTimeMs;
+    private final long mPageDurationMs;
+
+    private long mNextPageStartMs;
+    private final List<Program> mPage = new ArrayList<>();
+    private int mPageIndex;
+    // The IDs of the programs which are yet to be returned, or null before they are read.
+    private Set<Long> mPendingIds;
+    private boolean mFailed;
+
+    private int mPageCount;
+    private int mRowCount;
+    private long mReadTimeMs;
+
+    /**
+     * @param channelUri The channel to read the programs of.
+     * @param startTimeMs The start of the window. Programs which end at or before it are skipped.
+     * @param endTimeMs The end of the window.
+     */
+    public ProgramWindowReader(ContentResolver resolver, Uri channelUri, long startTimeMs,
+            long endTimeMs) {
+        this(resolver, channelUri, startTimeMs, endTimeMs, DEFAULT_PAGE_DURATION_MS);
+    }
+
+    public ProgramWindowReader(ContentResolver resolver, Uri channelUri, long startTimeMs,
+            long endTimeMs, long pageDurationMs) {
+        if (startTimeMs > endTimeMs || pageDurationMs <= 0) {
+            throw new IllegalArgumentException();
+        }
+        mResolver = resolver;
+        mChannelUri = channelUri;
+        mStartTimeMs = startTimeMs;
+        mEndTimeMs = endTimeMs;
+        mPageDurationMs = pageDurationMs;
+        mNextPageStartMs = startTimeMs;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (mPendingIds == null && !mFailed) {
+            readIds();
+        }
+        while (mPageIndex >= mPage.size()) {
+            if (mFailed || mNextPageStartMs > mEndTimeMs) {
+                return false;
+            }
+            readNextPage();
+        }
+        return true;
+    }
+
+    @Override
+    public Program next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return mPage.get(mPageIndex++);
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /** Returns the number of queries made so far. */
+    public int getPageCount() {
+        return mPageCount;
+    }
+
+    /** Returns the number of rows read so far. */
+    public int getRowCount() {
+        return mRowCount;
+    }
+
+    /** Returns the time spent in the queries so far. */
+    public long getReadTimeMs() {
+        return mReadTimeMs;
+    }
+
+    /**
+     * Returns whether a query failed. The iteration ends early then, so the caller can't tell
+     * the programs which weren't read from the ones which don't exist.
+     */
+    public boolean hasFailed() {
+        return mFailed;
+    }
+
+    private void readIds() {
+        mPendingIds = new HashSet<>();
+        mPageCount++;
+        Uri uri = TvContract.buildProgramsUriForChannel(mChannelUri, mStartTimeMs, mEndTimeMs);
+        long readStartMs = SystemClock.elapsedRealtime();
+        Cursor cursor = null;
+        try {
+            cursor = InstrumentedResolver.query(mResolver, "programs.window_ids", uri,
+                    new String[] {TvContract.Programs._ID}, null, null, null);
+            if (cursor == null) {
+                return;
+            }
+            while (cursor.moveToNext()) {
+                mPendingIds.add(cursor.getLong(0));
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Unable to get program IDs for " + mChannelUri, e);
+            mFailed = true;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+            mReadTimeMs += SystemClock.elapsedRealtime() - readStartMs;
+        }
+    }
+
+    private void readNextPage() {
+        long pageStartMs = mNextPageStartMs;
+        long pageEndMs = Math.min(pageStartMs + mPageDurationMs, mEndTimeMs);
+        boolean firstPage = pageStartMs == mStartTimeMs;
+        boolean lastPage = pageEndMs == mEndTimeMs;
+        mNextPageStartMs = lastPage ? Long.MAX_VALUE : pageEndMs;
+        mPage.clear();
+        mPageIndex = 0;
+        mPageCount++;
+
+        // The query returns the programs which overlap the page, including its both ends. Keep
+        // only the ones which start within the page, so that a program which crosses a page
+        // boundary is returned once.
+        Uri uri = TvContract.buildProgramsUriForChannel(mChannelUri, pageStartMs, pageEndMs);
+        long readStartMs = SystemClock.elapsedRealtime();
+        Cursor cursor = null;
+        try {
+            cursor = InstrumentedResolver.query(mResolver, "programs.window", uri,
+                    ProgramCursorReader.PROJECTION, null, null,
+                    TvContract.Programs.COLUMN_START_TIME_UTC_MILLIS);
+            if (cursor == null) {
+                return;
+            }
+            ProgramCursorReader reader = new ProgramCursorReader(cursor);
+            while (cursor.moveToNext()) {
+                mRowCount++;
+                Program program = reader.read();
+                long startTimeMs = program.getStartTimeUtcMillis();
+                if ((firstPage ? program.getEndTimeUtcMillis() > mStartTimeMs
+                                : startTimeMs >= pageStartMs)
+                        && (lastPage || startTimeMs < pageEndMs)
+                        && mPendingIds.remove(program.getProgramId())) {
+                    mPage.add(program);
+                }
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Unable to get programs for " + mChannelUri, e);
+            mFailed = true;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+            mReadTimeMs += SystemClock.elapsedRealtime() - readStartMs;
+        }
+    }
+}
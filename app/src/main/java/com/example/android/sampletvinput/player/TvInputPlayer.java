@@ -106,6 +106,9 @@ public class TvInputPlayer implements TextRenderer {
     private float mVolume;
     private Surface mSurface;
     private Long mPendingSeekPosition;
+    private boolean mPrepared;
+    // Tells the manifests of the current source from those of a source the player was reset from.
+    private int mPrepareGeneration;
     private final TvTrackInfo[][] mTvTracks = new TvTrackInfo[RENDERER_COUNT][];
     private final int[] mSelectedTvTracks = new int[RENDERER_COUNT];
     private final MultiTrackChunkSource[] mMultiTrackSources =
@@ -191,6 +194,7 @@ public class TvInputPlayer implements TextRenderer {
     }
 
     public void prepare(Context context, final Uri uri, int sourceType) {
+        final int generation = ++mPrepareGeneration;
         if (sourceType == SOURCE_TYPE_HTTP_PROGRESSIVE) {
             DefaultSampleSource sampleSource =
                     new DefaultSampleSource(new FrameworkSampleExtractor(context, uri, null), 2);
@@ -209,6 +213,9 @@ public class TvInputPlayer implements TextRenderer {
                     new ManifestFetcher.ManifestCallback<HlsPlaylist>() {
                         @Override
                         public void onManifest(String contentId, HlsPlaylist manifest) {
+                            if (generation != mPrepareGeneration) {
+                                return;
+                            }
                             DefaultBandwidthMeter bandwidthMeter = new DefaultBandwidthMeter();
                             DataSource dataSource = new UriDataSource(userAgent, bandwidthMeter);
                             HlsChunkSource chunkSource = new HlsChunkSource(dataSource,
@@ -232,6 +239,9 @@ public class TvInputPlayer implements TextRenderer {
 
                         @Override
                         public void onManifestError(String contentId, IOException e) {
+                            if (generation != mPrepareGeneration) {
+                                return;
+                            }
                             for (Callback callback : mCallbacks) {
                                 callback.onPlayerError(new ExoPlaybackException(e));
                             }
@@ -246,6 +256,9 @@ public class TvInputPlayer implements TextRenderer {
                     new ManifestFetcher.ManifestCallback<MediaPresentationDescription>() {
                 @Override
                 public void onManifest(String contentId, MediaPresentationDescription manifest) {
+                    if (generation != mPrepareGeneration) {
+                        return;
+                    }
                     Period period = manifest.periods.get(0);
                     LoadControl loadControl = new DefaultLoadControl(new BufferPool(
                             BUFFER_SEGMENT_SIZE));
@@ -349,6 +362,9 @@ public class TvInputPlayer implements TextRenderer {
 
                 @Override
                 public void onManifestError(String contentId, IOException e) {
+                    if (generation != mPrepareGeneration) {
+                        return;
+                    }
                     for (Callback callback : mCallbacks) {
                         callback.onPlayerError(new ExoPlaybackException(e));
                     }
@@ -429,10 +445,52 @@ public class TvInputPlayer implements TextRenderer {
         }
     }
 
+    public long getCurrentPosition() {
+        return mPlayer.getCurrentPosition();
+    }
+
+    /**
+     * Returns whether {@link Callback#onPrepared} has been called, e.g. to tell whether a player
+     * which was prepared in advance still has to notify its tracks.
+     */
+    public boolean isPrepared() {
+        return mPrepared;
+    }
+
     public void stop() {
         mPlayer.stop();
     }
 
+    /**
+     * Stops the playback and forgets the source and the callbacks, so that the player can be
+     * prepared again. Unlike {@link #release}, this keeps the {@link ExoPlayer} and its playback
+     * thread, and doesn't block. See {@link TvInputPlayerPool}.
+     */
+    public void reset() {
+        // Ignore the manifests of the old source which are still loading.
+        mPrepareGeneration++;
+        mCallbacks.clear();
+        mPlayer.stop();
+        mPlayer.setPlayWhenReady(false);
+        // Stopping doesn't rewind the player.
+        mPlayer.seekTo(0);
+        for (int i = 0; i < RENDERER_COUNT; ++i) {
+            mPlayer.setRendererEnabled(i, true);
+            mTvTracks[i] = new TvTrackInfo[0];
+            mSelectedTvTracks[i] = NO_TRACK_SELECTED;
+            mMultiTrackSources[i] = null;
+        }
+        mAudioRenderer = null;
+        mVideoRenderer = null;
+        mTextRenderer = null;
+        mSurface = null;
+        mPendingSeekPosition = null;
+        mPrepared = false;
+    }
+
+    /**
+     * Releases the {@link ExoPlayer}. Blocks until its playback thread has shut down.
+     */
     public void release() {
         mPlayer.release();
     }
@@ -453,6 +511,7 @@ public class TvInputPlayer implements TextRenderer {
                 mSurface);
         // Disable text track by default.
         mPlayer.setRendererEnabled(TvTrackInfo.TYPE_SUBTITLE, false);
+        mPrepared = true;
         for (Callback callback : mCallbacks) {
             callback.onPrepared();
         }
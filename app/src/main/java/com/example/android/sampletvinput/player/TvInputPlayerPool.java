@@ -0,0 +1,125 @@
+/*
+ * Copyright 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput.player;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the players which are done with to prepare them again, so that a tune or a program
+ * boundary neither creates a new {@link com.google.android.exoplayer.ExoPlayer} with its playback
+ * thread, nor waits for the old one to shut down. The players beyond {@link #MAX_IDLE_PLAYERS}
+ * are released after the current message, e.g. once the new channel is being prepared.
+ *
+ * <p>The renderers, and so the codecs, are still created for every source, since ExoPlayer
+ * releases them when it stops. Must be used on the thread which created the pool.
+ */
+public class TvInputPlayerPool {
+    // One for the player a tune leaves, and one for a pre-tuned player to be prepared from.
+    private static final int MAX_IDLE_PLAYERS = 2;
+
+    private final Handler mHandler = new Handler();
+    private final ArrayDeque<TvInputPlayer> mIdlePlayers = new ArrayDeque<>();
+    private final List<TvInputPlayer> mPlayersToRelease = new ArrayList<>();
+
+    private int mCreatedCount;
+    private long mCreateTimeNs;
+    private int mReusedCount;
+    private int mRecycledCount;
+    private long mResetTimeNs;
+    private int mReleasedCount;
+    private long mReleaseTimeNs;
+
+    private final Runnable mReleaseRunnable = new Runnable() {
+        @Override
+        public void run() {
+            for (TvInputPlayer player : mPlayersToRelease) {
+                release(player);
+            }
+            mPlayersToRelease.clear();
+        }
+    };
+
+    /**
+     * Returns an idle player, or a new one if there is none. Either has to be prepared.
+     */
+    public TvInputPlayer acquire() {
+        TvInputPlayer player = mIdlePlayers.pollFirst();
+        if (player != null) {
+            mReusedCount++;
+            return player;
+        }
+        long startNs = SystemClock.elapsedRealtimeNanos();
+        player = new TvInputPlayer();
+        mCreateTimeNs += SystemClock.elapsedRealtimeNanos() - startNs;
+        mCreatedCount++;
+        return player;
+    }
+
+    /**
+     * Resets the player and keeps it for {@link #acquire}, or releases it later if enough players
+     * are idle already. The player mustn't be used afterwards.
+     */
+    public void recycle(TvInputPlayer player) {
+        long startNs = SystemClock.elapsedRealtimeNanos();
+        player.reset();
+        mResetTimeNs += SystemClock.elapsedRealtimeNanos() - startNs;
+        mRecycledCount++;
+        if (mIdlePlayers.size() < MAX_IDLE_PLAYERS) {
+            mIdlePlayers.addFirst(player);
+        } else {
+            mPlayersToRelease.add(player);
+            mHandler.post(mReleaseRunnable);
+        }
+    }
+
+    /**
+     * Releases all the idle players, e.g. when memory runs low.
+     */
+    public void clear() {
+        mHandler.removeCallbacks(mReleaseRunnable);
+        mReleaseRunnable.run();
+        for (TvInputPlayer player : mIdlePlayers) {
+            release(player);
+        }
+        mIdlePlayers.clear();
+    }
+
+    private void release(TvInputPlayer player) {
+        long startNs = SystemClock.elapsedRealtimeNanos();
+        player.release();
+        mReleaseTimeNs += SystemClock.elapsedRealtimeNanos() - startNs;
+        mReleasedCount++;
+    }
+
+    public void dump(PrintWriter writer) {
+        writer.println("Player pool: idle=" + mIdlePlayers.size() + " created=" + mCreatedCount
+                + " (" + averageUs(mCreateTimeNs, mCreatedCount) + "us) reused=" + mReusedCount
+                + " recycled=" + mRecycledCount + " (" + averageUs(mResetTimeNs, mRecycledCount)
+                + "us) released=" + mReleasedCount + " ("
+                + averageUs(mReleaseTimeNs, mReleasedCount) + "us)");
+    }
+
+    private static long averageUs(long totalNs, int count) {
+        return count == 0 ? 0 : totalNs / count / 1000;
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput.rich;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.media.tv.TvContract;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.LruCache;
+
+import com.example.android.sampletvinput.TvContractUtils;
+import com.example.android.sampletvinput.rich.RichTvInputService.PlaybackInfo;
+
+import java.io.PrintWriter;
+import java.util.List;
+
+/**
+ * Keeps the current and the next {@link PlaybackInfo} of the recently tuned channels in memory,
+ * so that a tune or a program boundary doesn't have to wait for a TvProvider query.
+ *
+ * <p>Only the channels used last are kept, which are the recently tuned ones and the ones
+ * pre-tuned or warmed up around them. Any change to the programs table drops all the entries.
+ * They aren't reloaded until they are needed again: {@link #get} misses and the callers fall back
+ * to {@link #load}.
+ */
+public final class PlaybackInfoCache {
+    private static final String TAG = "PlaybackInfoCache";
+    // How far ahead to look for the next program.
+    private static final long LOOKAHEAD_MS = 1000 * 60 * 60 * 6;  // 6 hours
+    // Enough for the channels warmed up after a sync and the neighbors of the tuned channel.
+    private static final int MAX_ENTRIES = 16;
+
+    private static PlaybackInfoCache sInstance;
+
+    private final ContentResolver mResolver;
+    private final Handler mHandler;
+    private final LruCache<Long, Entry> mEntries = new LruCache<>(MAX_ENTRIES);
+    // Incremented on every change to the programs, so that a load which overlaps a change isn't
+    // cached.
+    private int mGeneration;
+
+    private int mHitCount;
+    private int mMissCount;
+    private int mLoadCount;
+    private int mInvalidationCount;
+
+    public static synchronized PlaybackInfoCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new PlaybackInfoCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private PlaybackInfoCache(Context context) {
+        mResolver = context.getContentResolver();
+        HandlerThread thread = new HandlerThread(TAG);
+        thread.start();
+        mHandler = new Handler(thread.getLooper());
+        mResolver.registerContentObserver(TvContract.Programs.CONTENT_URI, true,
+                new ContentObserver(mHandler) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        invalidate();
+                    }
+                });
+    }
+
+    /**
+     * Returns the program of the channel at the given time from memory, or {@code null} if it
+     * isn't cached or may be out of date. Doesn't block.
+     */
+    public synchronized PlaybackInfo get(Uri channelUri, long timeMs) {
+        Entry entry = mEntries.get(ContentUris.parseId(channelUri));
+        PlaybackInfo info = null;
+        if (entry != null) {
+            if (covers(entry.current, timeMs)) {
+                info = entry.current;
+            } else if (covers(entry.next, timeMs)) {
+                info = entry.next;
+            }
+        }
+        if (info != null) {
+            mHitCount++;
+        } else {
+            mMissCount++;
+        }
+        return info;
+    }
+
+    /**
+     * Queries the program of the channel at the given time and the one following it, and caches
+     * them. Blocks on TvProvider, so don't call it on the main thread.
+     *
+     * @return The program at the given time, or {@code null} if there is none.
+     */
+    public PlaybackInfo load(Uri channelUri, long timeMs) {
+        int generation;
+        synchronized (this) {
+            generation = mGeneration;
+            mLoadCount++;
+        }
+        List<PlaybackInfo> programs = TvContractUtils.getProgramPlaybackInfo(mResolver,
+                channelUri, timeMs, timeMs + LOOKAHEAD_MS, 2);
+        PlaybackInfo current = null;
+        PlaybackInfo next = null;
+        for (PlaybackInfo info : programs) {
+            if (current == null && covers(info, timeMs)) {
+                current = info;
+            } else if (current != null && info.startTimeMs >= current.endTimeMs) {
+                next = info;
+                break;
+            }
+        }
+        if (current == null) {
+            return null;
+        }
+        synchronized (this) {
+            // If the programs changed during the query, the result may be out of date already.
+            if (generation == mGeneration) {
+                mEntries.put(ContentUris.parseId(channelUri), new Entry(current, next));
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Loads the channels in the background, e.g. after they are synced.
+     */
+    public void warm(final List<Uri> channelUris) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                long nowMs = System.currentTimeMillis();
+                for (Uri channelUri : channelUris) {
+                    if (get(channelUri, nowMs) == null) {
+                        load(channelUri, nowMs);
+                    }
+                }
+            }
+        });
+    }
+
+    public synchronized void dump(PrintWriter writer) {
+        writer.println("Playback info cache: channels=" + mEntries.size() + "/" + MAX_ENTRIES
+                + " hits=" + mHitCount + " misses=" + mMissCount + " loads=" + mLoadCount
+                + " evictions=" + mEntries.evictionCount() + " invalidations="
+                + mInvalidationCount);
+    }
+
+    private synchronized void invalidate() {
+        mGeneration++;
+        mInvalidationCount++;
+        mEntries.evictAll();
+    }
+
+    private static boolean covers(PlaybackInfo info, long timeMs) {
+        return info != null && info.startTimeMs <= timeMs && timeMs < info.endTimeMs;
+    }
+
+    private static final class Entry {
+        final PlaybackInfo current;
+        final PlaybackInfo next;
+
+        Entry(PlaybackInfo current, PlaybackInfo next) {
+            this.current = current;
+            this.next = next;
+        }
+    }
+}
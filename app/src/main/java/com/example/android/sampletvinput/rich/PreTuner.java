@@ -0,0 +1,387 @@
+/*
+ * Copyright 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput.rich;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.ContentObserver;
+import android.media.tv.TvContract;
+import android.net.ConnectivityManager;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
+import android.util.LongSparseArray;
+import android.util.Pair;
+import android.view.Surface;
+
+import com.example.android.sampletvinput.TvContractUtils;
+import com.example.android.sampletvinput.player.TvInputPlayer;
+import com.example.android.sampletvinput.player.TvInputPlayerPool;
+import com.example.android.sampletvinput.rich.RichTvInputService.PlaybackInfo;
+import com.google.android.exoplayer.ExoPlaybackException;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps players of the channels next to the one being watched prepared but paused, so that a
+ * channel up or down can start from a warm player instead of from nothing.
+ *
+ * <p>Once a tuned channel starts playing, the playback info of its neighbors by display number is
+ * loaded into {@link PlaybackInfoCache}, and players are prepared for the closest of them, the one
+ * in the direction of the last zap first. The players have no surface, so they fetch the manifest
+ * and buffer, but don't start the video decoder until {@link #take} hands them to a session.
+ *
+ * <p>The budgets are kept in shared preferences and can be changed through the dump of
+ * {@link RichTvInputService}:
+ * <ul>
+ * <li>{@code players}: how many prepared players to keep. Each of them buffers up to several MB
+ * of media. {@code 0} turns the players off.</li>
+ * <li>{@code neighbors}: how many channels on each side to load the playback info of.</li>
+ * <li>{@code metered}: whether to prepare players on a metered network.</li>
+ * <li>{@code warm-sec}: how long after the last zap to keep the players.</li>
+ * </ul>
+ * No players are kept on low-RAM devices, and they are all released when memory runs low.
+ */
+final class PreTuner {
+    private static final String PREFS_NAME = "pretune";
+    private static final String KEY_MAX_PLAYERS = "players";
+    private static final String KEY_NEIGHBOR_COUNT = "neighbors";
+    private static final String KEY_ALLOW_METERED = "metered";
+    private static final String KEY_MAX_WARM_SEC = "warm-sec";
+
+    private static final int DEFAULT_MAX_PLAYERS = 1;
+    private static final int DEFAULT_NEIGHBOR_COUNT = 2;
+    private static final int DEFAULT_MAX_WARM_SEC = 60 * 5;  // 5 min
+
+    private final Context mContext;
+    private final Handler mDbHandler;
+    private final TvInputPlayerPool mPlayerPool;
+    // The players are created and used on the main thread, like those of the sessions.
+    private final Handler mHandler;
+    private final SharedPreferences mPrefs;
+    private final boolean mLowRamDevice;
+
+    // The channel IDs of each input in display order. Only accessed on the DB thread.
+    private final Map<String, long[]> mChannelOrders = new HashMap<>();
+    private final ContentObserver mChannelObserver;
+
+    // Only accessed on the main thread.
+    private final LongSparseArray<WarmPlayer> mWarmPlayers = new LongSparseArray<>();
+    private int mPreparedCount;
+    private int mPromotedCount;
+    private int mWastedCount;
+    private int mErrorCount;
+
+    private final Runnable mExpireRunnable = new Runnable() {
+        @Override
+        public void run() {
+            releaseAll();
+        }
+    };
+
+    PreTuner(Context context, Handler dbHandler, TvInputPlayerPool playerPool) {
+        mContext = context;
+        mDbHandler = dbHandler;
+        mPlayerPool = playerPool;
+        mHandler = new Handler(Looper.getMainLooper());
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        mLowRamDevice = ((ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE))
+                .isLowRamDevice();
+        mChannelObserver = new ContentObserver(dbHandler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                mChannelOrders.clear();
+            }
+        };
+        context.getContentResolver().registerContentObserver(TvContract.Channels.CONTENT_URI,
+                true, mChannelObserver);
+    }
+
+    /**
+     * Pre-tunes the neighbors of the channel, which has just started playing. Called on the main
+     * thread.
+     *
+     * @param previousChannelId The channel tuned before, to tell the direction of the zap, or
+     *         {@code -1}.
+     */
+    void onChannelPlaying(final String inputId, final long previousChannelId,
+            final long channelId) {
+        final int neighborCount = mPrefs.getInt(KEY_NEIGHBOR_COUNT, DEFAULT_NEIGHBOR_COUNT);
+        if (neighborCount <= 0) {
+            releaseAll();
+            return;
+        }
+        mDbHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                final List<Pair<Long, PlaybackInfo>> neighbors =
+                        loadNeighbors(inputId, previousChannelId, channelId, neighborCount);
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        prepare(neighbors);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Returns the player prepared for the program of the channel and stops managing it, or
+     * {@code null} if there is none. Called on the main thread.
+     */
+    TvInputPlayer take(long channelId, PlaybackInfo info) {
+        WarmPlayer warmPlayer = mWarmPlayers.get(channelId);
+        if (warmPlayer == null) {
+            return null;
+        }
+        mWarmPlayers.remove(channelId);
+        if (!warmPlayer.plays(info)) {
+            mWastedCount++;
+            warmPlayer.release();
+            return null;
+        }
+        mPromotedCount++;
+        warmPlayer.mPlayer.removeCallback(warmPlayer);
+        return warmPlayer.mPlayer;
+    }
+
+    /**
+     * Releases all the prepared players. Called on the main thread.
+     */
+    void releaseAll() {
+        mHandler.removeCallbacks(mExpireRunnable);
+        for (int i = 0; i < mWarmPlayers.size(); ++i) {
+            mWastedCount++;
+            mWarmPlayers.valueAt(i).release();
+        }
+        mWarmPlayers.clear();
+    }
+
+    void release() {
+        mContext.getContentResolver().unregisterContentObserver(mChannelObserver);
+        releaseAll();
+    }
+
+    /**
+     * Changes one of the budgets. The players prepared so far are released, so the new budget
+     * applies from the next zap.
+     *
+     * @throws IllegalArgumentException If the key is unknown or the value isn't valid.
+     */
+    void setBudget(String key, String value) {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        if (KEY_ALLOW_METERED.equals(key)) {
+            editor.putBoolean(key, Boolean.parseBoolean(value));
+        } else if (KEY_MAX_PLAYERS.equals(key) || KEY_NEIGHBOR_COUNT.equals(key)
+                || KEY_MAX_WARM_SEC.equals(key)) {
+            editor.putInt(key, Math.max(Integer.parseInt(value), 0));
+        } else {
+            throw new IllegalArgumentException("Unknown pre-tune budget: " + key);
+        }
+        editor.apply();
+        mHandler.post(mExpireRunnable);
+    }
+
+    void dump(PrintWriter writer) {
+        writer.println("Pre-tune: " + KEY_MAX_PLAYERS + "=" + getMaxPlayers() + " "
+                + KEY_NEIGHBOR_COUNT + "=" + mPrefs.getInt(KEY_NEIGHBOR_COUNT,
+                        DEFAULT_NEIGHBOR_COUNT) + " " + KEY_ALLOW_METERED + "="
+                + mPrefs.getBoolean(KEY_ALLOW_METERED, false) + " " + KEY_MAX_WARM_SEC + "="
+                + getMaxWarmSec() + (isAllowed() ? "" : " (off)") + " warm=" + mWarmPlayers.size()
+                + " prepared=" + mPreparedCount + " promoted=" + mPromotedCount + " wasted="
+                + mWastedCount + " errors=" + mErrorCount);
+    }
+
+    private int getMaxPlayers() {
+        return mPrefs.getInt(KEY_MAX_PLAYERS, DEFAULT_MAX_PLAYERS);
+    }
+
+    private int getMaxWarmSec() {
+        return mPrefs.getInt(KEY_MAX_WARM_SEC, DEFAULT_MAX_WARM_SEC);
+    }
+
+    private boolean isAllowed() {
+        if (mLowRamDevice) {
+            return false;
+        }
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        return mPrefs.getBoolean(KEY_ALLOW_METERED, false)
+                || !connectivityManager.isActiveNetworkMetered();
+    }
+
+    /**
+     * Returns the neighbors of the channel, closest first, with the program each of them plays
+     * now, or {@code null} if it has none. Called on the DB thread.
+     */
+    private List<Pair<Long, PlaybackInfo>> loadNeighbors(String inputId, long previousChannelId,
+            long channelId, int neighborCount) {
+        long[] order = mChannelOrders.get(inputId);
+        if (order == null) {
+            order = TvContractUtils.getChannelIdsInDisplayOrder(mContext.getContentResolver(),
+                    inputId);
+            mChannelOrders.put(inputId, order);
+        }
+        List<Pair<Long, PlaybackInfo>> neighbors = new ArrayList<>();
+        int index = -1;
+        for (int i = 0; i < order.length; ++i) {
+            if (order[i] == channelId) {
+                index = i;
+                break;
+            }
+        }
+        if (index < 0) {
+            return neighbors;
+        }
+        // Channel up and down wrap around. Unless the last zap was down, the next one is assumed
+        // to be up.
+        int count = order.length;
+        int direction = previousChannelId == order[(index + 1) % count] ? -1 : 1;
+        PlaybackInfoCache cache = PlaybackInfoCache.getInstance(mContext);
+        long nowMs = System.currentTimeMillis();
+        int[] signs = { direction, -direction };
+        for (int distance = 1; distance <= neighborCount; ++distance) {
+            for (int sign : signs) {
+                long neighborId = order[((index + sign * distance) % count + count) % count];
+                if (neighborId == channelId || contains(neighbors, neighborId)) {
+                    continue;
+                }
+                Uri channelUri = TvContract.buildChannelUri(neighborId);
+                PlaybackInfo info = cache.get(channelUri, nowMs);
+                if (info == null) {
+                    info = cache.load(channelUri, nowMs);
+                }
+                neighbors.add(Pair.create(neighborId, info));
+            }
+        }
+        return neighbors;
+    }
+
+    private static boolean contains(List<Pair<Long, PlaybackInfo>> neighbors, long channelId) {
+        for (Pair<Long, PlaybackInfo> neighbor : neighbors) {
+            if (neighbor.first == channelId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Keeps players for as many of the neighbors as the budget allows, and releases the others.
+     */
+    private void prepare(List<Pair<Long, PlaybackInfo>> neighbors) {
+        int maxPlayers = isAllowed() ? getMaxPlayers() : 0;
+        LongSparseArray<PlaybackInfo> targets = new LongSparseArray<>();
+        for (Pair<Long, PlaybackInfo> neighbor : neighbors) {
+            if (targets.size() >= maxPlayers) {
+                break;
+            }
+            if (neighbor.second != null) {
+                targets.put(neighbor.first, neighbor.second);
+            }
+        }
+        for (int i = mWarmPlayers.size() - 1; i >= 0; --i) {
+            PlaybackInfo target = targets.get(mWarmPlayers.keyAt(i));
+            if (target == null || !mWarmPlayers.valueAt(i).plays(target)) {
+                mWastedCount++;
+                mWarmPlayers.valueAt(i).release();
+                mWarmPlayers.removeAt(i);
+            }
+        }
+        long nowMs = System.currentTimeMillis();
+        for (int i = 0; i < targets.size(); ++i) {
+            if (mWarmPlayers.get(targets.keyAt(i)) == null) {
+                mWarmPlayers.put(targets.keyAt(i), new WarmPlayer(targets.valueAt(i), nowMs));
+                mPreparedCount++;
+            }
+        }
+        mHandler.removeCallbacks(mExpireRunnable);
+        if (mWarmPlayers.size() > 0) {
+            mHandler.postDelayed(mExpireRunnable, getMaxWarmSec() * 1000L);
+        }
+    }
+
+    private final class WarmPlayer implements TvInputPlayer.Callback {
+        private final PlaybackInfo mInfo;
+        private final TvInputPlayer mPlayer;
+
+        WarmPlayer(PlaybackInfo info, long nowMs) {
+            mInfo = info;
+            mPlayer = mPlayerPool.acquire();
+            mPlayer.addCallback(this);
+            mPlayer.setVolume(0);
+            mPlayer.prepare(mContext, Uri.parse(info.videoUrl), info.videoType);
+            long seekPosMs = nowMs - info.startTimeMs;
+            if (seekPosMs > 0) {
+                mPlayer.seekTo(seekPosMs);
+            }
+            mPlayer.setPlayWhenReady(false);
+        }
+
+        boolean plays(PlaybackInfo info) {
+            return info.startTimeMs == mInfo.startTimeMs && info.videoType == mInfo.videoType
+                    && TextUtils.equals(info.videoUrl, mInfo.videoUrl);
+        }
+
+        void release() {
+            mPlayer.removeCallback(this);
+            mPlayerPool.recycle(mPlayer);
+        }
+
+        @Override
+        public void onPlayerError(ExoPlaybackException e) {
+            mErrorCount++;
+            int index = mWarmPlayers.indexOfValue(this);
+            if (index >= 0) {
+                mWarmPlayers.removeAt(index);
+            }
+            release();
+        }
+
+        @Override
+        public void onPrepared() {
+            // Do nothing.
+        }
+
+        @Override
+        public void onPlayerStateChanged(boolean playWhenReady, int state) {
+            // Do nothing.
+        }
+
+        @Override
+        public void onPlayWhenReadyCommitted() {
+            // Do nothing.
+        }
+
+        @Override
+        public void onDrawnToSurface(Surface surface) {
+            // Do nothing.
+        }
+
+        @Override
+        public void onText(String text) {
+            // Do nothing.
+        }
+    }
+}
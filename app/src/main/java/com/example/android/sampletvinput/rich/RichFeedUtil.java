@@ -18,15 +18,20 @@ package com.example.android.sampletvinput.rich;
 
 import android.content.ContentResolver;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.net.Uri;
+import android.os.SystemClock;
 import android.util.Log;
+import android.util.Xml;
 
 import com.example.android.sampletvinput.R;
 import com.example.android.sampletvinput.xmltv.XmlTvParser;
 
 import java.io.IOException;
 import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
 import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
 
@@ -36,8 +41,13 @@ import java.net.URLConnection;
 public class RichFeedUtil {
     private static final String TAG = "RichFeedUtil";
     private static XmlTvParser.TvListing sSampleTvListing;
+    // The validators of the cached listings, if the server sent any.
+    private static String sETag;
+    private static String sLastModified;
 
     private static final boolean USE_LOCAL_XML_FEED = false;
+    private static final String PREFS_NAME = "rich_feed";
+    private static final String KEY_FEED_URI = "feed_uri";
     private static final int URLCONNECTION_CONNECTION_TIMEOUT_MS = 3000;  // 3 sec
     private static final int URLCONNECTION_READ_TIMEOUT_MS = 10000;  // 10 sec
 
@@ -45,24 +55,185 @@ public class RichFeedUtil {
     }
 
     public static XmlTvParser.TvListing getRichTvListings(Context context) {
-        Uri catalogUri =
-                USE_LOCAL_XML_FEED ?
-                        Uri.parse("android.resource://" + context.getPackageName() + "/"
-                                + R.raw.rich_tv_input_xmltv_feed)
-                        : Uri.parse(context.getResources().getString(
-                        R.string.rich_input_feed_url)).normalizeScheme();
+        return getRichTvListings(context, null);
+    }
+
+    /**
+     * Returns the listings, fetching and parsing the feed if it isn't cached yet.
+     *
+     * @param stats If not {@code null}, filled with the numbers of the fetch. They stay zero if the
+     *         cached listings are returned.
+     */
+    public static XmlTvParser.TvListing getRichTvListings(Context context, FetchStats stats) {
         if (sSampleTvListing != null) {
             return sSampleTvListing;
         }
+        return fetchRichTvListings(context, stats);
+    }
+
+    /**
+     * Returns up-to-date listings. The cached listings are revalidated with the validators the
+     * server returned for them, so the feed is only downloaded and parsed again if it has changed.
+     * If the feed can't be fetched or parsed, the cached listings are returned and
+     * {@link FetchStats#failed} is set.
+     *
+     * @param stats If not {@code null}, filled with the numbers of the fetch.
+     */
+    public static XmlTvParser.TvListing refreshRichTvListings(Context context, FetchStats stats) {
+        if (sSampleTvListing != null && !isHttpUri(getCatalogUri(context))) {
+            // A bundled or local feed doesn't change while the app is running.
+            if (stats != null) {
+                stats.notModified = true;
+            }
+            return sSampleTvListing;
+        }
+        return fetchRichTvListings(context, stats);
+    }
+
+    /**
+     * Makes the feed be fetched from the given URI instead of the built-in one until it is reset,
+     * e.g. to sync a feed made by the {@code feedgen} tool. The cached listings are dropped.
+     *
+     * @param uri The {@code http(s)}, {@code file} or {@code android.resource} URI of the feed, or
+     *         {@code null} to go back to the built-in feed.
+     */
+    public static synchronized void setFeedUriOverride(Context context, String uri) {
+        SharedPreferences.Editor editor = getPrefs(context).edit();
+        if (uri != null) {
+            editor.putString(KEY_FEED_URI, uri);
+        } else {
+            editor.remove(KEY_FEED_URI);
+        }
+        editor.apply();
+        sSampleTvListing = null;
+        sETag = null;
+        sLastModified = null;
+    }
+
+    /**
+     * Returns the URI set by {@link #setFeedUriOverride}, or {@code null} if there is none.
+     */
+    public static String getFeedUriOverride(Context context) {
+        return getPrefs(context).getString(KEY_FEED_URI, null);
+    }
+
+    private static SharedPreferences getPrefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    private static Uri getCatalogUri(Context context) {
+        String overrideUri = getFeedUriOverride(context);
+        if (overrideUri != null) {
+            return Uri.parse(overrideUri).normalizeScheme();
+        }
+        return USE_LOCAL_XML_FEED ?
+                Uri.parse("android.resource://" + context.getPackageName() + "/"
+                        + R.raw.rich_tv_input_xmltv_feed)
+                : Uri.parse(context.getResources().getString(
+                R.string.rich_input_feed_url)).normalizeScheme();
+    }
 
-        try (InputStream inputStream = getInputStream(context, catalogUri)) {
-            sSampleTvListing = XmlTvParser.parse(inputStream);
+    private static boolean isHttpUri(Uri uri) {
+        return "http".equals(uri.getScheme()) || "https".equals(uri.getScheme());
+    }
+
+    private static XmlTvParser.TvListing fetchRichTvListings(Context context, FetchStats stats) {
+        Uri catalogUri = getCatalogUri(context);
+        long startMs = SystemClock.elapsedRealtime();
+        HttpURLConnection connection = null;
+        String eTag = null;
+        String lastModified = null;
+        try {
+            InputStream feedInputStream;
+            if (isHttpUri(catalogUri)) {
+                connection = (HttpURLConnection) new URL(catalogUri.toString()).openConnection();
+                connection.setConnectTimeout(URLCONNECTION_CONNECTION_TIMEOUT_MS);
+                connection.setReadTimeout(URLCONNECTION_READ_TIMEOUT_MS);
+                if (sSampleTvListing != null) {
+                    if (sETag != null) {
+                        connection.setRequestProperty("If-None-Match", sETag);
+                    }
+                    if (sLastModified != null) {
+                        connection.setRequestProperty("If-Modified-Since", sLastModified);
+                    }
+                }
+                if (connection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    if (stats != null) {
+                        stats.notModified = true;
+                        stats.fetchMs = SystemClock.elapsedRealtime() - startMs;
+                    }
+                    return sSampleTvListing;
+                }
+                eTag = connection.getHeaderField("ETag");
+                lastModified = connection.getHeaderField("Last-Modified");
+                feedInputStream = new BufferedInputStream(connection.getInputStream());
+            } else {
+                feedInputStream = getInputStream(context, catalogUri);
+            }
+            try (CountingInputStream inputStream = new CountingInputStream(feedInputStream)) {
+                XmlTvParser.TvListing listing = XmlTvParser.parse(Xml.newPullParser(),
+                        inputStream);
+                if (listing != null) {
+                    sSampleTvListing = listing;
+                    sETag = eTag;
+                    sLastModified = lastModified;
+                } else if (stats != null) {
+                    stats.failed = true;
+                }
+                if (stats != null) {
+                    // The feed is parsed while it is read, so the time spent waiting for the data
+                    // is the fetch time and the rest is the parse time.
+                    long totalMs = SystemClock.elapsedRealtime() - startMs;
+                    stats.bytes = inputStream.mCount;
+                    stats.fetchMs = inputStream.mReadTimeMs;
+                    stats.parseMs = totalMs - inputStream.mReadTimeMs;
+                }
+            }
         } catch (IOException e) {
             Log.e(TAG, "Error in fetching " + catalogUri, e);
+            if (stats != null) {
+                stats.failed = true;
+            }
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
         }
         return sSampleTvListing;
     }
 
+    /**
+     * Fetches the feed and passes each channel and program to the listener as soon as it is parsed.
+     * Unlike {@link #getRichTvListings}, the listings are neither kept nor cached.
+     *
+     * @param stats If not {@code null}, filled with the numbers of the fetch. The parse time
+     *         includes the time spent in the listener.
+     * @return {@code true} if the whole feed is fetched and parsed.
+     */
+    public static boolean streamRichTvListings(Context context, XmlTvParser.Listener listener,
+            FetchStats stats) {
+        Uri catalogUri = getCatalogUri(context);
+        long startMs = SystemClock.elapsedRealtime();
+        try (CountingInputStream inputStream = new CountingInputStream(
+                getInputStream(context, catalogUri))) {
+            boolean parsed = XmlTvParser.parse(Xml.newPullParser(), inputStream, listener);
+            if (stats != null) {
+                long totalMs = SystemClock.elapsedRealtime() - startMs;
+                stats.bytes = inputStream.mCount;
+                stats.fetchMs = inputStream.mReadTimeMs;
+                stats.parseMs = totalMs - inputStream.mReadTimeMs;
+                stats.failed = !parsed;
+            }
+            return parsed;
+        } catch (IOException e) {
+            Log.e(TAG, "Error in fetching " + catalogUri, e);
+            if (stats != null) {
+                stats.failed = true;
+            }
+            return false;
+        }
+    }
+
     public static InputStream getInputStream(Context context, Uri uri) throws IOException {
         InputStream inputStream;
         if (ContentResolver.SCHEME_ANDROID_RESOURCE.equals(uri.getScheme())
@@ -77,4 +248,48 @@ public class RichFeedUtil {
         }
         return new BufferedInputStream(inputStream);
     }
+
+    /**
+     * The numbers of a single fetch of the feed.
+     */
+    public static final class FetchStats {
+        public long bytes;
+        public long fetchMs;
+        public long parseMs;
+        /** Whether the cached listings turned out to be up to date. */
+        public boolean notModified;
+        /** Whether the feed couldn't be fetched or parsed, so that the listings may be stale. */
+        public boolean failed;
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private long mCount;
+        private long mReadTimeMs;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            long startMs = SystemClock.elapsedRealtime();
+            int b = super.read();
+            mReadTimeMs += SystemClock.elapsedRealtime() - startMs;
+            if (b >= 0) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            long startMs = SystemClock.elapsedRealtime();
+            int read = super.read(buffer, offset, count);
+            mReadTimeMs += SystemClock.elapsedRealtime() - startMs;
+            if (read > 0) {
+                mCount += read;
+            }
+            return read;
+        }
+    }
 }
@@ -185,6 +185,7 @@ public class RichSetupFragment extends DetailsFragment {
             return;
         }
         TvContractUtils.updateChannels(getActivity(), inputId, mTvListing.channels);
+        SyncUtils.resetSyncState(getActivity(), inputId);
         SyncUtils.setUpPeriodicSync(getActivity(), inputId);
         SyncUtils.requestSync(inputId, true);
         mSyncRequested = true;
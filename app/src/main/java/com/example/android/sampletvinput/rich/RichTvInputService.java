@@ -17,6 +17,8 @@
 package com.example.android.sampletvinput.rich;
 
 import android.content.BroadcastReceiver;
+import android.content.ComponentCallbacks2;
+import android.content.ContentUris;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
@@ -29,6 +31,7 @@ import android.net.Uri;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Message;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 import android.view.Display;
@@ -38,15 +41,20 @@ import android.view.View;
 import android.view.WindowManager;
 import android.view.accessibility.CaptioningManager;
 
+import com.example.android.sampletvinput.InstrumentedResolver;
 import com.example.android.sampletvinput.R;
-import com.example.android.sampletvinput.TvContractUtils;
 import com.example.android.sampletvinput.player.TvInputPlayer;
+import com.example.android.sampletvinput.player.TvInputPlayerPool;
+import com.example.android.sampletvinput.syncadapter.SyncPriorityPolicy;
+import com.example.android.sampletvinput.syncadapter.SyncScheduler;
 import com.example.android.sampletvinput.syncadapter.SyncUtils;
 import com.google.android.exoplayer.ExoPlaybackException;
 import com.google.android.exoplayer.ExoPlayer;
 import com.google.android.exoplayer.text.CaptionStyleCompat;
 import com.google.android.exoplayer.text.SubtitleView;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
@@ -60,8 +68,14 @@ import java.util.Set;
 public class RichTvInputService extends TvInputService {
     private static final String TAG = "RichTvInputService";
 
+    // A promoted pre-tuned player is seeked to the live position only if it is further off.
+    private static final long MAX_WARM_PLAYER_DRIFT_MS = 1000 * 30;  // 30 sec
+
     private HandlerThread mHandlerThread;
     private Handler mDbHandler;
+    private TvInputPlayerPool mPlayerPool;
+    private PreTuner mPreTuner;
+    private final ZapStats mZapStats = new ZapStats();
 
     private List<RichTvInputSessionImpl> mSessions;
     private CaptioningManager mCaptioningManager;
@@ -83,6 +97,8 @@ public class RichTvInputService extends TvInputService {
         mHandlerThread = new HandlerThread(getClass().getSimpleName());
         mHandlerThread.start();
         mDbHandler = new Handler(mHandlerThread.getLooper());
+        mPlayerPool = new TvInputPlayerPool();
+        mPreTuner = new PreTuner(this, mDbHandler, mPlayerPool);
         mCaptioningManager = (CaptioningManager) getSystemService(Context.CAPTIONING_SERVICE);
 
         setTheme(android.R.style.Theme_Holo_Light_NoActionBar);
@@ -98,11 +114,48 @@ public class RichTvInputService extends TvInputService {
     public void onDestroy() {
         super.onDestroy();
         unregisterReceiver(mParentalControlsBroadcastReceiver);
+        mPreTuner.release();
+        mPlayerPool.clear();
         mHandlerThread.quit();
         mHandlerThread = null;
         mDbHandler = null;
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            mPreTuner.releaseAll();
+            mPlayerPool.clear();
+        }
+    }
+
+    /**
+     * Prints the caches, the zap times and the numbers of {@link InstrumentedResolver}.
+     * {@code dumpsys activity service <this service> pretune <budget>=<value>...} changes the
+     * budgets of {@link PreTuner} instead, e.g. {@code pretune players=2 metered=true}.
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        if (args.length > 0 && "pretune".equals(args[0])) {
+            for (int i = 1; i < args.length; ++i) {
+                String[] budget = args[i].split("=", 2);
+                try {
+                    mPreTuner.setBudget(budget[0], budget.length > 1 ? budget[1] : "");
+                } catch (IllegalArgumentException e) {
+                    writer.println(e.getMessage());
+                }
+            }
+            mPreTuner.dump(writer);
+            return;
+        }
+        PlaybackInfoCache.getInstance(this).dump(writer);
+        mPreTuner.dump(writer);
+        mPlayerPool.dump(writer);
+        mZapStats.dump(writer);
+        InstrumentedResolver.dump(writer);
+    }
+
     @Override
     public final Session onCreateSession(String inputId) {
         RichTvInputSessionImpl session = new RichTvInputSessionImpl(this, inputId);
@@ -125,6 +178,11 @@ public class RichTvInputService extends TvInputService {
         private PlaybackInfo mCurrentPlaybackInfo;
         private TvContentRating mLastBlockedRating;
         private TvContentRating mCurrentContentRating;
+        private long mChannelId = -1;
+        private long mPreviousChannelId = -1;
+        // When the current tune started, or 0 once its first frame is drawn.
+        private long mTuneStartMs;
+        private boolean mTuneWarm;
         private String mSelectedSubtitleTrackId;
         private SubtitleView mSubtitleView;
         private boolean mEpgSyncRequested;
@@ -175,6 +233,13 @@ public class RichTvInputService extends TvInputService {
             public void onDrawnToSurface(Surface surface) {
                 mFirstFrameDrawn = true;
                 notifyVideoAvailable();
+                if (mTuneStartMs != 0) {
+                    mZapStats.record(mTuneWarm, SystemClock.elapsedRealtime() - mTuneStartMs);
+                    mTuneStartMs = 0;
+                    // Warm up the neighbors only now, so that they don't compete with the tuned
+                    // channel for the bandwidth.
+                    mPreTuner.onChannelPlaying(mInputId, mPreviousChannelId, mChannelId);
+                }
             }
 
             @Override
@@ -219,6 +284,10 @@ public class RichTvInputService extends TvInputService {
             }
             releasePlayer();
             mSessions.remove(this);
+            if (mSessions.isEmpty()) {
+                mPreTuner.releaseAll();
+                mPlayerPool.clear();
+            }
         }
 
         @Override
@@ -261,18 +330,34 @@ public class RichTvInputService extends TvInputService {
             mCurrentPlaybackInfo = info;
             mCurrentContentRating = (info.contentRatings == null || info.contentRatings.length == 0)
                     ? null : info.contentRatings[0];
-            mPlayer = new TvInputPlayer();
-            mPlayer.addCallback(mPlayerCallback);
-            mPlayer.prepare(RichTvInputService.this, Uri.parse(info.videoUrl), info.videoType);
+            // Start from the player prepared in advance for the channel, if there is one.
+            TvInputPlayer warmPlayer = mPreTuner.take(mChannelId, info);
+            if (warmPlayer != null) {
+                mPlayer = warmPlayer;
+                mPlayer.addCallback(mPlayerCallback);
+            } else {
+                mPlayer = mPlayerPool.acquire();
+                mPlayer.addCallback(mPlayerCallback);
+                mPlayer.prepare(RichTvInputService.this, Uri.parse(info.videoUrl),
+                        info.videoType);
+            }
+            if (mTuneStartMs != 0) {
+                mTuneWarm = warmPlayer != null;
+            }
             mPlayer.setSurface(mSurface);
             mPlayer.setVolume(mVolume);
 
             long nowMs = System.currentTimeMillis();
             int seekPosMs = (int) (nowMs - info.startTimeMs);
-            if (seekPosMs > 0) {
+            if (seekPosMs > 0 && (warmPlayer == null || Math.abs(
+                    mPlayer.getCurrentPosition() - seekPosMs) > MAX_WARM_PLAYER_DRIFT_MS)) {
                 mPlayer.seekTo(seekPosMs);
             }
             mPlayer.setPlayWhenReady(true);
+            if (warmPlayer != null && warmPlayer.isPrepared()) {
+                // The tracks were ready before the session got the player.
+                mPlayerCallback.onPrepared();
+            }
 
             checkContentBlockNeeded();
             mDbHandler.postDelayed(mPlayCurrentProgramRunnable, info.endTimeMs - nowMs + 1000);
@@ -286,10 +371,24 @@ public class RichTvInputService extends TvInputService {
             }
             notifyVideoUnavailable(TvInputManager.VIDEO_UNAVAILABLE_REASON_TUNING);
             mUnblockedRatingSet.clear();
+            mPreviousChannelId = mChannelId;
+            mChannelId = ContentUris.parseId(channelUri);
+            mTuneStartMs = SystemClock.elapsedRealtime();
+            mTuneWarm = false;
 
             mDbHandler.removeCallbacks(mPlayCurrentProgramRunnable);
             mPlayCurrentProgramRunnable = new PlayCurrentProgramRunnable(channelUri);
-            mDbHandler.post(mPlayCurrentProgramRunnable);
+            // Start playing right away if the program is in memory. Otherwise look it up in the
+            // database on the DB thread.
+            PlaybackInfo info = PlaybackInfoCache.getInstance(mContext).get(channelUri,
+                    System.currentTimeMillis());
+            if (info != null) {
+                mHandler.removeMessages(MSG_PLAY_PROGRAM);
+                mHandler.obtainMessage(MSG_PLAY_PROGRAM, info).sendToTarget();
+            } else {
+                mDbHandler.post(mPlayCurrentProgramRunnable);
+            }
+            mDbHandler.post(new RecordTuneRunnable(channelUri));
             return true;
         }
 
@@ -338,8 +437,8 @@ public class RichTvInputService extends TvInputService {
             if (mPlayer != null) {
                 mPlayer.removeCallback(mPlayerCallback);
                 mPlayer.setSurface(null);
-                mPlayer.stop();
-                mPlayer.release();
+                // The player is stopped, and prepared again by the next tune.
+                mPlayerPool.recycle(mPlayer);
                 mPlayer = null;
             }
         }
@@ -388,6 +487,21 @@ public class RichTvInputService extends TvInputService {
                     CAPTION_LINE_HEIGHT_RATIO * Math.min(displaySize.x, displaySize.y));
         }
 
+        private class RecordTuneRunnable implements Runnable {
+            private final Uri mChannelUri;
+
+            public RecordTuneRunnable(Uri channelUri) {
+                mChannelUri = channelUri;
+            }
+
+            @Override
+            public void run() {
+                // The sync adapter syncs the frequently watched channels first.
+                SyncPriorityPolicy.recordTune(mContext, mChannelUri);
+                SyncScheduler.requestSyncIfEpgTailShort(mContext, mInputId);
+            }
+        }
+
         private class PlayCurrentProgramRunnable implements Runnable {
             private static final int RETRY_DELAY_MS = 2000;
             private final Uri mChannelUri;
@@ -399,11 +513,15 @@ public class RichTvInputService extends TvInputService {
             @Override
             public void run() {
                 long nowMs = System.currentTimeMillis();
-                List<PlaybackInfo> programs = TvContractUtils.getProgramPlaybackInfo(
-                        mContext.getContentResolver(), mChannelUri, nowMs, nowMs + 1, 1);
-                if (!programs.isEmpty()) {
+                // At a program boundary, the next program is usually in memory already.
+                PlaybackInfoCache cache = PlaybackInfoCache.getInstance(mContext);
+                PlaybackInfo info = cache.get(mChannelUri, nowMs);
+                if (info == null) {
+                    info = cache.load(mChannelUri, nowMs);
+                }
+                if (info != null) {
                     mHandler.removeMessages(MSG_PLAY_PROGRAM);
-                    mHandler.obtainMessage(MSG_PLAY_PROGRAM, programs.get(0)).sendToTarget();
+                    mHandler.obtainMessage(MSG_PLAY_PROGRAM, info).sendToTarget();
                 } else {
                     Log.w(TAG, "Failed to get program info for " + mChannelUri + ". Retry in " +
                             RETRY_DELAY_MS + "ms.");
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput.rich;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+/**
+ * Zap times, from {@code onTune} to the first frame, of the tunes which started from a pre-tuned
+ * player and of the ones which started from nothing.
+ */
+final class ZapStats {
+    // The percentiles and the maximum are of the most recent zaps, so that a long session
+    // doesn't keep every zap.
+    private static final int MAX_SAMPLES = 100;
+
+    private final Samples mWarm = new Samples();
+    private final Samples mCold = new Samples();
+
+    synchronized void record(boolean warm, long zapMs) {
+        (warm ? mWarm : mCold).add(zapMs);
+    }
+
+    synchronized void dump(PrintWriter writer) {
+        writer.println("Zap times: warm " + mWarm + ", cold " + mCold);
+    }
+
+    private static final class Samples {
+        private final long[] mSamples = new long[MAX_SAMPLES];
+        private int mCount;
+        private long mTotalMs;
+
+        void add(long zapMs) {
+            mSamples[mCount % MAX_SAMPLES] = zapMs;
+            mCount++;
+            mTotalMs += zapMs;
+        }
+
+        @Override
+        public String toString() {
+            if (mCount == 0) {
+                return "count=0";
+            }
+            long[] recent = Arrays.copyOf(mSamples, Math.min(mCount, MAX_SAMPLES));
+            Arrays.sort(recent);
+            return "count=" + mCount + " mean=" + mTotalMs / mCount + "ms p50="
+                    + recent[recent.length / 2] + "ms p90=" + recent[recent.length * 9 / 10]
+                    + "ms max=" + recent[recent.length - 1] + "ms";
+        }
+    }
+}
@@ -26,6 +26,7 @@ import android.media.tv.TvInputService;
 import android.net.Uri;
 import android.view.Surface;
 
+import com.example.android.sampletvinput.InstrumentedResolver;
 import com.example.android.sampletvinput.R;
 
 import java.io.IOException;
@@ -93,7 +94,8 @@ public class SimpleTvInputService extends TvInputService {
             int resource = RESOURCE_1;
             Cursor cursor = null;
             try {
-                cursor = getContentResolver().query(channelUri, projection, null, null, null);
+                cursor = InstrumentedResolver.query(getContentResolver(), "simple.tune",
+                        channelUri, projection, null, null, null);
                 if (cursor == null || cursor.getCount() == 0) {
                     return false;
                 }
@@ -28,6 +28,7 @@ import android.media.tv.TvInputInfo;
 import android.net.Uri;
 import android.os.Bundle;
 
+import com.example.android.sampletvinput.InstrumentedResolver;
 import com.example.android.sampletvinput.R;
 
 /**
@@ -62,7 +63,8 @@ public class SimpleTvInputSetupActivity extends Activity {
         Uri uri = TvContract.buildChannelsUriForInput(mInputId);
         Cursor cursor = null;
         try {
-            cursor = getContentResolver().query(uri, null, null, null, null);
+            cursor = InstrumentedResolver.query(getContentResolver(), "simple.setup", uri, null,
+                    null, null, null);
             if (cursor != null && cursor.getCount() > 0) {
                 return;
             }
@@ -81,7 +83,8 @@ public class SimpleTvInputSetupActivity extends Activity {
         values.put(TvContract.Channels.COLUMN_ORIGINAL_NETWORK_ID, CHANNEL_1_ORIG_NETWORK_ID);
         values.put(TvContract.Channels.COLUMN_TRANSPORT_STREAM_ID, CHANNEL_1_TRANSPORT_STREAM_ID);
         values.put(TvContract.Channels.COLUMN_SERVICE_ID, CHANNEL_1_SERVICE_ID);
-        getContentResolver().insert(TvContract.Channels.CONTENT_URI, values);
+        InstrumentedResolver.insert(getContentResolver(), "simple.setup",
+                TvContract.Channels.CONTENT_URI, values);
 
         // Register channel 1-2.
         values.put(TvContract.Channels.COLUMN_DISPLAY_NUMBER, CHANNEL_2_NUMBER);
@@ -89,7 +92,8 @@ public class SimpleTvInputSetupActivity extends Activity {
         values.put(TvContract.Channels.COLUMN_ORIGINAL_NETWORK_ID, CHANNEL_2_ORIG_NETWORK_ID);
         values.put(TvContract.Channels.COLUMN_TRANSPORT_STREAM_ID, CHANNEL_2_TRANSPORT_STREAM_ID);
         values.put(TvContract.Channels.COLUMN_SERVICE_ID, CHANNEL_2_SERVICE_ID);
-        getContentResolver().insert(TvContract.Channels.CONTENT_URI, values);
+        InstrumentedResolver.insert(getContentResolver(), "simple.setup",
+                TvContract.Channels.CONTENT_URI, values);
     }
 
     public static class MyAlertDialogFragment extends DialogFragment {
@@ -19,7 +19,7 @@ package com.example.android.sampletvinput.syncadapter;
 import android.accounts.Account;
 import android.content.AbstractThreadedSyncAdapter;
 import android.content.ContentProviderClient;
-import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.Context;
 import android.content.OperationApplicationException;
@@ -28,16 +28,31 @@ import android.media.tv.TvContract;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.util.Log;
 import android.util.LongSparseArray;
 
+import com.example.android.sampletvinput.ContentProviderBatcher;
+import com.example.android.sampletvinput.R;
 import com.example.android.sampletvinput.TvContractUtils;
 import com.example.android.sampletvinput.data.Program;
+import com.example.android.sampletvinput.data.ProgramContent;
+import com.example.android.sampletvinput.data.ProgramValuesCache;
+import com.example.android.sampletvinput.data.ProgramWindowReader;
+import com.example.android.sampletvinput.epg.ProgramDiffer;
+import com.example.android.sampletvinput.epg.ProgramScheduler;
+import com.example.android.sampletvinput.rich.PlaybackInfoCache;
 import com.example.android.sampletvinput.rich.RichFeedUtil;
 import com.example.android.sampletvinput.xmltv.XmlTvParser;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * A SyncAdapter implementation which updates program info periodically.
@@ -47,139 +62,572 @@ class SyncAdapter extends AbstractThreadedSyncAdapter {
 
     public static final String BUNDLE_KEY_INPUT_ID = "bundle_key_input_id";
     public static final String BUNDLE_KEY_CURRENT_PROGRAM_ONLY = "bundle_key_current_program_only";
+    static final String BUNDLE_KEY_REQUEST_SEQUENCE = "bundle_key_request_sequence";
+    static final String BUNDLE_KEY_DRY_RUN = "bundle_key_dry_run";
     public static final long FULL_SYNC_FREQUENCY_SEC = 60 * 60 * 24;  // daily
     private static final int FULL_SYNC_WINDOW_SEC = 60 * 60 * 24 * 14;  // 2 weeks
     private static final int SHORT_SYNC_WINDOW_SEC = 60 * 60;  // 1 hour
-    private static final int BATCH_OPERATION_COUNT = 100;
+    private static final long CHECKPOINT_MAX_AGE_MS = 1000 * 60 * 60 * 6;  // 6 hours
+    private static final long STREAMING_LISTING_VERSION = 0;
+    // How many channels to load into the playback info cache after a sync.
+    private static final int WARM_CHANNEL_COUNT = 10;
 
     private final Context mContext;
+    private final ContentResolver mResolver;
+    private final SyncStateStore mSyncStateStore;
+    private final SyncPriorityPolicy mSyncPriorityPolicy;
+    private final SyncReportStore mSyncReportStore;
+    private final SyncScheduler mSyncScheduler;
+    // Whether the synced programs are in the TvProvider the TV input service plays from.
+    private final boolean mWarmsPlaybackInfoCache;
 
     public SyncAdapter(Context context, boolean autoInitialize) {
-        super(context, autoInitialize);
-        mContext = context;
+        this(context, autoInitialize, false);
     }
 
     public SyncAdapter(Context context, boolean autoInitialize, boolean allowParallelSyncs) {
         super(context, autoInitialize, allowParallelSyncs);
         mContext = context;
+        mResolver = context.getContentResolver();
+        mSyncStateStore = new SyncStateStore(context);
+        mSyncPriorityPolicy = new SyncPriorityPolicy(context);
+        mSyncReportStore = new SyncReportStore(context);
+        mSyncScheduler = new SyncScheduler(context);
+        mWarmsPlaybackInfoCache = true;
     }
 
     /**
-     * Called periodically by the system in every {@code FULL_SYNC_FREQUENCY_SEC}.
+     * Creates an adapter which reads and writes through the given resolver and keeps its state in
+     * the given store, e.g. to run {@link #syncInput} against a fake provider in a benchmark.
+     * Nothing the app or the TV input service use is touched.
+     */
+    SyncAdapter(Context context, ContentResolver resolver, SyncStateStore syncStateStore) {
+        super(context, false, false);
+        mContext = context;
+        mResolver = resolver;
+        mSyncStateStore = syncStateStore;
+        mSyncPriorityPolicy = new SyncPriorityPolicy(context);
+        mSyncReportStore = new SyncReportStore(context);
+        mSyncScheduler = new SyncScheduler(context);
+        mWarmsPlaybackInfoCache = false;
+    }
+
+    /**
+     * Called periodically by the system, at first in every {@code FULL_SYNC_FREQUENCY_SEC} and then
+     * as often as {@link SyncScheduler} decides from the changes of the feed.
+     *
+     * <p>The periodic sync has no input ID and syncs all the inputs registered with
+     * {@link SyncUtils#setUpPeriodicSync}. The feed is fetched and parsed once and the programs are
+     * written to each input in turn, each with its own report.
      */
     @Override
     public void onPerformSync(Account account, Bundle extras, String authority,
             ContentProviderClient provider, SyncResult syncResult) {
         Log.d(TAG, "onPerformSync(" + account + ", " + authority + ", " + extras + ")");
-        String inputId = extras.getString(SyncAdapter.BUNDLE_KEY_INPUT_ID);
-        if (inputId == null) {
+        String requestedInputId = extras.getString(SyncAdapter.BUNDLE_KEY_INPUT_ID);
+        List<String> inputIds = requestedInputId != null
+                ? Collections.singletonList(requestedInputId)
+                : mSyncStateStore.getInputIds();
+        long sequence = extras.getLong(BUNDLE_KEY_REQUEST_SEQUENCE, 0);
+        boolean requestedCurrentProgramOnly =
+                extras.getBoolean(SyncAdapter.BUNDLE_KEY_CURRENT_PROGRAM_ONLY, false);
+        if (extras.getBoolean(BUNDLE_KEY_DRY_RUN, false)) {
+            // A dry run neither serves nor waits for the other requests.
+            syncInMemory(inputIds, requestedCurrentProgramOnly, true, syncResult,
+                    new HashSet<String>());
             return;
         }
-        XmlTvParser.TvListing listings = RichFeedUtil.getRichTvListings(mContext);
-        LongSparseArray<XmlTvParser.XmlTvChannel> channelMap = TvContractUtils.buildChannelMap(
-                mContext.getContentResolver(), inputId, listings.channels);
-        boolean currentProgramOnly = extras.getBoolean(
-                SyncAdapter.BUNDLE_KEY_CURRENT_PROGRAM_ONLY, false);
-        long startMs = System.currentTimeMillis();
-        long endMs = startMs + FULL_SYNC_WINDOW_SEC * 1000;
-        if (currentProgramOnly) {
-            // This is requested from the setup activity, in this case, users don't need to wait for
-            // the full sync. Sync the current programs first and do the full sync later in the
-            // background.
-            endMs = startMs + SHORT_SYNC_WINDOW_SEC * 1000;
+
+        SyncRequestCoordinator coordinator = SyncRequestCoordinator.getInstance();
+        List<String> startedInputIds = new ArrayList<>();
+        boolean currentProgramOnly = true;
+        for (String inputId : inputIds) {
+            int mode = coordinator.onSyncStarted(inputId, sequence, requestedCurrentProgramOnly);
+            if (mode != SyncRequestCoordinator.SYNC_SKIP) {
+                startedInputIds.add(inputId);
+                currentProgramOnly &= mode == SyncRequestCoordinator.SYNC_SHORT;
+            }
         }
-        for (int i = 0; i < channelMap.size(); ++i) {
-            Uri channelUri = TvContract.buildChannelUri(channelMap.keyAt(i));
-            List<Program> programs = getPrograms(channelUri, channelMap.valueAt(i),
-                    listings.programs, startMs, endMs);
-            updatePrograms(channelUri, programs);
+        if (startedInputIds.isEmpty()) {
+            return;
+        }
+
+        // The inputs share the SyncResult, so it can't tell which of them failed.
+        Set<String> syncedInputIds = new HashSet<>();
+        try {
+            if (mContext.getResources().getBoolean(R.bool.rich_input_feed_grouped_by_channel)) {
+                try {
+                    syncStreaming(startedInputIds, currentProgramOnly, syncResult,
+                            syncedInputIds);
+                    return;
+                } catch (FeedNotGroupedException e) {
+                    // The channels written so far have watermarks, so redoing them is cheap.
+                    Log.w(TAG, e.getMessage() + " Falling back to loading the whole feed.");
+                }
+            }
+            syncInMemory(startedInputIds, currentProgramOnly, false, syncResult, syncedInputIds);
+        } finally {
+            for (String inputId : startedInputIds) {
+                coordinator.onSyncFinished(inputId, syncedInputIds.contains(inputId));
+            }
         }
     }
 
     /**
-     * Returns a list of programs for the given time range.
+     * Loads the whole listings and writes them to each input in turn.
      *
-     * @param channelUri The channel where the program info will be added.
-     * @param channel The {@link XmlTvParser.XmlTvChannel} for the programs to return.
-     * @param programs The feed fetched from cloud.
-     * @param startTimeMs The start time of the range requested.
-     * @param endTimeMs The end time of the range requested.
+     * @param dryRun If {@code true}, the operations are only counted in the reports, and neither
+     *         the programs nor the sync state are written. Dry runs always load the whole feed.
+     * @param syncedInputIds Filled with the inputs which have been synced successfully.
      */
-    private List<Program> getPrograms(Uri channelUri, XmlTvParser.XmlTvChannel channel,
-            List<XmlTvParser.XmlTvProgram> programs, long startTimeMs, long endTimeMs) {
-        if (startTimeMs > endTimeMs) {
-            throw new IllegalArgumentException();
-        }
-        List<XmlTvParser.XmlTvProgram> channelPrograms = new ArrayList<>();
-        for (XmlTvParser.XmlTvProgram program : programs) {
-            if (program.channelId.equals(channel.id)) {
-                channelPrograms.add(program);
+    private void syncInMemory(List<String> inputIds, boolean currentProgramOnly, boolean dryRun,
+            SyncResult syncResult, Set<String> syncedInputIds) {
+        RichFeedUtil.FetchStats fetchStats = new RichFeedUtil.FetchStats();
+        // The short sync only needs the current programs, which the cached listings have anyway.
+        XmlTvParser.TvListing listings = currentProgramOnly
+                ? RichFeedUtil.getRichTvListings(mContext, fetchStats)
+                : RichFeedUtil.refreshRichTvListings(mContext, fetchStats);
+        if (listings == null) {
+            fetchStats.failed = true;
+        }
+        if (fetchStats.failed) {
+            // The cached listings, if any, are still written, but the sync has to be retried and
+            // mustn't count as having found the feed unchanged.
+            syncResult.stats.numIoExceptions++;
+        }
+        long feedVersion = 0;
+        boolean succeeded = true;
+        for (int i = 0; i < inputIds.size(); ++i) {
+            String inputId = inputIds.get(i);
+            SyncStats stats = new SyncStats(inputId);
+            stats.currentProgramOnly = currentProgramOnly;
+            stats.dryRun = dryRun;
+            if (i == 0) {
+                setFetchStats(stats, fetchStats, 0);
+            } else {
+                // The numbers of the fetch are in the report of the first input.
+                stats.feedShared = true;
+            }
+            long inputEpgEndMs = SyncStateStore.INVALID_WATERMARK;
+            try {
+                if (listings != null) {
+                    inputEpgEndMs = syncInput(inputId, currentProgramOnly, listings, stats,
+                            syncResult);
+                }
+                if (fetchStats.failed) {
+                    stats.error = "fetch";
+                }
+            } finally {
+                report(stats, syncResult);
+            }
+            if (stats.error != null || inputEpgEndMs == SyncStateStore.INVALID_WATERMARK) {
+                succeeded = false;
+                continue;
+            }
+            syncedInputIds.add(inputId);
+            feedVersion = stats.feedVersion;
+            if (!dryRun) {
+                mSyncScheduler.onInputSynced(inputId, inputEpgEndMs);
             }
         }
+        if (!currentProgramOnly && !dryRun && succeeded) {
+            mSyncScheduler.onFullSyncFinished(feedVersion, fetchStats.notModified);
+        }
+    }
 
-        List<Program> programForGivenTime = new ArrayList<>();
-        if (!channel.repeatPrograms) {
-            for (XmlTvParser.XmlTvProgram program : channelPrograms) {
-                if (program.startTimeUtcMillis <= endTimeMs
-                        && program.endTimeUtcMillis >= startTimeMs) {
-                    programForGivenTime.add(new Program.Builder()
-                                    .setChannelId(ContentUris.parseId(channelUri))
-                                    .setTitle(program.title)
-                                    .setDescription(program.description)
-                                    .setContentRatings(XmlTvParser.xmlTvRatingToTvContentRating(
-                                            program.rating))
-                                    .setCanonicalGenres(program.category)
-                                    .setPosterArtUri(program.icon.src)
-                                    .setInternalProviderData(TvContractUtils.
-                                            convertVideoInfoToInternalProviderData(
-                                                    program.videoType, program.videoSrc))
-                                    .setStartTimeUtcMillis(program.startTimeUtcMillis)
-                                    .setEndTimeUtcMillis(program.endTimeUtcMillis)
-                                    .build()
-                    );
+    /**
+     * Writes each channel to all the inputs as soon as its programs are parsed, so that neither
+     * the whole listings nor the programs of more than one channel are ever in memory.
+     *
+     * <p>This needs a feed whose programs are grouped by channel. The channels are synced in the
+     * order of the feed, and a sync killed half way through starts over, relying on the
+     * watermarks of the channels committed so far to skip most of their work.
+     *
+     * @param syncedInputIds Filled with the inputs which have been synced successfully.
+     * @throws FeedNotGroupedException if the programs of a channel turn out to be split up.
+     */
+    private void syncStreaming(List<String> inputIds, boolean currentProgramOnly,
+            SyncResult syncResult, Set<String> syncedInputIds) {
+        long startMs = System.currentTimeMillis();
+        long endMs = startMs + (currentProgramOnly ? SHORT_SYNC_WINDOW_SEC : FULL_SYNC_WINDOW_SEC)
+                * 1000;
+        List<StreamingInput> inputs = new ArrayList<>();
+        for (String inputId : inputIds) {
+            SyncStats stats = new SyncStats(inputId);
+            stats.currentProgramOnly = currentProgramOnly;
+            stats.streaming = true;
+            inputs.add(new StreamingInput(inputId, stats, endMs));
+            reconcileInterruptedChannel(inputId);
+            // The checkpoint only bounds the list of the committed channels. It is never resumed
+            // since the listing version isn't known until the whole feed is parsed.
+            mSyncStateStore.startCheckpoint(inputId, STREAMING_LISTING_VERSION, currentProgramOnly,
+                    startMs, endMs);
+        }
+        ChannelStreamListener listener = new ChannelStreamListener(inputs, currentProgramOnly,
+                startMs, endMs, syncResult);
+        RichFeedUtil.FetchStats fetchStats = new RichFeedUtil.FetchStats();
+        boolean parsed = RichFeedUtil.streamRichTvListings(mContext, listener, fetchStats);
+        if (parsed) {
+            listener.finish();
+        } else {
+            syncResult.stats.numIoExceptions++;
+        }
+        boolean succeeded = parsed;
+        for (int i = 0; i < inputs.size(); ++i) {
+            StreamingInput input = inputs.get(i);
+            if (i == 0) {
+                setFetchStats(input.stats, fetchStats, listener.mSyncTimeMs);
+            } else {
+                input.stats.feedShared = true;
+            }
+            if (!parsed) {
+                input.stats.error = "fetch";
+            } else if (input.stats.error == null) {
+                syncedInputIds.add(input.inputId);
+                mSyncStateStore.finishCheckpoint(input.inputId);
+                if (!currentProgramOnly) {
+                    mSyncScheduler.onInputSynced(input.inputId, input.epgEndMs);
                 }
             }
-            return programForGivenTime;
+            succeeded &= input.stats.error == null;
+            input.stats.feedVersion = listener.mFeedVersion;
+            report(input.stats, syncResult);
+        }
+        if (!currentProgramOnly && succeeded) {
+            mSyncScheduler.onFullSyncFinished(listener.mFeedVersion, false);
         }
+    }
+
+    private static void setFetchStats(SyncStats stats, RichFeedUtil.FetchStats fetchStats,
+            long syncTimeMs) {
+        stats.feedBytes = fetchStats.bytes;
+        stats.phaseMs[SyncStats.PHASE_FETCH] = fetchStats.fetchMs;
+        // When streaming, the channels are synced while the feed is being parsed.
+        stats.phaseMs[SyncStats.PHASE_PARSE] = fetchStats.parseMs - syncTimeMs;
+    }
 
-        // If repeat-programs is on, schedule the programs sequentially in a loop. To make every
-        // device play the same program in a given channel and time, we assumes the loop started
-        // from the epoch time.
-        long totalDurationMs = 0;
-        for (XmlTvParser.XmlTvProgram program : channelPrograms) {
-            totalDurationMs += program.getDurationMillis();
+    private void report(SyncStats stats, SyncResult syncResult) {
+        stats.finish();
+        if (!stats.dryRun) {
+            stats.addTo(syncResult);
         }
+        mSyncReportStore.add(stats);
+        Log.d(TAG, "Synced " + stats.inputId + " in " + stats.durationMs + "ms, " + stats.totals);
+    }
+
+    /**
+     * A channel left in progress means that the process died while its programs were being
+     * appended, so some of them may be in the database already. Drop its watermark so that this
+     * sync compares the existing programs with the feed and fixes them up.
+     */
+    private void reconcileInterruptedChannel(String inputId) {
+        long interruptedChannelId = mSyncStateStore.getInterruptedChannel(inputId);
+        if (interruptedChannelId != SyncStateStore.INVALID_CHANNEL_ID) {
+            Log.i(TAG, "Reconciling channel " + interruptedChannelId + " of " + inputId);
+            mSyncStateStore.reconcileChannel(inputId, interruptedChannelId);
+        }
+    }
+
+    /**
+     * Writes the channels and programs of the listings to the input.
+     *
+     * @return The time until which all the channels of the input have programs, or
+     *         {@link SyncStateStore#INVALID_WATERMARK} if the sync has failed or was a short one.
+     *         Package-private for the sync benchmark of debug builds.
+     */
+    long syncInput(String inputId, boolean currentProgramOnly,
+            XmlTvParser.TvListing listings, SyncStats stats, SyncResult syncResult) {
+        long channelMapStartMs = SystemClock.elapsedRealtime();
+        LongSparseArray<XmlTvParser.XmlTvChannel> channelMap = TvContractUtils.buildChannelMap(
+                mResolver, inputId, listings.channels);
+        if (channelMap == null) {
+            stats.error = "channel_map";
+            syncResult.databaseError = true;
+            return SyncStateStore.INVALID_WATERMARK;
+        }
+        int channelCount = channelMap.size();
+        List<List<XmlTvParser.XmlTvProgram>> channelProgramsList = new ArrayList<>(channelCount);
+        long[] feedVersions = new long[channelCount];
+        long[] feedEndTimesMs = new long[channelCount];
+        long listingVersion = 0;
+        long feedVersion = 0;
+        for (int i = 0; i < channelCount; ++i) {
+            List<XmlTvParser.XmlTvProgram> channelPrograms =
+                    ProgramScheduler.getChannelPrograms(channelMap.valueAt(i), listings.programs);
+            channelProgramsList.add(channelPrograms);
+            feedVersions[i] =
+                    ProgramScheduler.getFeedVersion(channelMap.valueAt(i), channelPrograms);
+            feedEndTimesMs[i] =
+                    ProgramScheduler.getFeedEndTimeMs(channelMap.valueAt(i), channelPrograms);
+            listingVersion = 31 * listingVersion + 17 * channelMap.keyAt(i) + feedVersions[i];
+            feedVersion = 31 * feedVersion + feedVersions[i];
+        }
+        // Unlike the listing version, this doesn't depend on the row IDs of the input's channels.
+        stats.feedVersion = feedVersion;
+        stats.phaseMs[SyncStats.PHASE_CHANNEL_MAP] =
+                SystemClock.elapsedRealtime() - channelMapStartMs;
 
-        long programStartTimeMs = startTimeMs - startTimeMs % totalDurationMs;
-        int i = 0;
-        final int programCount = channelPrograms.size();
-        while (programStartTimeMs < endTimeMs) {
-            XmlTvParser.XmlTvProgram programInfo = channelPrograms.get(i++ % programCount);
-            long programEndTimeMs = programStartTimeMs + programInfo.getDurationMillis();
-            if (programEndTimeMs < startTimeMs) {
-                programStartTimeMs = programEndTimeMs;
+        boolean dryRun = stats.dryRun;
+        if (!dryRun) {
+            reconcileInterruptedChannel(inputId);
+        }
+
+        long startMs;
+        long endMs;
+        Set<Long> committedChannelIds;
+        SyncStateStore.Checkpoint checkpoint =
+                dryRun ? null : mSyncStateStore.getCheckpoint(inputId);
+        if (checkpoint != null && checkpoint.listingVersion == listingVersion
+                && checkpoint.currentProgramOnly == currentProgramOnly
+                && System.currentTimeMillis() - checkpoint.startMs < CHECKPOINT_MAX_AGE_MS) {
+            // The previous sync of the same listing didn't finish. Resume it with the same window
+            // from the first channel it didn't commit.
+            startMs = checkpoint.startMs;
+            endMs = checkpoint.endMs;
+            committedChannelIds = checkpoint.committedChannelIds;
+            stats.resumed = true;
+            Log.i(TAG, "Resuming sync of " + inputId + ", " + committedChannelIds.size() + "/"
+                    + channelCount + " channels already committed");
+        } else {
+            startMs = System.currentTimeMillis();
+            endMs = startMs + FULL_SYNC_WINDOW_SEC * 1000;
+            if (currentProgramOnly) {
+                // This is requested from the setup activity, in this case, users don't need to
+                // wait for the full sync. Sync the current programs first and do the full sync
+                // later in the background.
+                endMs = startMs + SHORT_SYNC_WINDOW_SEC * 1000;
+            }
+            committedChannelIds = new HashSet<>();
+            if (!dryRun) {
+                mSyncStateStore.startCheckpoint(inputId, listingVersion, currentProgramOnly,
+                        startMs, endMs);
+            }
+        }
+
+        int[] hotChannels = mSyncPriorityPolicy.getHotChannels(channelMap);
+        if (!currentProgramOnly && !dryRun) {
+            // Give the channels the user is likely to watch their current programs first, rather
+            // than two weeks of programs each, so that they are ready early on. A dry run writes
+            // nothing, so the full pass would count the same operations again.
+            syncHotChannels(inputId, channelMap, channelProgramsList, feedVersions, hotChannels,
+                    committedChannelIds, Math.min(endMs, System.currentTimeMillis()
+                            + SHORT_SYNC_WINDOW_SEC * 1000), stats);
+        }
+
+        // Then sync the whole window of every channel, the hot ones first.
+        int[] syncOrder = SyncPriorityPolicy.getSyncOrder(hotChannels, channelCount);
+        for (int i : syncOrder) {
+            long channelId = channelMap.keyAt(i);
+            if (committedChannelIds.contains(channelId)) {
                 continue;
             }
-            programForGivenTime.add(new Program.Builder()
-                            .setChannelId(ContentUris.parseId(channelUri))
-                            .setTitle(programInfo.title)
-                            .setDescription(programInfo.description)
-                            .setContentRatings(XmlTvParser.xmlTvRatingToTvContentRating(
-                                    programInfo.rating))
-                            .setCanonicalGenres(programInfo.category)
-                            .setPosterArtUri(programInfo.icon.src)
-                            // NOTE: {@code COLUMN_INTERNAL_PROVIDER_DATA} is a private field where
-                            // TvInputService can store anything it wants. Here, we store video type and
-                            // video URL so that TvInputService can play the video later with this field.
-                            .setInternalProviderData(TvContractUtils.convertVideoInfoToInternalProviderData(
-                                    programInfo.videoType, programInfo.videoSrc))
-                            .setStartTimeUtcMillis(programStartTimeMs)
-                            .setEndTimeUtcMillis(programEndTimeMs)
-                            .build()
-            );
-            programStartTimeMs = programEndTimeMs;
-        }
-        return programForGivenTime;
+            SyncStats.ChannelStats channelStats = stats.startChannel(channelId);
+            long watermarkMs = syncChannel(inputId, channelId, channelMap.valueAt(i),
+                    channelProgramsList.get(i), feedVersions[i], startMs, endMs,
+                    currentProgramOnly, dryRun, channelStats);
+            if (!dryRun) {
+                commitChannel(inputId, channelId, feedVersions[i], watermarkMs, channelStats);
+            }
+        }
+        if (!dryRun) {
+            mSyncStateStore.finishCheckpoint(inputId);
+            if (mWarmsPlaybackInfoCache) {
+                warmPlaybackInfoCache(channelMap, syncOrder);
+            }
+        }
+
+        if (currentProgramOnly) {
+            return SyncStateStore.INVALID_WATERMARK;
+        }
+        long epgEndMs = endMs;
+        for (int i = 0; i < channelCount; ++i) {
+            long watermarkMs = mSyncStateStore.getWatermark(inputId, channelMap.keyAt(i),
+                    feedVersions[i]);
+            if (limitsEpgEnd(watermarkMs, feedEndTimesMs[i])) {
+                epgEndMs = Math.min(epgEndMs, watermarkMs);
+            }
+        }
+        return epgEndMs;
+    }
+
+    /**
+     * Returns whether the watermark of a channel bounds until when the input has programs. A
+     * channel which already has all the programs of the feed doesn't, since syncing more often
+     * wouldn't give it any more.
+     */
+    private static boolean limitsEpgEnd(long watermarkMs, long feedEndTimeMs) {
+        return watermarkMs != SyncStateStore.INVALID_WATERMARK && watermarkMs < feedEndTimeMs;
+    }
+
+    /**
+     * Syncs the programs of the hot channels until {@code endMs}. The channels aren't committed
+     * to the checkpoint, since the full sync goes through them again. Their new watermarks are
+     * kept, so that the full sync appends the rest of their programs when it can.
+     */
+    private void syncHotChannels(String inputId,
+            LongSparseArray<XmlTvParser.XmlTvChannel> channelMap,
+            List<List<XmlTvParser.XmlTvProgram>> channelProgramsList, long[] feedVersions,
+            int[] hotChannels, Set<Long> committedChannelIds, long endMs, SyncStats stats) {
+        long startMs = System.currentTimeMillis();
+        for (int i : hotChannels) {
+            long channelId = channelMap.keyAt(i);
+            if (committedChannelIds.contains(channelId)) {
+                continue;
+            }
+            SyncStats.ChannelStats channelStats = stats.startChannel(channelId);
+            channelStats.shortWindow = true;
+            long watermarkMs = syncChannel(inputId, channelId, channelMap.valueAt(i),
+                    channelProgramsList.get(i), feedVersions[i], startMs, endMs, true, false,
+                    channelStats);
+            if (channelStats.failed) {
+                mSyncStateStore.reconcileChannel(inputId, channelId);
+            } else if (watermarkMs != SyncStateStore.INVALID_WATERMARK
+                    && !SyncStats.MODE_SKIP.equals(channelStats.mode)) {
+                mSyncStateStore.updateWatermark(inputId, channelId, feedVersions[i], watermarkMs);
+            }
+        }
+    }
+
+    /**
+     * Loads the current programs of the channels synced first, which are the ones the user is
+     * most likely to tune to, so that the tunes don't wait for the database.
+     */
+    private void warmPlaybackInfoCache(LongSparseArray<XmlTvParser.XmlTvChannel> channelMap,
+            int[] syncOrder) {
+        List<Uri> channelUris = new ArrayList<>();
+        for (int i = 0; i < syncOrder.length && i < WARM_CHANNEL_COUNT; ++i) {
+            channelUris.add(TvContract.buildChannelUri(channelMap.keyAt(syncOrder[i])));
+        }
+        PlaybackInfoCache.getInstance(mContext).warm(channelUris);
+    }
+
+    /**
+     * Syncs the programs of a channel for the given time range.
+     *
+     * @param dryRun If {@code true}, the operations are only counted and not applied.
+     * @param channelStats Filled with the numbers of this channel. It's marked as failed if not
+     *         all the programs could be read or written.
+     * @return The new watermark of the channel, or {@link SyncStateStore#INVALID_WATERMARK} if
+     *         the next sync should compare all the programs of the channel with the feed.
+     */
+    private long syncChannel(String inputId, long channelId, XmlTvParser.XmlTvChannel channel,
+            List<XmlTvParser.XmlTvProgram> channelPrograms, long feedVersion, long startMs,
+            long endMs, boolean currentProgramOnly, boolean dryRun,
+            SyncStats.ChannelStats channelStats) {
+        Uri channelUri = TvContract.buildChannelUri(channelId);
+        long watermarkMs = mSyncStateStore.getWatermark(inputId, channelId, feedVersion);
+        if (watermarkMs >= endMs) {
+            // The programs are already there for the requested range.
+            return watermarkMs;
+        }
+        if (watermarkMs > startMs) {
+            // The feed hasn't changed since the last sync, so the programs before the watermark
+            // are up to date. Just extend the tail of the program guide.
+            channelStats.mode = SyncStats.MODE_APPEND;
+            long scheduleStartMs = SystemClock.elapsedRealtime();
+            List<Program> programs = getPrograms(channelUri, channel, channelPrograms,
+                    watermarkMs, endMs);
+            channelStats.phaseMs[SyncStats.PHASE_SCHEDULE] =
+                    SystemClock.elapsedRealtime() - scheduleStartMs;
+            // Appending isn't idempotent. Make sure that the next sync can tell if this one dies
+            // half way through the channel.
+            if (!dryRun) {
+                mSyncStateStore.beginChannel(inputId, channelId);
+            }
+            long uncertainRetries = channelStats.counters.uncertainRetries;
+            if (insertPrograms(channelUri, programs, watermarkMs, dryRun, channelStats)
+                    && removeDuplicatePrograms(channelUri, programs, uncertainRetries, dryRun,
+                            channelStats)) {
+                return getLastEndTimeMs(programs, watermarkMs);
+            }
+            channelStats.failed = true;
+            return SyncStateStore.INVALID_WATERMARK;
+        }
+        channelStats.mode = SyncStats.MODE_DIFF;
+        long scheduleStartMs = SystemClock.elapsedRealtime();
+        List<Program> programs = getPrograms(channelUri, channel, channelPrograms, startMs,
+                endMs);
+        channelStats.phaseMs[SyncStats.PHASE_SCHEDULE] =
+                SystemClock.elapsedRealtime() - scheduleStartMs;
+        long uncertainRetries = channelStats.counters.uncertainRetries;
+        if (!updatePrograms(channelUri, programs, dryRun, channelStats)
+                || !removeDuplicatePrograms(channelUri, programs, uncertainRetries, dryRun,
+                        channelStats)) {
+            channelStats.failed = true;
+        } else if (!currentProgramOnly && !programs.isEmpty()) {
+            return getLastEndTimeMs(programs, startMs);
+        }
+        // Old programs after the short sync window may be from a different version of the feed.
+        // Let the next full sync compare them all. A channel without programs has no watermark
+        // either, rather than one of now, which would look like an empty program guide.
+        return SyncStateStore.INVALID_WATERMARK;
+    }
+
+    /**
+     * Compares the programs of the channel with the new ones again if a batch with inserts was
+     * retried since the given count of uncertain retries. The retried batch may have been applied
+     * before it was rejected, and the comparison deletes the programs it inserted twice.
+     *
+     * @return {@code false} if the duplicates may still be there.
+     */
+    private boolean removeDuplicatePrograms(Uri channelUri, List<Program> newPrograms,
+            long uncertainRetries, boolean dryRun, SyncStats.ChannelStats channelStats) {
+        if (channelStats.counters.uncertainRetries == uncertainRetries) {
+            return true;
+        }
+        Log.w(TAG, "Comparing the programs of " + channelUri + " again to remove duplicates");
+        uncertainRetries = channelStats.counters.uncertainRetries;
+        // Deleting is idempotent, so the comparison can't add duplicates unless it inserts.
+        return updatePrograms(channelUri, newPrograms, dryRun, channelStats)
+                && channelStats.counters.uncertainRetries == uncertainRetries;
+    }
+
+    /**
+     * Records the result of {@link #syncChannel}. A failed channel isn't checkpointed, so that a
+     * resumed sync doesn't skip it, and its watermark is dropped.
+     */
+    private void commitChannel(String inputId, long channelId, long feedVersion,
+            long watermarkMs, SyncStats.ChannelStats channelStats) {
+        if (channelStats.failed) {
+            mSyncStateStore.reconcileChannel(inputId, channelId);
+        } else {
+            mSyncStateStore.commitChannel(inputId, channelId, feedVersion, watermarkMs);
+        }
+    }
+
+    private static long getLastEndTimeMs(List<Program> programs, long defaultMs) {
+        return programs.isEmpty() ? defaultMs
+                : programs.get(programs.size() - 1).getEndTimeUtcMillis();
+    }
+
+    /**
+     * Returns a list of programs for the given time range.
+     *
+     * @param channelUri The channel where the program info will be added.
+     * @param channel The {@link XmlTvParser.XmlTvChannel} for the programs to return.
+     * @param channelPrograms The programs of the channel in the feed fetched from cloud.
+     * @param startTimeMs The start time of the range requested.
+     * @param endTimeMs The end time of the range requested.
+     */
+    private List<Program> getPrograms(Uri channelUri, XmlTvParser.XmlTvChannel channel,
+            List<XmlTvParser.XmlTvProgram> channelPrograms, long startTimeMs, long endTimeMs) {
+        return ProgramScheduler.schedule(channel, channelPrograms, startTimeMs, endTimeMs,
+                new ChannelProgramFactory(ContentUris.parseId(channelUri)));
+    }
+
+    private static ProgramContent toProgramContent(XmlTvParser.XmlTvProgram program) {
+        return new ProgramContent.Builder()
+                .setTitle(program.title)
+                .setDescription(program.description)
+                .setEncodedContentRatings(XmlTvParser.getAndroidRatings(program.rating))
+                .setCanonicalGenres(program.category)
+                .setPosterArtUri(program.icon.src)
+                // NOTE: {@code COLUMN_INTERNAL_PROVIDER_DATA} is a private field where
+                // TvInputService can store anything it wants. Here, we store video type and
+                // video URL so that TvInputService can play the video later with this field.
+                .setInternalProviderData(TvContractUtils.convertVideoInfoToInternalProviderData(
+                        program.videoType, program.videoSrc))
+                .build();
     }
 
     /**
@@ -191,95 +639,304 @@ class SyncAdapter extends AbstractThreadedSyncAdapter {
      * @param channelUri The channel where the program info will be added.
      * @param newPrograms A list of {@link Program} instances which includes program
      *         information.
+     * @param dryRun If {@code true}, the changes are only counted and not applied.
+     * @param channelStats Filled with the numbers of the update.
+     * @return {@code true} if all the old programs are read and all the changes are applied.
      */
-    private void updatePrograms(Uri channelUri, List<Program> newPrograms) {
+    private boolean updatePrograms(Uri channelUri, List<Program> newPrograms, boolean dryRun,
+            SyncStats.ChannelStats channelStats) {
         final int fetchedProgramsCount = newPrograms.size();
         if (fetchedProgramsCount == 0) {
-            return;
+            return true;
         }
-        List<Program> oldPrograms = TvContractUtils.getPrograms(mContext.getContentResolver(),
-                channelUri);
-        Program firstNewProgram = newPrograms.get(0);
-        int oldProgramsIndex = 0;
-        int newProgramsIndex = 0;
-        // Skip the past programs. They will be automatically removed by the system.
-        for (Program program : oldPrograms) {
-            oldProgramsIndex++;
-            if(program.getEndTimeUtcMillis() > firstNewProgram.getStartTimeUtcMillis()) {
-                break;
+        long diffStartMs = SystemClock.elapsedRealtime();
+        // Only the old programs which overlap the new ones are compared, and they are read page
+        // by page as the comparison gets to them. The past programs are skipped. They will be
+        // automatically removed by the system.
+        ProgramWindowReader oldPrograms = new ProgramWindowReader(mResolver,
+                channelUri, newPrograms.get(0).getStartTimeUtcMillis(),
+                newPrograms.get(fetchedProgramsCount - 1).getEndTimeUtcMillis());
+        ProgramDiffer<Program> differ = new ProgramDiffer<>(PROGRAM_DIFF_ADAPTER, oldPrograms,
+                newPrograms);
+        ContentProviderBatcher batcher = new ContentProviderBatcher(
+                mResolver, TvContract.AUTHORITY, false);
+        batcher.setDryRun(dryRun);
+        batcher.setCallSite("sync.update_programs");
+        // Repeated programs share the encoded values of their content.
+        ProgramValuesCache valuesCache = new ProgramValuesCache();
+        try {
+            while (differ.next()) {
+                switch (differ.getOperation()) {
+                    case ProgramDiffer.OPERATION_INSERT:
+                        batcher.insert(TvContract.Programs.CONTENT_URI,
+                                valuesCache.toContentValues(differ.getNewProgram()));
+                        break;
+                    case ProgramDiffer.OPERATION_UPDATE:
+                        batcher.update(TvContract.buildProgramUri(
+                                differ.getOldProgram().getProgramId()),
+                                valuesCache.toContentValues(differ.getNewProgram()));
+                        break;
+                    case ProgramDiffer.OPERATION_DELETE:
+                        batcher.delete(TvContract.buildProgramUri(
+                                differ.getOldProgram().getProgramId()));
+                        break;
+                }
             }
+            // The batcher flushes by the estimated parcel size as operations are added, so that
+            // it doesn't cause TransactionTooLargeException. Apply the remaining ones.
+            batcher.flush();
+        } catch (RemoteException | OperationApplicationException e) {
+            Log.e(TAG, "Failed to insert programs.", e);
+            return false;
+        } finally {
+            channelStats.addBatcher(batcher);
+            channelStats.counters.rowsRead += oldPrograms.getRowCount();
+            channelStats.phaseMs[SyncStats.PHASE_READ] += oldPrograms.getReadTimeMs();
+            // The pages are read and the batches are applied while diffing. Count them only as
+            // the read and apply phases.
+            channelStats.phaseMs[SyncStats.PHASE_DIFF] += SystemClock.elapsedRealtime()
+                    - diffStartMs - batcher.getApplyTimeMs() - oldPrograms.getReadTimeMs();
         }
-        // Compare the new programs with old programs one by one and update/delete the old one or
-        // insert new program if there is no matching program in the database.
-        ArrayList<ContentProviderOperation> ops = new ArrayList<>();
-        while (newProgramsIndex < fetchedProgramsCount) {
-            Program oldProgram = oldProgramsIndex < oldPrograms.size()
-                    ? oldPrograms.get(oldProgramsIndex) : null;
-            Program newProgram = newPrograms.get(newProgramsIndex);
-            boolean addNewProgram = false;
-            if (oldProgram != null) {
-                if (oldProgram.equals(newProgram)) {
-                    // Exact match. No need to update. Move on to the next programs.
-                    oldProgramsIndex++;
-                    newProgramsIndex++;
-                } else if (needsUpdate(oldProgram, newProgram)) {
-                    // Partial match. Update the old program with the new one.
-                    // NOTE: Use 'update' in this case instead of 'insert' and 'delete'. There could
-                    // be application specific settings which belong to the old program.
-                    ops.add(ContentProviderOperation.newUpdate(
-                            TvContract.buildProgramUri(oldProgram.getProgramId()))
-                            .withValues(newProgram.toContentValues())
-                            .build());
-                    oldProgramsIndex++;
-                    newProgramsIndex++;
-                } else if (oldProgram.getEndTimeUtcMillis() < newProgram.getEndTimeUtcMillis()) {
-                    // No match. Remove the old program first to see if the next program in
-                    // {@code oldPrograms} partially matches the new program.
-                    ops.add(ContentProviderOperation.newDelete(
-                            TvContract.buildProgramUri(oldProgram.getProgramId()))
-                            .build());
-                    oldProgramsIndex++;
-                } else {
-                    // No match. The new program does not match any of the old programs. Insert it
-                    // as a new program.
-                    addNewProgram = true;
-                    newProgramsIndex++;
+        // The old programs which weren't read were taken as missing, so the new ones may now
+        // overlap them. Don't let the channel count as synced, so that it's compared again.
+        return !oldPrograms.hasFailed();
+    }
+
+    /**
+     * Inserts the given programs which start at or after {@code watermarkMs} without comparing
+     * them with the existing ones, which all end before the watermark.
+     *
+     * @param channelUri The channel where the program info will be added.
+     * @param newPrograms A list of {@link Program} instances which includes program
+     *         information.
+     * @param watermarkMs The end time of the last program already in the database.
+     * @param dryRun If {@code true}, the programs are only counted and not inserted.
+     * @param channelStats Filled with the numbers of the insertion.
+     * @return {@code true} if all the programs are inserted.
+     */
+    private boolean insertPrograms(Uri channelUri, List<Program> newPrograms, long watermarkMs,
+            boolean dryRun, SyncStats.ChannelStats channelStats) {
+        ContentProviderBatcher batcher = new ContentProviderBatcher(
+                mResolver, TvContract.AUTHORITY, false);
+        batcher.setDryRun(dryRun);
+        batcher.setCallSite("sync.insert_programs");
+        ProgramValuesCache valuesCache = new ProgramValuesCache();
+        try {
+            for (Program program : newPrograms) {
+                if (program.getStartTimeUtcMillis() >= watermarkMs) {
+                    batcher.insert(TvContract.Programs.CONTENT_URI,
+                            valuesCache.toContentValues(program));
                 }
-            } else {
-                // No old programs. Just insert new programs.
-                addNewProgram = true;
-                newProgramsIndex++;
             }
-            if (addNewProgram) {
-                ops.add(ContentProviderOperation
-                        .newInsert(TvContract.Programs.CONTENT_URI)
-                        .withValues(newProgram.toContentValues())
-                        .build());
+            batcher.flush();
+        } catch (RemoteException | OperationApplicationException e) {
+            Log.e(TAG, "Failed to insert programs.", e);
+            return false;
+        } finally {
+            channelStats.addBatcher(batcher);
+        }
+        return true;
+    }
+
+    /**
+     * Builds the {@link Program}s of a channel. All the occurrences of a repeated program share
+     * its content.
+     */
+    private static final class ChannelProgramFactory
+            implements ProgramScheduler.ProgramFactory<ProgramContent, Program> {
+        private final long mChannelId;
+
+        ChannelProgramFactory(long channelId) {
+            mChannelId = channelId;
+        }
+
+        @Override
+        public ProgramContent createContent(XmlTvParser.XmlTvProgram program) {
+            return toProgramContent(program);
+        }
+
+        @Override
+        public Program createProgram(ProgramContent content, long startTimeMs, long endTimeMs) {
+            return new Program.Builder()
+                    .setChannelId(mChannelId)
+                    .setContent(content)
+                    .setStartTimeUtcMillis(startTimeMs)
+                    .setEndTimeUtcMillis(endTimeMs)
+                    .build();
+        }
+    }
+
+    private static final ProgramDiffer.Adapter<Program> PROGRAM_DIFF_ADAPTER =
+            new ProgramDiffer.Adapter<Program>() {
+                @Override
+                public long getStartTimeMs(Program program) {
+                    return program.getStartTimeUtcMillis();
+                }
+
+                @Override
+                public long getEndTimeMs(Program program) {
+                    return program.getEndTimeUtcMillis();
+                }
+
+                @Override
+                public boolean isUnchanged(Program oldProgram, Program newProgram) {
+                    return oldProgram.equals(newProgram);
+                }
+
+                @Override
+                public boolean isSameProgram(Program oldProgram, Program newProgram) {
+                    // NOTE: Here, we update the old program if it has the same title and overlaps
+                    // with the new program. The test logic is just an example and you can modify
+                    // this. E.g. check whether the both programs have the same program ID if your
+                    // EPG supports any ID for the programs.
+                    return oldProgram.getTitle().equals(newProgram.getTitle());
+                }
+            };
+
+    /**
+     * The state of an input in a streaming sync.
+     */
+    private static final class StreamingInput {
+        final String inputId;
+        final SyncStats stats;
+        // The row IDs of the channels of the input by the channel ID in the feed, or null if the
+        // channels of the input couldn't be read.
+        Map<String, Long> channelRowIds;
+        long epgEndMs;
+
+        StreamingInput(String inputId, SyncStats stats, long endMs) {
+            this.inputId = inputId;
+            this.stats = stats;
+            epgEndMs = endMs;
+        }
+    }
+
+    /**
+     * Syncs the programs of a channel once the parser moves on to the next channel.
+     */
+    private final class ChannelStreamListener implements XmlTvParser.Listener {
+        private final List<StreamingInput> mInputs;
+        private final boolean mCurrentProgramOnly;
+        private final long mStartMs;
+        private final long mEndMs;
+        private final SyncResult mSyncResult;
+
+        private final Map<String, XmlTvParser.XmlTvChannel> mChannels = new LinkedHashMap<>();
+        private final Set<String> mSyncedChannelIds = new HashSet<>();
+        private final List<XmlTvParser.XmlTvProgram> mPrograms = new ArrayList<>();
+        private String mChannelId;
+        private boolean mChannelMapsBuilt;
+
+        long mFeedVersion;
+        // The time spent writing, as opposed to parsing.
+        long mSyncTimeMs;
+
+        ChannelStreamListener(List<StreamingInput> inputs, boolean currentProgramOnly,
+                long startMs, long endMs, SyncResult syncResult) {
+            mInputs = inputs;
+            mCurrentProgramOnly = currentProgramOnly;
+            mStartMs = startMs;
+            mEndMs = endMs;
+            mSyncResult = syncResult;
+        }
+
+        @Override
+        public void onChannel(XmlTvParser.XmlTvChannel channel) {
+            mChannels.put(channel.id, channel);
+        }
+
+        @Override
+        public void onProgram(XmlTvParser.XmlTvProgram program) {
+            if (!program.channelId.equals(mChannelId)) {
+                syncChannel();
+                if (!mSyncedChannelIds.add(program.channelId)) {
+                    throw new FeedNotGroupedException(program.channelId);
+                }
+                mChannelId = program.channelId;
             }
-            // Throttle the batch operation not to cause TransactionTooLargeException.
-            if (ops.size() > BATCH_OPERATION_COUNT
-                    || newProgramsIndex >= fetchedProgramsCount) {
-                try {
-                    mContext.getContentResolver().applyBatch(TvContract.AUTHORITY, ops);
-                } catch (RemoteException | OperationApplicationException e) {
-                    Log.e(TAG, "Failed to insert programs.", e);
-                    return;
+            mPrograms.add(program);
+        }
+
+        /**
+         * Syncs the last channel, and the channels without programs.
+         */
+        void finish() {
+            syncChannel();
+            for (String channelId : mChannels.keySet()) {
+                if (!mSyncedChannelIds.contains(channelId)) {
+                    mChannelId = channelId;
+                    syncChannel();
                 }
-                ops.clear();
+            }
+        }
+
+        private void syncChannel() {
+            if (mChannelId == null) {
+                return;
+            }
+            long startMs = SystemClock.elapsedRealtime();
+            if (!mChannelMapsBuilt) {
+                // All the channels come before the programs in an XMLTV document.
+                buildChannelMaps();
+                mChannelMapsBuilt = true;
+            }
+            XmlTvParser.XmlTvChannel channel = mChannels.get(mChannelId);
+            if (channel != null) {
+                long feedVersion = ProgramScheduler.getFeedVersion(channel, mPrograms);
+                long feedEndTimeMs = ProgramScheduler.getFeedEndTimeMs(channel, mPrograms);
+                mFeedVersion = 31 * mFeedVersion + feedVersion;
+                for (StreamingInput input : mInputs) {
+                    Long channelRowId = input.channelRowIds == null
+                            ? null : input.channelRowIds.get(mChannelId);
+                    if (channelRowId == null) {
+                        continue;
+                    }
+                    SyncStats.ChannelStats channelStats = input.stats.startChannel(channelRowId);
+                    long watermarkMs = SyncAdapter.this.syncChannel(input.inputId, channelRowId,
+                            channel, mPrograms, feedVersion, mStartMs, mEndMs,
+                            mCurrentProgramOnly, false, channelStats);
+                    commitChannel(input.inputId, channelRowId, feedVersion, watermarkMs,
+                            channelStats);
+                    if (limitsEpgEnd(watermarkMs, feedEndTimeMs)) {
+                        input.epgEndMs = Math.min(input.epgEndMs, watermarkMs);
+                    }
+                }
+            }
+            mPrograms.clear();
+            mChannelId = null;
+            mSyncTimeMs += SystemClock.elapsedRealtime() - startMs;
+        }
+
+        private void buildChannelMaps() {
+            List<XmlTvParser.XmlTvChannel> channels = new ArrayList<>(mChannels.values());
+            for (StreamingInput input : mInputs) {
+                long startMs = SystemClock.elapsedRealtime();
+                LongSparseArray<XmlTvParser.XmlTvChannel> channelMap =
+                        TvContractUtils.buildChannelMap(mResolver,
+                                input.inputId, channels);
+                if (channelMap == null) {
+                    input.stats.error = "channel_map";
+                    mSyncResult.databaseError = true;
+                    continue;
+                }
+                input.channelRowIds = new HashMap<>();
+                for (int i = 0; i < channelMap.size(); ++i) {
+                    if (channelMap.valueAt(i) != null) {
+                        input.channelRowIds.put(channelMap.valueAt(i).id, channelMap.keyAt(i));
+                    }
+                }
+                input.stats.phaseMs[SyncStats.PHASE_CHANNEL_MAP] =
+                        SystemClock.elapsedRealtime() - startMs;
             }
         }
     }
 
     /**
-     * Returns {@code true} if the {@code oldProgram} program needs to be updated with the
-     * {@code newProgram} program.
+     * Thrown when a streaming sync finds that the programs of a channel are split up in the feed.
      */
-    private boolean needsUpdate(Program oldProgram, Program newProgram) {
-        // NOTE: Here, we update the old program if it has the same title and overlaps with the new
-        // program. The test logic is just an example and you can modify this. E.g. check whether
-        // the both programs have the same program ID if your EPG supports any ID for the programs.
-        return oldProgram.getTitle().equals(newProgram.getTitle())
-                && oldProgram.getStartTimeUtcMillis() <= newProgram.getEndTimeUtcMillis()
-                && newProgram.getStartTimeUtcMillis() <= oldProgram.getEndTimeUtcMillis();
+    private static final class FeedNotGroupedException extends RuntimeException {
+        FeedNotGroupedException(String channelId) {
+            super("Programs of " + channelId + " aren't grouped in the feed.");
+        }
     }
 }
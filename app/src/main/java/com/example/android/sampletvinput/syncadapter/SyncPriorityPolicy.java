@@ -0,0 +1,141 @@
+/*
+ * Copyright 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput.syncadapter;
+
+import android.content.ContentUris;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.util.LongSparseArray;
+
+import com.example.android.sampletvinput.R;
+import com.example.android.sampletvinput.xmltv.XmlTvParser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decides the order in which {@link SyncAdapter} syncs the channels, so that the channels the user
+ * is most likely to watch get their programs first.
+ *
+ * <p>The hot channels are the favorite channels, listed by display number in
+ * {@code R.array.favorite_channel_numbers}, followed by the recently and frequently tuned ones.
+ * The rest of the lineup follows in the original order. A full sync gives the hot channels a
+ * short sync of their current programs before it starts.
+ */
+public class SyncPriorityPolicy {
+    private static final String PREFS_NAME = "tune_history";
+    private static final String KEY_TUNE_COUNT = "/count";
+    private static final String KEY_LAST_TUNE_MS = "/last";
+
+    private static final int MAX_HOT_CHANNELS = 10;
+    private static final long TUNE_HISTORY_MAX_AGE_MS = 1000L * 60 * 60 * 24 * 14;  // 2 weeks
+    private static final double MS_PER_DAY = 1000 * 60 * 60 * 24;
+
+    private final SharedPreferences mPrefs;
+    private final Set<String> mFavoriteChannelNumbers;
+
+    SyncPriorityPolicy(Context context) {
+        mPrefs = getTuneHistory(context);
+        mFavoriteChannelNumbers = new HashSet<>(Arrays.asList(
+                context.getResources().getStringArray(R.array.favorite_channel_numbers)));
+    }
+
+    /**
+     * Records that the user tuned to the given channel. Called from the TV input service.
+     */
+    public static void recordTune(Context context, Uri channelUri) {
+        SharedPreferences prefs = getTuneHistory(context);
+        String channelId = Long.toString(ContentUris.parseId(channelUri));
+        int tuneCount = prefs.getInt(channelId + KEY_TUNE_COUNT, 0);
+        prefs.edit()
+                .putInt(channelId + KEY_TUNE_COUNT, tuneCount + 1)
+                .putLong(channelId + KEY_LAST_TUNE_MS, System.currentTimeMillis())
+                .apply();
+    }
+
+    private static SharedPreferences getTuneHistory(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Returns the indices of the hot channels of {@code channelMap}, the hottest first.
+     */
+    int[] getHotChannels(LongSparseArray<XmlTvParser.XmlTvChannel> channelMap) {
+        final int channelCount = channelMap.size();
+        final double[] scores = new double[channelCount];
+        long nowMs = System.currentTimeMillis();
+        List<Integer> hotChannels = new ArrayList<>();
+        for (int i = 0; i < channelCount; ++i) {
+            scores[i] = getScore(channelMap.keyAt(i), channelMap.valueAt(i), nowMs);
+            if (scores[i] > 0) {
+                hotChannels.add(i);
+            }
+        }
+        Collections.sort(hotChannels, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                return Double.compare(scores[rhs], scores[lhs]);
+            }
+        });
+
+        int[] result = new int[Math.min(hotChannels.size(), MAX_HOT_CHANNELS)];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = hotChannels.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the indices of the channels in the order they should be synced, which is the hot
+     * channels followed by the others.
+     */
+    static int[] getSyncOrder(int[] hotChannels, int channelCount) {
+        int[] order = new int[channelCount];
+        boolean[] added = new boolean[channelCount];
+        int n = 0;
+        for (int index : hotChannels) {
+            order[n++] = index;
+            added[index] = true;
+        }
+        for (int i = 0; i < channelCount; ++i) {
+            if (!added[i]) {
+                order[n++] = i;
+            }
+        }
+        return order;
+    }
+
+    private double getScore(long channelId, XmlTvParser.XmlTvChannel channel, long nowMs) {
+        if (channel != null && mFavoriteChannelNumbers.contains(channel.displayNumber)) {
+            return Double.MAX_VALUE;
+        }
+        long lastTuneMs = mPrefs.getLong(channelId + KEY_LAST_TUNE_MS, 0);
+        long ageMs = nowMs - lastTuneMs;
+        if (lastTuneMs == 0 || ageMs > TUNE_HISTORY_MAX_AGE_MS) {
+            return 0;
+        }
+        // Frequently watched channels first, with more weight on the recent ones.
+        double ageDays = Math.max(ageMs, 0) / MS_PER_DAY;
+        return mPrefs.getInt(channelId + KEY_TUNE_COUNT, 0) / (1 + ageDays);
+    }
+}
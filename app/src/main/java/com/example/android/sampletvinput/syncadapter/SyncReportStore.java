@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput.syncadapter;
+
+import android.content.Context;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the {@link SyncStats} of the last few syncs in a file, so that they can be dumped with
+ * {@code adb shell dumpsys activity service
+ * com.example.android.sampletvinput/.syncadapter.SyncService}.
+ */
+class SyncReportStore {
+    private static final String TAG = "SyncReportStore";
+    private static final String FILE_NAME = "sync_report.json";
+    private static final int MAX_REPORTS = 10;
+
+    private final AtomicFile mFile;
+
+    SyncReportStore(Context context) {
+        mFile = new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+    }
+
+    synchronized void add(SyncStats stats) {
+        List<SyncStats> reports = getReports();
+        reports.add(stats);
+        int from = Math.max(reports.size() - MAX_REPORTS, 0);
+        FileOutputStream out = null;
+        try {
+            JSONArray json = new JSONArray();
+            for (SyncStats report : reports.subList(from, reports.size())) {
+                json.put(report.toJson());
+            }
+            out = mFile.startWrite();
+            out.write(json.toString().getBytes(StandardCharsets.UTF_8));
+            mFile.finishWrite(out);
+        } catch (IOException | JSONException e) {
+            Log.w(TAG, "Failed to write the sync report.", e);
+            if (out != null) {
+                mFile.failWrite(out);
+            }
+        }
+    }
+
+    /**
+     * Returns the stats of the last syncs, oldest first.
+     */
+    synchronized List<SyncStats> getReports() {
+        List<SyncStats> reports = new ArrayList<>();
+        try {
+            JSONArray json = new JSONArray(new String(mFile.readFully(), StandardCharsets.UTF_8));
+            for (int i = 0; i < json.length(); ++i) {
+                reports.add(SyncStats.fromJson(json.getJSONObject(i)));
+            }
+        } catch (FileNotFoundException e) {
+            // No sync has finished yet.
+        } catch (IOException | JSONException e) {
+            Log.w(TAG, "Failed to read the sync report.", e);
+        }
+        return reports;
+    }
+
+    void dump(PrintWriter writer) {
+        List<SyncStats> reports = getReports();
+        writer.println("Last " + reports.size() + " syncs:");
+        for (SyncStats stats : reports) {
+            stats.dump(writer);
+        }
+    }
+}
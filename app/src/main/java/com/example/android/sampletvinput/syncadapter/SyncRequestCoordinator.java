@@ -0,0 +1,204 @@
+/*
+ * Copyright 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput.syncadapter;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Coalesces the sync requests of the process, so that the setup activity and the sessions of the
+ * TV input service don't queue redundant syncs.
+ *
+ * <ul>
+ * <li>A request is merged into a pending or running sync of the same input which covers it. A full
+ * sync covers a short one.</li>
+ * <li>A short sync that hasn't started yet when a full sync is requested is run as the full sync,
+ * and the full sync is dropped when it starts.</li>
+ * <li>Only one expedited sync is requested in {@link #MIN_EXPEDITED_INTERVAL_MS}. The others are
+ * requested without jumping the queue.</li>
+ * </ul>
+ *
+ * <p>Every request carries a sequence number, so that {@link SyncAdapter} can tell at the start of
+ * a sync whether it has been served by another one already.
+ */
+class SyncRequestCoordinator {
+    private static final String TAG = "SyncRequestCoordinator";
+    private static final long MIN_EXPEDITED_INTERVAL_MS = 1000 * 30;  // 30 sec
+    // A request which hasn't started by then is assumed to be lost, e.g. canceled by the system.
+    private static final long MAX_PENDING_MS = 1000 * 60 * 10;  // 10 min
+
+    /** The mode of a sync that is about to start. See {@link #onSyncStarted}. */
+    static final int SYNC_SKIP = 0;
+    static final int SYNC_SHORT = 1;
+    static final int SYNC_FULL = 2;
+
+    private static SyncRequestCoordinator sInstance;
+
+    private final Map<String, InputState> mInputStates = new HashMap<>();
+    // Starts from the wall clock so that requests queued before the process died aren't mistaken
+    // for ones which have been served.
+    private long mLastSequence = System.currentTimeMillis();
+    private long mLastExpeditedMs = -MIN_EXPEDITED_INTERVAL_MS;
+
+    private int mRequestCount;
+    private int mIssuedCount;
+    private int mMergedCount;
+    private int mUpgradedCount;
+    private int mDroppedCount;
+    private int mThrottledCount;
+
+    static synchronized SyncRequestCoordinator getInstance() {
+        if (sInstance == null) {
+            sInstance = new SyncRequestCoordinator();
+        }
+        return sInstance;
+    }
+
+    private SyncRequestCoordinator() {
+    }
+
+    /**
+     * Decides whether to request a sync.
+     *
+     * @return The sequence number to request the sync with, or {@code 0} if the request is merged
+     *         into another one.
+     */
+    synchronized long onSyncRequested(String inputId, boolean currentProgramOnly) {
+        mRequestCount++;
+        InputState state = getInputState(inputId);
+        if (state.runningMode == SYNC_FULL || state.hasPendingFull()
+                || (currentProgramOnly && (state.runningMode == SYNC_SHORT
+                        || state.hasPendingShort()))) {
+            mMergedCount++;
+            Log.d(TAG, "Merged " + (currentProgramOnly ? "short" : "full") + " sync request of "
+                    + inputId);
+            return 0;
+        }
+        long sequence = ++mLastSequence;
+        if (currentProgramOnly) {
+            state.pendingShortSequence = sequence;
+            state.pendingShortMs = SystemClock.elapsedRealtime();
+        } else {
+            state.pendingFullSequence = sequence;
+            state.pendingFullMs = SystemClock.elapsedRealtime();
+        }
+        mIssuedCount++;
+        return sequence;
+    }
+
+    /**
+     * Returns whether the requested sync may be expedited, and if so, counts it against the rate
+     * limit.
+     */
+    synchronized boolean tryExpedite() {
+        long nowMs = SystemClock.elapsedRealtime();
+        if (nowMs - mLastExpeditedMs < MIN_EXPEDITED_INTERVAL_MS) {
+            mThrottledCount++;
+            return false;
+        }
+        mLastExpeditedMs = nowMs;
+        return true;
+    }
+
+    /**
+     * Called by {@link SyncAdapter} when a sync is about to start.
+     *
+     * @param sequence The sequence number of the request, or {@code 0} for a periodic sync.
+     * @return {@link #SYNC_SKIP} if the request has been served already, otherwise the mode to run
+     *         the sync in.
+     */
+    synchronized int onSyncStarted(String inputId, long sequence, boolean currentProgramOnly) {
+        InputState state = getInputState(inputId);
+        if (sequence != 0 && (sequence <= state.servedFullSequence
+                || (currentProgramOnly && sequence <= state.servedSequence))) {
+            mDroppedCount++;
+            Log.d(TAG, "Dropped sync request " + sequence + " of " + inputId + ", already served");
+            return SYNC_SKIP;
+        }
+        int mode = currentProgramOnly ? SYNC_SHORT : SYNC_FULL;
+        if (mode == SYNC_SHORT && state.hasPendingFull()) {
+            mUpgradedCount++;
+            Log.d(TAG, "Upgraded short sync of " + inputId + " to a full sync");
+            mode = SYNC_FULL;
+        }
+        // Everything requested so far is served by this sync, unless it fails.
+        state.lastServedSequence = state.servedSequence;
+        state.lastServedFullSequence = state.servedFullSequence;
+        state.servedSequence = mLastSequence;
+        if (mode == SYNC_FULL) {
+            state.servedFullSequence = mLastSequence;
+        }
+        state.runningMode = mode;
+        return mode;
+    }
+
+    /**
+     * Called by {@link SyncAdapter} when a sync has finished.
+     *
+     * @param succeeded Whether the sync has succeeded. If not, the system retries the failed
+     *         request, so the requests it would have served mustn't be dropped.
+     */
+    synchronized void onSyncFinished(String inputId, boolean succeeded) {
+        InputState state = getInputState(inputId);
+        if (!succeeded) {
+            state.servedSequence = state.lastServedSequence;
+            state.servedFullSequence = state.lastServedFullSequence;
+        }
+        state.runningMode = SYNC_SKIP;
+    }
+
+    synchronized void dump(PrintWriter writer) {
+        writer.println("Sync requests: requested=" + mRequestCount + " issued=" + mIssuedCount
+                + " merged=" + mMergedCount + " upgraded=" + mUpgradedCount + " dropped="
+                + mDroppedCount + " throttled=" + mThrottledCount);
+    }
+
+    private InputState getInputState(String inputId) {
+        InputState state = mInputStates.get(inputId);
+        if (state == null) {
+            state = new InputState();
+            mInputStates.put(inputId, state);
+        }
+        return state;
+    }
+
+    private static final class InputState {
+        long pendingShortSequence;
+        long pendingShortMs;
+        long pendingFullSequence;
+        long pendingFullMs;
+        long servedSequence;
+        long servedFullSequence;
+        long lastServedSequence;
+        long lastServedFullSequence;
+        int runningMode = SYNC_SKIP;
+
+        boolean hasPendingShort() {
+            return pendingShortSequence > servedSequence
+                    && SystemClock.elapsedRealtime() - pendingShortMs < MAX_PENDING_MS;
+        }
+
+        boolean hasPendingFull() {
+            return pendingFullSequence > servedFullSequence
+                    && SystemClock.elapsedRealtime() - pendingFullMs < MAX_PENDING_MS;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput.syncadapter;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.util.Map;
+
+/**
+ * Adapts the period of the periodic full sync to how often the feed actually changes.
+ *
+ * <p>Every full sync that finds the feed unchanged doubles the period, and every one that finds
+ * it changed halves it, within {@link #MIN_SYNC_INTERVAL_SEC} and {@link #MAX_SYNC_INTERVAL_SEC}.
+ * The period is also kept short enough for the next sync to run before the program guide of any
+ * input gets shorter than {@link #MIN_EPG_TAIL_SEC}. If it does get that short anyway, e.g.
+ * because the system deferred the periodic sync, {@link #requestSyncIfEpgTailShort} forces one.
+ */
+public class SyncScheduler {
+    private static final String TAG = "SyncScheduler";
+    private static final String PREFS_NAME = "sync_schedule";
+    private static final String KEY_INTERVAL_SEC = "interval_sec";
+    private static final String KEY_PERIOD_SEC = "period_sec";
+    private static final String KEY_FEED_VERSION = "feed_version";
+    private static final String KEY_EPG_END_MS = "/epg_end_ms";
+    private static final String KEY_LAST_FORCED_SYNC_MS = "/last_forced_sync_ms";
+
+    private static final long MIN_SYNC_INTERVAL_SEC = 60 * 60;  // 1 hour
+    private static final long MAX_SYNC_INTERVAL_SEC = 60 * 60 * 24 * 7;  // 1 week
+    private static final long MIN_EPG_TAIL_SEC = 60 * 60 * 24 * 3;  // 3 days
+
+    private final SharedPreferences mPrefs;
+
+    SyncScheduler(Context context) {
+        mPrefs = getSchedule(context);
+    }
+
+    private static SharedPreferences getSchedule(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Returns the period to register the periodic sync with.
+     */
+    long getSyncPeriodSec() {
+        return mPrefs.getLong(KEY_PERIOD_SEC, SyncAdapter.FULL_SYNC_FREQUENCY_SEC);
+    }
+
+    /**
+     * Records until when the input has programs after a full sync of it. The channels which have
+     * all the programs of the feed don't count, so that the end of a feed isn't taken for a
+     * program guide running short.
+     */
+    void onInputSynced(String inputId, long epgEndMs) {
+        mPrefs.edit().putLong(inputId + KEY_EPG_END_MS, epgEndMs).apply();
+    }
+
+    /**
+     * Adapts the sync period after a full sync, and registers the periodic sync
+     * again if the period has changed.
+     *
+     * @param feedVersion The hash of the feed the sync wrote.
+     * @param feedNotModified Whether the server told that the feed hasn't changed.
+     */
+    void onFullSyncFinished(long feedVersion, boolean feedNotModified) {
+        long intervalSec = mPrefs.getLong(KEY_INTERVAL_SEC, SyncAdapter.FULL_SYNC_FREQUENCY_SEC);
+        if (mPrefs.contains(KEY_FEED_VERSION)) {
+            boolean changed = !feedNotModified
+                    && mPrefs.getLong(KEY_FEED_VERSION, 0) != feedVersion;
+            intervalSec = changed ? Math.max(intervalSec / 2, MIN_SYNC_INTERVAL_SEC)
+                    : Math.min(intervalSec * 2, MAX_SYNC_INTERVAL_SEC);
+        }
+        // Sync again while all the inputs still have enough programs left.
+        long epgEndMs = Long.MAX_VALUE;
+        for (Map.Entry<String, ?> entry : mPrefs.getAll().entrySet()) {
+            if (entry.getKey().endsWith(KEY_EPG_END_MS)) {
+                epgEndMs = Math.min(epgEndMs, (Long) entry.getValue());
+            }
+        }
+        long epgTailSec = (epgEndMs - System.currentTimeMillis()) / 1000 - MIN_EPG_TAIL_SEC;
+        long periodSec = Math.max(Math.min(intervalSec, epgTailSec), MIN_SYNC_INTERVAL_SEC);
+        long oldPeriodSec = getSyncPeriodSec();
+        mPrefs.edit()
+                .putLong(KEY_INTERVAL_SEC, intervalSec)
+                .putLong(KEY_PERIOD_SEC, periodSec)
+                .putLong(KEY_FEED_VERSION, feedVersion)
+                .apply();
+        if (periodSec != oldPeriodSec) {
+            Log.i(TAG, "Sync period changed from " + oldPeriodSec + "s to " + periodSec + "s");
+            SyncUtils.addPeriodicSync(periodSec);
+        }
+    }
+
+    /**
+     * Requests a full sync of the input if its program guide has gotten too short, at most once
+     * in {@link #MIN_SYNC_INTERVAL_SEC}. Called when the user tunes to a channel.
+     */
+    public static void requestSyncIfEpgTailShort(Context context, String inputId) {
+        SharedPreferences prefs = getSchedule(context);
+        String epgEndKey = inputId + KEY_EPG_END_MS;
+        if (!prefs.contains(epgEndKey)) {
+            // The first full sync hasn't finished yet.
+            return;
+        }
+        long nowMs = System.currentTimeMillis();
+        if (prefs.getLong(epgEndKey, 0) - nowMs >= MIN_EPG_TAIL_SEC * 1000
+                || nowMs - prefs.getLong(inputId + KEY_LAST_FORCED_SYNC_MS, 0)
+                        < MIN_SYNC_INTERVAL_SEC * 1000) {
+            return;
+        }
+        Log.i(TAG, "Program guide of " + inputId + " is running short. Forcing a full sync.");
+        prefs.edit().putLong(inputId + KEY_LAST_FORCED_SYNC_MS, nowMs).apply();
+        SyncUtils.requestSync(inputId, false);
+    }
+
+    void dump(PrintWriter writer) {
+        writer.println("Sync schedule: period=" + getSyncPeriodSec() + "s interval="
+                + mPrefs.getLong(KEY_INTERVAL_SEC, SyncAdapter.FULL_SYNC_FREQUENCY_SEC) + "s");
+        for (String key : mPrefs.getAll().keySet()) {
+            if (key.endsWith(KEY_EPG_END_MS)) {
+                String inputId = key.substring(0, key.length() - KEY_EPG_END_MS.length());
+                writer.println("  " + inputId + " epgEnd=" + mPrefs.getLong(key, 0));
+            }
+        }
+    }
+}
@@ -20,6 +20,13 @@ import android.app.Service;
 import android.content.Intent;
 import android.os.IBinder;
 
+import com.example.android.sampletvinput.BuildConfig;
+import com.example.android.sampletvinput.InstrumentedResolver;
+import com.example.android.sampletvinput.rich.RichFeedUtil;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
 /**
  * Service which provides the SyncAdapter implementation to the framework on request.
  */
@@ -41,4 +48,48 @@ public class SyncService extends Service {
     public IBinder onBind(Intent intent) {
         return sSyncAdapter.getSyncAdapterBinder();
     }
+
+    /**
+     * Prints the sync reports. {@code dumpsys activity service <this service> dry-run [short]
+     * [input ID]} requests a dry run instead, whose report shows up in the next dump,
+     * {@code benchmark-values [programs]} and
+     * {@code benchmark-sync [call latency us] [row latency us]} run the benchmarks of debug builds,
+     * {@code feed-uri <uri>|reset} switches the feed the next syncs fetch, e.g. to a synthetic one,
+     * and {@code reset-provider-stats} clears the numbers of {@link InstrumentedResolver}.
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        if (BuildConfig.DEBUG && BenchmarkCommands.run(this, writer, args)) {
+            return;
+        }
+        if (args.length > 0 && "dry-run".equals(args[0])) {
+            int i = 1;
+            boolean currentProgramOnly = args.length > i && "short".equals(args[i]);
+            if (currentProgramOnly) {
+                i++;
+            }
+            String inputId = args.length > i ? args[i] : null;
+            SyncUtils.requestDryRunSync(inputId, currentProgramOnly);
+            writer.println("Requested a dry run of " + (inputId != null ? inputId : "all inputs"));
+            return;
+        }
+        if (args.length > 1 && "feed-uri".equals(args[0])) {
+            String uri = "reset".equals(args[1]) ? null : args[1];
+            RichFeedUtil.setFeedUriOverride(this, uri);
+            writer.println("Feed URI " + (uri != null ? "set to " + uri : "reset"));
+            return;
+        }
+        if (args.length > 0 && "reset-provider-stats".equals(args[0])) {
+            InstrumentedResolver.reset();
+            return;
+        }
+        String feedUri = RichFeedUtil.getFeedUriOverride(this);
+        if (feedUri != null) {
+            writer.println("Feed URI override: " + feedUri);
+        }
+        SyncRequestCoordinator.getInstance().dump(writer);
+        new SyncScheduler(this).dump(writer);
+        new SyncReportStore(this).dump(writer);
+        InstrumentedResolver.dump(writer);
+    }
 }
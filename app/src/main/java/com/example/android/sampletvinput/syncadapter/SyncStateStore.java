@@ -0,0 +1,287 @@
+/*
+ * Copyright 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput.syncadapter;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Persists the per-channel sync state of {@link SyncAdapter}.
+ *
+ * <p>The watermark of a channel is the end time of the last program written for it. Every program
+ * before the watermark is known to be in TvProvider and up to date with the feed of the given
+ * version, so a following sync only needs to append the programs after it.
+ *
+ * <p>The checkpoint of an input records which channels the sync in progress has committed, so
+ * that a sync killed half way through can be resumed instead of starting over. Each channel is
+ * marked committed under a key of its own, which is written in the background. If the process
+ * dies before the write, the channel is only synced again.
+ */
+class SyncStateStore {
+    private static final String PREFS_NAME = "sync_state";
+    private static final String KEY_WATERMARK = "watermark";
+    private static final String KEY_FEED_VERSION = "feed_version";
+    private static final String KEY_CHECKPOINT_LISTING_VERSION = "checkpoint/listing_version";
+    private static final String KEY_CHECKPOINT_CURRENT_PROGRAM_ONLY =
+            "checkpoint/current_program_only";
+    private static final String KEY_CHECKPOINT_START_MS = "checkpoint/start_ms";
+    private static final String KEY_CHECKPOINT_END_MS = "checkpoint/end_ms";
+    // Per channel. The start time of the checkpoint which committed the channel.
+    private static final String KEY_COMMITTED_CHECKPOINT = "committed_checkpoint";
+    private static final String KEY_IN_PROGRESS_CHANNEL = "in_progress_channel";
+    private static final String KEY_INPUT_IDS = "input_ids";
+
+    static final long INVALID_WATERMARK = -1;
+    static final long INVALID_CHANNEL_ID = -1;
+
+    private final SharedPreferences mPrefs;
+
+    SyncStateStore(Context context) {
+        this(context, PREFS_NAME);
+    }
+
+    /**
+     * Keeps the state in the given preferences file instead, e.g. for a benchmark.
+     */
+    SyncStateStore(Context context, String prefsName) {
+        mPrefs = context.getSharedPreferences(prefsName, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Registers the input to be synced by the periodic sync.
+     */
+    void addInput(String inputId) {
+        Set<String> inputIds = new HashSet<>(
+                mPrefs.getStringSet(KEY_INPUT_IDS, Collections.<String>emptySet()));
+        if (inputIds.add(inputId)) {
+            mPrefs.edit().putStringSet(KEY_INPUT_IDS, inputIds).commit();
+        }
+    }
+
+    /**
+     * Returns the inputs registered with {@link #addInput}.
+     */
+    List<String> getInputIds() {
+        List<String> inputIds = new ArrayList<>(
+                mPrefs.getStringSet(KEY_INPUT_IDS, Collections.<String>emptySet()));
+        Collections.sort(inputIds);
+        return inputIds;
+    }
+
+    /**
+     * Returns the watermark of the channel, or {@code -1} if there is none or the programs were
+     * written from a different version of the feed.
+     */
+    long getWatermark(String inputId, long channelId, long feedVersion) {
+        String prefix = getKeyPrefix(inputId, channelId);
+        if (!mPrefs.contains(prefix + KEY_FEED_VERSION)
+                || mPrefs.getLong(prefix + KEY_FEED_VERSION, 0) != feedVersion) {
+            return INVALID_WATERMARK;
+        }
+        return mPrefs.getLong(prefix + KEY_WATERMARK, INVALID_WATERMARK);
+    }
+
+    private static void removeWatermark(SharedPreferences.Editor editor, String inputId,
+            long channelId) {
+        String prefix = getKeyPrefix(inputId, channelId);
+        editor.remove(prefix + KEY_FEED_VERSION).remove(prefix + KEY_WATERMARK);
+    }
+
+    /**
+     * Returns the checkpoint of the unfinished sync of the input, or {@code null} if the last sync
+     * has finished.
+     */
+    Checkpoint getCheckpoint(String inputId) {
+        String prefix = inputId + "/";
+        if (!mPrefs.contains(prefix + KEY_CHECKPOINT_LISTING_VERSION)) {
+            return null;
+        }
+        long startMs = mPrefs.getLong(prefix + KEY_CHECKPOINT_START_MS, 0);
+        Set<Long> committedChannelIds = new HashSet<>();
+        for (Map.Entry<String, ?> entry : mPrefs.getAll().entrySet()) {
+            long channelId = getCommittedChannelId(inputId, entry.getKey());
+            if (channelId != INVALID_CHANNEL_ID
+                    && Long.valueOf(startMs).equals(entry.getValue())) {
+                committedChannelIds.add(channelId);
+            }
+        }
+        return new Checkpoint(mPrefs.getLong(prefix + KEY_CHECKPOINT_LISTING_VERSION, 0),
+                mPrefs.getBoolean(prefix + KEY_CHECKPOINT_CURRENT_PROGRAM_ONLY, false),
+                startMs, mPrefs.getLong(prefix + KEY_CHECKPOINT_END_MS, 0),
+                committedChannelIds);
+    }
+
+    /**
+     * Returns the channel if the key marks it committed to a checkpoint of the input, or
+     * {@link #INVALID_CHANNEL_ID}.
+     */
+    private static long getCommittedChannelId(String inputId, String key) {
+        String inputPrefix = inputId + "/";
+        String suffix = "/" + KEY_COMMITTED_CHECKPOINT;
+        if (!key.startsWith(inputPrefix) || !key.endsWith(suffix)
+                || key.length() <= inputPrefix.length() + suffix.length()) {
+            return INVALID_CHANNEL_ID;
+        }
+        try {
+            return Long.parseLong(
+                    key.substring(inputPrefix.length(), key.length() - suffix.length()));
+        } catch (NumberFormatException e) {
+            // The key of another input whose ID starts with this one.
+            return INVALID_CHANNEL_ID;
+        }
+    }
+
+    /**
+     * Starts a new checkpoint with no committed channels for the input. The channels committed
+     * to an earlier one don't count, since it started at a different time.
+     */
+    void startCheckpoint(String inputId, long listingVersion, boolean currentProgramOnly,
+            long startMs, long endMs) {
+        String prefix = inputId + "/";
+        mPrefs.edit()
+                .putLong(prefix + KEY_CHECKPOINT_LISTING_VERSION, listingVersion)
+                .putBoolean(prefix + KEY_CHECKPOINT_CURRENT_PROGRAM_ONLY, currentProgramOnly)
+                .putLong(prefix + KEY_CHECKPOINT_START_MS, startMs)
+                .putLong(prefix + KEY_CHECKPOINT_END_MS, endMs)
+                .commit();
+    }
+
+    /**
+     * Marks that the programs of the channel are about to be written.
+     */
+    void beginChannel(String inputId, long channelId) {
+        mPrefs.edit().putLong(inputId + "/" + KEY_IN_PROGRESS_CHANNEL, channelId).commit();
+    }
+
+    /**
+     * Returns the channel whose programs were being written when the last sync of the input
+     * died, or {@link #INVALID_CHANNEL_ID}.
+     */
+    long getInterruptedChannel(String inputId) {
+        return mPrefs.getLong(inputId + "/" + KEY_IN_PROGRESS_CHANNEL, INVALID_CHANNEL_ID);
+    }
+
+    /**
+     * Drops the watermark of an interrupted channel, so that the existing programs are compared
+     * with the feed again.
+     */
+    void reconcileChannel(String inputId, long channelId) {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        removeWatermark(editor, inputId, channelId);
+        editor.remove(inputId + "/" + KEY_IN_PROGRESS_CHANNEL);
+        editor.commit();
+    }
+
+    /**
+     * Records that the programs of the channel are committed to TvProvider, together with its new
+     * watermark, in a single edit. It's written to disk in the background. Losing it is safe: a
+     * channel whose programs were appended still has the marker of {@link #beginChannel} on disk
+     * then, so it's reconciled, and the others are compared with the feed again.
+     *
+     * @param watermarkMs The new watermark, or {@link #INVALID_WATERMARK} to drop it.
+     */
+    void commitChannel(String inputId, long channelId, long feedVersion, long watermarkMs) {
+        String inputPrefix = inputId + "/";
+        String prefix = getKeyPrefix(inputId, channelId);
+        SharedPreferences.Editor editor = mPrefs.edit();
+        if (watermarkMs == INVALID_WATERMARK) {
+            removeWatermark(editor, inputId, channelId);
+        } else {
+            editor.putLong(prefix + KEY_FEED_VERSION, feedVersion)
+                    .putLong(prefix + KEY_WATERMARK, watermarkMs);
+        }
+        editor.putLong(prefix + KEY_COMMITTED_CHECKPOINT,
+                mPrefs.getLong(inputPrefix + KEY_CHECKPOINT_START_MS, 0));
+        editor.remove(inputPrefix + KEY_IN_PROGRESS_CHANNEL);
+        editor.apply();
+    }
+
+    /**
+     * Records the new watermark of the channel without committing it to the checkpoint, e.g. after
+     * a short sync of the channel which the full sync still has to go through.
+     */
+    void updateWatermark(String inputId, long channelId, long feedVersion, long watermarkMs) {
+        String prefix = getKeyPrefix(inputId, channelId);
+        mPrefs.edit()
+                .putLong(prefix + KEY_FEED_VERSION, feedVersion)
+                .putLong(prefix + KEY_WATERMARK, watermarkMs)
+                .remove(inputId + "/" + KEY_IN_PROGRESS_CHANNEL)
+                .apply();
+    }
+
+    /**
+     * Removes the checkpoint of the input once all its channels are committed, and writes the
+     * state of the sync to disk.
+     */
+    void finishCheckpoint(String inputId) {
+        String prefix = inputId + "/";
+        SharedPreferences.Editor editor = mPrefs.edit()
+                .remove(prefix + KEY_CHECKPOINT_LISTING_VERSION)
+                .remove(prefix + KEY_CHECKPOINT_CURRENT_PROGRAM_ONLY)
+                .remove(prefix + KEY_CHECKPOINT_START_MS)
+                .remove(prefix + KEY_CHECKPOINT_END_MS);
+        for (String key : mPrefs.getAll().keySet()) {
+            if (getCommittedChannelId(inputId, key) != INVALID_CHANNEL_ID) {
+                editor.remove(key);
+            }
+        }
+        editor.commit();
+    }
+
+    /**
+     * Clears the sync state of all the channels of the input, e.g. when its channels are
+     * re-registered and the row IDs may point to different channels.
+     */
+    void clear(String inputId) {
+        String inputPrefix = inputId + "/";
+        SharedPreferences.Editor editor = mPrefs.edit();
+        for (String key : mPrefs.getAll().keySet()) {
+            if (key.startsWith(inputPrefix)) {
+                editor.remove(key);
+            }
+        }
+        editor.commit();
+    }
+
+    private static String getKeyPrefix(String inputId, long channelId) {
+        return inputId + "/" + channelId + "/";
+    }
+
+    static final class Checkpoint {
+        final long listingVersion;
+        final boolean currentProgramOnly;
+        final long startMs;
+        final long endMs;
+        final Set<Long> committedChannelIds;
+
+        private Checkpoint(long listingVersion, boolean currentProgramOnly, long startMs,
+                long endMs, Set<Long> committedChannelIds) {
+            this.listingVersion = listingVersion;
+            this.currentProgramOnly = currentProgramOnly;
+            this.startMs = startMs;
+            this.endMs = endMs;
+            this.committedChannelIds = committedChannelIds;
+        }
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput.syncadapter;
+
+import android.content.SyncResult;
+import android.os.SystemClock;
+
+import com.example.android.sampletvinput.ContentProviderBatcher;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Timings and counters of a single run of {@link SyncAdapter}, for the whole sync and for each
+ * channel.
+ */
+class SyncStats {
+    static final int PHASE_FETCH = 0;
+    static final int PHASE_PARSE = 1;
+    static final int PHASE_CHANNEL_MAP = 2;
+    static final int PHASE_SCHEDULE = 3;
+    static final int PHASE_READ = 4;
+    static final int PHASE_DIFF = 5;
+    static final int PHASE_APPLY = 6;
+    private static final String[] PHASE_NAMES = {
+            "fetch", "parse", "channel_map", "schedule", "read", "diff", "apply"};
+
+    static final String MODE_APPEND = "append";
+    static final String MODE_DIFF = "diff";
+    static final String MODE_SKIP = "skip";
+
+    // Only the slowest channels are kept in the persisted report to bound its size.
+    private static final int MAX_CHANNELS_IN_REPORT = 20;
+
+    final String inputId;
+    final long startTimeMs;
+    long durationMs;
+    boolean currentProgramOnly;
+    boolean resumed;
+    // Whether the channels were written while the feed was being parsed.
+    boolean streaming;
+    // Whether the operations were only counted and not applied.
+    boolean dryRun;
+    String error;
+    final long[] phaseMs = new long[PHASE_NAMES.length];
+    long feedBytes;
+    // Whether the feed was fetched for another input in the same sync.
+    boolean feedShared;
+    long feedVersion;
+    int channelCount;
+    final Counters totals = new Counters();
+    final List<ChannelStats> channels = new ArrayList<>();
+
+    private final long mStartRealtimeMs;
+
+    SyncStats(String inputId) {
+        this.inputId = inputId;
+        startTimeMs = System.currentTimeMillis();
+        mStartRealtimeMs = SystemClock.elapsedRealtime();
+    }
+
+    private SyncStats(String inputId, long startTimeMs) {
+        this.inputId = inputId;
+        this.startTimeMs = startTimeMs;
+        mStartRealtimeMs = 0;
+    }
+
+    ChannelStats startChannel(long channelId) {
+        ChannelStats channelStats = new ChannelStats(channelId);
+        channels.add(channelStats);
+        return channelStats;
+    }
+
+    /**
+     * Adds up the per-channel numbers and stops the clock.
+     */
+    void finish() {
+        durationMs = SystemClock.elapsedRealtime() - mStartRealtimeMs;
+        channelCount = 0;
+        for (ChannelStats channel : channels) {
+            if (!channel.shortWindow) {
+                channelCount++;
+            }
+            for (int i = PHASE_SCHEDULE; i < phaseMs.length; ++i) {
+                phaseMs[i] += channel.phaseMs[i];
+            }
+            totals.add(channel.counters);
+        }
+    }
+
+    /**
+     * Reports the numbers to the sync framework.
+     */
+    void addTo(SyncResult syncResult) {
+        syncResult.stats.numEntries += totals.rowsRead;
+        syncResult.stats.numInserts += totals.inserts;
+        syncResult.stats.numUpdates += totals.updates;
+        syncResult.stats.numDeletes += totals.deletes;
+    }
+
+    void dump(PrintWriter writer) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        writer.println(format.format(new Date(startTimeMs)) + " " + inputId + " "
+                + (currentProgramOnly ? "short" : "full") + (resumed ? " resumed" : "")
+                + (streaming ? " streaming" : "") + (dryRun ? " dry-run" : "")
+                + (feedShared ? " shared-feed" : "") + " " + durationMs + "ms"
+                + (error != null ? " error=" + error : ""));
+        StringBuilder phases = new StringBuilder("  phases(ms):");
+        for (int i = 0; i < phaseMs.length; ++i) {
+            phases.append(' ').append(PHASE_NAMES[i]).append('=').append(phaseMs[i]);
+        }
+        writer.println(phases);
+        writer.println("  feedBytes=" + feedBytes + " channels=" + channelCount + " " + totals);
+        for (ChannelStats channel : channels) {
+            writer.println("    channel " + channel.channelId + " " + channel.mode
+                    + (channel.shortWindow ? " short" : "") + (channel.failed ? " failed" : "")
+                    + " schedule="
+                    + channel.phaseMs[PHASE_SCHEDULE] + "ms read=" + channel.phaseMs[PHASE_READ]
+                    + "ms diff=" + channel.phaseMs[PHASE_DIFF] + "ms apply="
+                    + channel.phaseMs[PHASE_APPLY] + "ms " + channel.counters);
+        }
+    }
+
+    JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("inputId", inputId);
+        json.put("startTimeMs", startTimeMs);
+        json.put("durationMs", durationMs);
+        json.put("currentProgramOnly", currentProgramOnly);
+        json.put("resumed", resumed);
+        json.put("streaming", streaming);
+        json.put("dryRun", dryRun);
+        json.putOpt("error", error);
+        json.put("phaseMs", toJsonArray(phaseMs));
+        json.put("feedBytes", feedBytes);
+        json.put("feedShared", feedShared);
+        json.put("feedVersion", feedVersion);
+        json.put("totals", totals.toJson());
+        json.put("channelCount", channelCount);
+        List<ChannelStats> slowest = new ArrayList<>(channels);
+        Collections.sort(slowest, new Comparator<ChannelStats>() {
+            @Override
+            public int compare(ChannelStats lhs, ChannelStats rhs) {
+                return Long.compare(rhs.getTotalMs(), lhs.getTotalMs());
+            }
+        });
+        JSONArray channelsJson = new JSONArray();
+        for (int i = 0; i < slowest.size() && i < MAX_CHANNELS_IN_REPORT; ++i) {
+            channelsJson.put(slowest.get(i).toJson());
+        }
+        json.put("channels", channelsJson);
+        return json;
+    }
+
+    static SyncStats fromJson(JSONObject json) throws JSONException {
+        SyncStats stats = new SyncStats(json.getString("inputId"), json.getLong("startTimeMs"));
+        stats.durationMs = json.getLong("durationMs");
+        stats.currentProgramOnly = json.getBoolean("currentProgramOnly");
+        stats.resumed = json.getBoolean("resumed");
+        stats.streaming = json.optBoolean("streaming");
+        stats.dryRun = json.optBoolean("dryRun");
+        stats.error = json.optString("error", null);
+        fromJsonArray(json.getJSONArray("phaseMs"), stats.phaseMs);
+        stats.feedBytes = json.getLong("feedBytes");
+        stats.feedShared = json.optBoolean("feedShared");
+        stats.feedVersion = json.optLong("feedVersion");
+        stats.channelCount = json.getInt("channelCount");
+        stats.totals.fromJson(json.getJSONObject("totals"));
+        JSONArray channelsJson = json.getJSONArray("channels");
+        for (int i = 0; i < channelsJson.length(); ++i) {
+            JSONObject channelJson = channelsJson.getJSONObject(i);
+            ChannelStats channel = stats.startChannel(channelJson.getLong("channelId"));
+            channel.mode = channelJson.getString("mode");
+            channel.shortWindow = channelJson.optBoolean("shortWindow");
+            channel.failed = channelJson.optBoolean("failed");
+            fromJsonArray(channelJson.getJSONArray("phaseMs"), channel.phaseMs);
+            channel.counters.fromJson(channelJson.getJSONObject("counters"));
+        }
+        return stats;
+    }
+
+    private static JSONArray toJsonArray(long[] values) throws JSONException {
+        JSONArray array = new JSONArray();
+        for (long value : values) {
+            array.put(value);
+        }
+        return array;
+    }
+
+    private static void fromJsonArray(JSONArray array, long[] values) throws JSONException {
+        for (int i = 0; i < array.length() && i < values.length; ++i) {
+            values[i] = array.getLong(i);
+        }
+    }
+
+    static final class ChannelStats {
+        final long channelId;
+        String mode = MODE_SKIP;
+        // Whether this is the short sync of a hot channel ahead of the full sync.
+        boolean shortWindow;
+        boolean failed;
+        final long[] phaseMs = new long[PHASE_NAMES.length];
+        final Counters counters = new Counters();
+
+        private ChannelStats(long channelId) {
+            this.channelId = channelId;
+        }
+
+        /**
+         * Adds the numbers of the operations applied through the given batcher.
+         */
+        void addBatcher(ContentProviderBatcher batcher) {
+            counters.inserts += batcher.getInsertCount();
+            counters.updates += batcher.getUpdateCount();
+            counters.deletes += batcher.getDeleteCount();
+            counters.batches += batcher.getBatchCount();
+            counters.batchBytes += batcher.getAppliedBytes();
+            counters.uncertainRetries += batcher.getUncertainRetryCount();
+            phaseMs[PHASE_APPLY] += batcher.getApplyTimeMs();
+        }
+
+        long getTotalMs() {
+            long totalMs = 0;
+            for (long ms : phaseMs) {
+                totalMs += ms;
+            }
+            return totalMs;
+        }
+
+        private JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("channelId", channelId);
+            json.put("mode", mode);
+            json.put("shortWindow", shortWindow);
+            json.put("failed", failed);
+            json.put("phaseMs", toJsonArray(phaseMs));
+            json.put("counters", counters.toJson());
+            return json;
+        }
+    }
+
+    static final class Counters {
+        long rowsRead;
+        long inserts;
+        long updates;
+        long deletes;
+        long batches;
+        long batchBytes;
+        // Retries of batches with inserts which may have been applied already.
+        long uncertainRetries;
+
+        private void add(Counters other) {
+            rowsRead += other.rowsRead;
+            inserts += other.inserts;
+            updates += other.updates;
+            deletes += other.deletes;
+            batches += other.batches;
+            batchBytes += other.batchBytes;
+            uncertainRetries += other.uncertainRetries;
+        }
+
+        private JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("rowsRead", rowsRead);
+            json.put("inserts", inserts);
+            json.put("updates", updates);
+            json.put("deletes", deletes);
+            json.put("batches", batches);
+            json.put("batchBytes", batchBytes);
+            json.put("uncertainRetries", uncertainRetries);
+            return json;
+        }
+
+        private void fromJson(JSONObject json) throws JSONException {
+            rowsRead = json.getLong("rowsRead");
+            inserts = json.getLong("inserts");
+            updates = json.getLong("updates");
+            deletes = json.getLong("deletes");
+            batches = json.getLong("batches");
+            batchBytes = json.getLong("batchBytes");
+            // Missing from the reports persisted before it was counted.
+            uncertainRetries = json.optLong("uncertainRetries");
+        }
+
+        @Override
+        public String toString() {
+            return "rowsRead=" + rowsRead + " inserts=" + inserts + " updates=" + updates
+                    + " deletes=" + deletes + " batches=" + batches + " batchBytes=" + batchBytes
+                    + " uncertainRetries=" + uncertainRetries;
+        }
+    }
+}
@@ -32,6 +32,10 @@ public class SyncUtils {
     private static final String CONTENT_AUTHORITY = TvContract.AUTHORITY;
     public static final String ACCOUNT_TYPE = "com.example.android.sampletvinput.account";
 
+    /**
+     * Registers the input to be synced by the periodic sync, and sets up the periodic sync if it
+     * isn't yet.
+     */
     public static void setUpPeriodicSync(Context context, String inputId) {
         Account account = DummyAccountService.getAccount(ACCOUNT_TYPE);
         AccountManager accountManager =
@@ -41,18 +45,67 @@ public class SyncUtils {
         }
         ContentResolver.setIsSyncable(account, CONTENT_AUTHORITY, 1);
         ContentResolver.setSyncAutomatically(account, CONTENT_AUTHORITY, true);
+        new SyncStateStore(context).addInput(inputId);
+        // The periodic sync used to be registered for each input. Now a single one syncs all the
+        // registered inputs from one fetch of the feed.
         Bundle bundle = new Bundle();
         bundle.putString(SyncAdapter.BUNDLE_KEY_INPUT_ID, inputId);
-        ContentResolver.addPeriodicSync(account, CONTENT_AUTHORITY, bundle,
-                SyncAdapter.FULL_SYNC_FREQUENCY_SEC);
+        ContentResolver.removePeriodicSync(account, CONTENT_AUTHORITY, bundle);
+        addPeriodicSync(new SyncScheduler(context).getSyncPeriodSec());
     }
 
+    /**
+     * Registers the periodic sync of all the inputs, replacing the one with a different period if
+     * any.
+     */
+    static void addPeriodicSync(long periodSec) {
+        ContentResolver.addPeriodicSync(DummyAccountService.getAccount(ACCOUNT_TYPE),
+                CONTENT_AUTHORITY, new Bundle(), periodSec);
+    }
+
+    /**
+     * Forgets what the previous syncs wrote for the input, so that the next sync compares all the
+     * programs with the feed. Call this whenever the channels of the input are re-registered.
+     */
+    public static void resetSyncState(Context context, String inputId) {
+        new SyncStateStore(context).clear(inputId);
+    }
+
+    /**
+     * Requests a sync of the input, unless a pending or running sync covers it already. See
+     * {@link SyncRequestCoordinator}.
+     */
     public static void requestSync(String inputId, boolean currentProgramOnly) {
+        SyncRequestCoordinator coordinator = SyncRequestCoordinator.getInstance();
+        long sequence = coordinator.onSyncRequested(inputId, currentProgramOnly);
+        if (sequence == 0) {
+            return;
+        }
         Bundle bundle = new Bundle();
         bundle.putBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, true);
-        bundle.putBoolean(ContentResolver.SYNC_EXTRAS_EXPEDITED, true);
+        bundle.putBoolean(ContentResolver.SYNC_EXTRAS_EXPEDITED, coordinator.tryExpedite());
         bundle.putString(SyncAdapter.BUNDLE_KEY_INPUT_ID, inputId);
         bundle.putBoolean(SyncAdapter.BUNDLE_KEY_CURRENT_PROGRAM_ONLY, currentProgramOnly);
+        bundle.putLong(SyncAdapter.BUNDLE_KEY_REQUEST_SEQUENCE, sequence);
+        ContentResolver.requestSync(DummyAccountService.getAccount(ACCOUNT_TYPE), CONTENT_AUTHORITY,
+                bundle);
+    }
+
+    /**
+     * Requests a sync which goes through the whole fetch, parse and diff, but only reports the
+     * operations it would apply, so that its cost can be measured without touching TvProvider.
+     *
+     * @param inputId The input to sync, or {@code null} for all the registered inputs.
+     */
+    public static void requestDryRunSync(String inputId, boolean currentProgramOnly) {
+        Bundle bundle = new Bundle();
+        bundle.putBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, true);
+        bundle.putBoolean(ContentResolver.SYNC_EXTRAS_EXPEDITED, true);
+        if (inputId != null) {
+            bundle.putString(SyncAdapter.BUNDLE_KEY_INPUT_ID, inputId);
+        }
+        bundle.putBoolean(SyncAdapter.BUNDLE_KEY_CURRENT_PROGRAM_ONLY, currentProgramOnly);
+        bundle.putBoolean(SyncAdapter.BUNDLE_KEY_DRY_RUN, true);
         ContentResolver.requestSync(DummyAccountService.getAccount(ACCOUNT_TYPE), CONTENT_AUTHORITY,
                 bundle);
     }
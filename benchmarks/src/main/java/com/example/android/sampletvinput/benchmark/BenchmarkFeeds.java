@@ -0,0 +1,41 @@
+/*
+ * Copyright 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput.benchmark;
+
+import com.example.android.sampletvinput.feedgen.SyntheticFeed;
+import com.example.android.sampletvinput.xmltv.XmlTvParser;
+
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.ByteArrayInputStream;
+
+/**
+ * Turns synthetic feeds into the listings the benchmarks start from.
+ */
+final class BenchmarkFeeds {
+    private BenchmarkFeeds() {
+    }
+
+    /**
+     * Parses the feed like the sync does.
+     */
+    static XmlTvParser.TvListing parse(SyntheticFeed feed) throws XmlPullParserException {
+        return XmlTvParser.parse(XmlPullParserFactory.newInstance().newPullParser(),
+                new ByteArrayInputStream(feed.toXml()));
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput.benchmark;
+
+import com.example.android.sampletvinput.data.InternalProviderData;
+import com.example.android.sampletvinput.xmltv.XmlTvParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-program encoding and decoding the sync and the tunes do: the internal provider
+ * data, and picking the Android TV ratings out of the ones in the feed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProgramDataBenchmark {
+    private InternalProviderData mData;
+    private String mEncoded;
+    private String mLegacyEncoded;
+    private XmlTvParser.XmlTvRating[] mRatings;
+
+    @Setup
+    public void setUp() {
+        mData = new InternalProviderData.Builder()
+                .setVideoType(XmlTvParser.VIDEO_TYPE_HLS)
+                .setVideoUrl("http://example.com/video/1/2/master.m3u8")
+                .addAlternateUrl("http://cdn1.example.com/video/1/2/master.m3u8")
+                .addAlternateUrl("http://cdn2.example.com/video/1/2/master.m3u8")
+                .setBitrateHintBps(2500000)
+                .build();
+        mEncoded = mData.encode();
+        mLegacyEncoded = XmlTvParser.VIDEO_TYPE_HLS + ",http://example.com/video/1/2/master.m3u8";
+        mRatings = new XmlTvParser.XmlTvRating[] {
+                new XmlTvParser.XmlTvRating("com.android.tv", "com.android.tv/US_TV/US_TV_PG"),
+                new XmlTvParser.XmlTvRating("MPAA", "PG"),
+                new XmlTvParser.XmlTvRating("com.android.tv",
+                        "com.android.tv/US_TV/US_TV_PG/US_TV_V")};
+    }
+
+    @Benchmark
+    public String encodeInternalProviderData() {
+        return mData.encode();
+    }
+
+    @Benchmark
+    public InternalProviderData decodeInternalProviderData() {
+        return InternalProviderData.decode(mEncoded);
+    }
+
+    @Benchmark
+    public InternalProviderData decodeLegacyInternalProviderData() {
+        return InternalProviderData.decode(mLegacyEncoded);
+    }
+
+    /**
+     * The cached path the tunes take.
+     */
+    @Benchmark
+    public InternalProviderData parseInternalProviderData() {
+        return InternalProviderData.parse(mEncoded);
+    }
+
+    @Benchmark
+    public String androidRatings() {
+        return XmlTvParser.getAndroidRatings(mRatings);
+    }
+}
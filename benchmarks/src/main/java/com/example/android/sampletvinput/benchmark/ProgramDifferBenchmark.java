@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput.benchmark;
+
+import com.example.android.sampletvinput.epg.ProgramDiffer;
+import com.example.android.sampletvinput.epg.ProgramScheduler;
+import com.example.android.sampletvinput.feedgen.SyntheticFeed;
+import com.example.android.sampletvinput.xmltv.XmlTvParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the comparison of the programs of a channel in the database with the ones of the feed,
+ * as in {@code SyncAdapter.updatePrograms}, for different shares of changed programs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProgramDifferBenchmark {
+    private static final long WINDOW_MS = 1000L * 60 * 60 * 24 * 14;  // 2 weeks
+    private static final long MINUTE_MS = 1000L * 60;
+
+    @Param({"0", "10", "100"})
+    public int changedPercent;
+
+    @Param({"50"})
+    public int programsPerChannel;
+
+    private List<ScheduledProgram> mOldPrograms;
+    private List<ScheduledProgram> mNewPrograms;
+
+    @Setup
+    public void setUp() throws XmlPullParserException {
+        XmlTvParser.TvListing listing = BenchmarkFeeds.parse(new SyntheticFeed.Builder()
+                .setChannelCount(1)
+                .setProgramsPerChannel(programsPerChannel)
+                .setRepeatPrograms(true)
+                .build());
+        long startMs = listing.programs.get(0).startTimeUtcMillis;
+        List<ScheduledProgram> programs = ProgramScheduler.schedule(listing.channels.get(0),
+                listing.programs, startMs, startMs + WINDOW_MS, ScheduledProgram.FACTORY);
+        // The old programs are copies, as if read back from the database, so that comparing the
+        // unchanged programs costs what it does in the app.
+        mOldPrograms = new ArrayList<>(programs.size());
+        for (ScheduledProgram program : programs) {
+            mOldPrograms.add(program.copy());
+        }
+        // Half of the changed programs are retitled, which replaces them, and the other half end
+        // a minute early, which updates them.
+        Random random = new Random(0);
+        mNewPrograms = new ArrayList<>(programs.size());
+        for (ScheduledProgram program : programs) {
+            if (random.nextInt(100) >= changedPercent) {
+                mNewPrograms.add(program);
+            } else if (random.nextBoolean()) {
+                mNewPrograms.add(new ScheduledProgram(
+                        program.content.withTitle(program.content.title + " (new)"),
+                        program.startTimeMs, program.endTimeMs));
+            } else {
+                mNewPrograms.add(new ScheduledProgram(program.content, program.startTimeMs,
+                        program.endTimeMs - MINUTE_MS));
+            }
+        }
+    }
+
+    @Benchmark
+    public int diff() {
+        ProgramDiffer<ScheduledProgram> differ = new ProgramDiffer<>(
+                ScheduledProgram.DIFF_ADAPTER, mOldPrograms.iterator(), mNewPrograms);
+        int operationCount = 0;
+        while (differ.next()) {
+            operationCount++;
+        }
+        return operationCount;
+    }
+}
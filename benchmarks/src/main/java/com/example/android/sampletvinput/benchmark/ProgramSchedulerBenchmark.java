@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput.benchmark;
+
+import com.example.android.sampletvinput.epg.ProgramScheduler;
+import com.example.android.sampletvinput.feedgen.SyntheticFeed;
+import com.example.android.sampletvinput.xmltv.XmlTvParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long a full sync takes to schedule the programs of a lineup, from the parsed feed
+ * to the programs to write, without the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProgramSchedulerBenchmark {
+    // The window of a full sync.
+    private static final long WINDOW_MS = 1000L * 60 * 60 * 24 * 14;  // 2 weeks
+
+    @Param({"20", "200"})
+    public int channels;
+
+    @Param({"20", "100"})
+    public int programsPerChannel;
+
+    private XmlTvParser.TvListing mListing;
+    private List<List<XmlTvParser.XmlTvProgram>> mChannelPrograms;
+    private long mStartMs;
+
+    @Setup
+    public void setUp() throws XmlPullParserException {
+        mListing = BenchmarkFeeds.parse(new SyntheticFeed.Builder()
+                .setChannelCount(channels)
+                .setProgramsPerChannel(programsPerChannel)
+                .setRepeatPrograms(true)
+                .build());
+        mChannelPrograms = new ArrayList<>();
+        for (XmlTvParser.XmlTvChannel channel : mListing.channels) {
+            mChannelPrograms.add(ProgramScheduler.getChannelPrograms(channel, mListing.programs));
+        }
+        // Not aligned to the loop of any channel, like the time a real sync starts at.
+        mStartMs = mListing.programs.get(0).startTimeUtcMillis + 12345678;
+    }
+
+    /**
+     * Splits the programs of the feed by channel, which the sync does for each input.
+     */
+    @Benchmark
+    public int channelPrograms() {
+        int count = 0;
+        for (XmlTvParser.XmlTvChannel channel : mListing.channels) {
+            count += ProgramScheduler.getChannelPrograms(channel, mListing.programs).size();
+        }
+        return count;
+    }
+
+    /**
+     * Hashes the feed of every channel, which decides whether its programs can be appended.
+     */
+    @Benchmark
+    public long feedVersion() {
+        long version = 0;
+        for (int i = 0; i < mChannelPrograms.size(); ++i) {
+            version = 31 * version + ProgramScheduler.getFeedVersion(mListing.channels.get(i),
+                    mChannelPrograms.get(i));
+        }
+        return version;
+    }
+
+    /**
+     * Loops the programs of every channel over the window of a full sync.
+     */
+    @Benchmark
+    public int scheduleRepeat() {
+        int count = 0;
+        for (int i = 0; i < mChannelPrograms.size(); ++i) {
+            count += ProgramScheduler.schedule(mListing.channels.get(i), mChannelPrograms.get(i),
+                    mStartMs, mStartMs + WINDOW_MS, ScheduledProgram.FACTORY).size();
+        }
+        return count;
+    }
+}
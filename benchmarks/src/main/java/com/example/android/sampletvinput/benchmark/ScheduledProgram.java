@@ -0,0 +1,187 @@
+/*
+ * Copyright 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput.benchmark;
+
+import com.example.android.sampletvinput.epg.Fingerprint;
+import com.example.android.sampletvinput.epg.ProgramDiffer;
+import com.example.android.sampletvinput.epg.ProgramScheduler;
+import com.example.android.sampletvinput.xmltv.XmlTvParser;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A scheduled program as plain Java, standing in for {@code Program} of the app, which needs the
+ * Android framework. Like {@code Program}, it's compared by its fingerprint first and by all its
+ * fields only if the fingerprints match.
+ */
+final class ScheduledProgram {
+    private static final long FINGERPRINT_SEED = Fingerprint.OFFSET_BASIS ^ 3;
+
+    static final ProgramScheduler.ProgramFactory<Content, ScheduledProgram> FACTORY =
+            new ProgramScheduler.ProgramFactory<Content, ScheduledProgram>() {
+                @Override
+                public Content createContent(XmlTvParser.XmlTvProgram program) {
+                    return new Content(program.title, program.description,
+                            program.icon != null ? program.icon.src : null,
+                            program.category.length > 0
+                                    ? Arrays.toString(program.category) : null,
+                            XmlTvParser.getAndroidRatings(program.rating), program.videoSrc);
+                }
+
+                @Override
+                public ScheduledProgram createProgram(Content content, long startTimeMs,
+                        long endTimeMs) {
+                    return new ScheduledProgram(content, startTimeMs, endTimeMs);
+                }
+            };
+
+    static final ProgramDiffer.Adapter<ScheduledProgram> DIFF_ADAPTER =
+            new ProgramDiffer.Adapter<ScheduledProgram>() {
+                @Override
+                public long getStartTimeMs(ScheduledProgram program) {
+                    return program.startTimeMs;
+                }
+
+                @Override
+                public long getEndTimeMs(ScheduledProgram program) {
+                    return program.endTimeMs;
+                }
+
+                @Override
+                public boolean isUnchanged(ScheduledProgram oldProgram,
+                        ScheduledProgram newProgram) {
+                    return oldProgram.equals(newProgram);
+                }
+
+                @Override
+                public boolean isSameProgram(ScheduledProgram oldProgram,
+                        ScheduledProgram newProgram) {
+                    return oldProgram.content.title.equals(newProgram.content.title);
+                }
+            };
+
+    final Content content;
+    final long startTimeMs;
+    final long endTimeMs;
+    private final long mFingerprint;
+
+    ScheduledProgram(Content content, long startTimeMs, long endTimeMs) {
+        this.content = content;
+        this.startTimeMs = startTimeMs;
+        this.endTimeMs = endTimeMs;
+        long hash = FINGERPRINT_SEED;
+        hash = Fingerprint.add(hash, startTimeMs);
+        hash = Fingerprint.add(hash, endTimeMs);
+        mFingerprint = Fingerprint.add(hash, content.mFingerprint);
+    }
+
+    /**
+     * Returns an equal program which shares no objects with this one, like a program read back
+     * from the database.
+     */
+    ScheduledProgram copy() {
+        return new ScheduledProgram(content.copy(), startTimeMs, endTimeMs);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof ScheduledProgram)) {
+            return false;
+        }
+        ScheduledProgram program = (ScheduledProgram) other;
+        if (mFingerprint != program.mFingerprint) {
+            return false;
+        }
+        return startTimeMs == program.startTimeMs && endTimeMs == program.endTimeMs
+                && content.equals(program.content);
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (mFingerprint ^ (mFingerprint >>> 32));
+    }
+
+    /**
+     * The fields of a program which the feed gives, standing in for {@code ProgramContent}. The
+     * occurrences of a repeated program share it.
+     */
+    static final class Content {
+        final String title;
+        final String description;
+        final String posterArtUri;
+        final String genres;
+        final String contentRatings;
+        final String videoUri;
+        private final long mFingerprint;
+
+        Content(String title, String description, String posterArtUri, String genres,
+                String contentRatings, String videoUri) {
+            this.title = title;
+            this.description = description;
+            this.posterArtUri = posterArtUri;
+            this.genres = genres;
+            this.contentRatings = contentRatings;
+            this.videoUri = videoUri;
+            long hash = Fingerprint.OFFSET_BASIS;
+            hash = Fingerprint.add(hash, title);
+            hash = Fingerprint.add(hash, description);
+            hash = Fingerprint.add(hash, posterArtUri);
+            hash = Fingerprint.add(hash, genres);
+            hash = Fingerprint.add(hash, contentRatings);
+            mFingerprint = Fingerprint.add(hash, videoUri);
+        }
+
+        Content withTitle(String newTitle) {
+            return new Content(newTitle, description, posterArtUri, genres, contentRatings,
+                    videoUri);
+        }
+
+        private Content copy() {
+            return new Content(copy(title), copy(description), copy(posterArtUri), copy(genres),
+                    copy(contentRatings), copy(videoUri));
+        }
+
+        private static String copy(String value) {
+            // The strings read from a cursor are never the ones of the feed.
+            return value != null ? new String(value) : null;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Content)) {
+                return false;
+            }
+            Content content = (Content) other;
+            return mFingerprint == content.mFingerprint
+                    && Objects.equals(title, content.title)
+                    && Objects.equals(description, content.description)
+                    && Objects.equals(posterArtUri, content.posterArtUri)
+                    && Objects.equals(genres, content.genres)
+                    && Objects.equals(contentRatings, content.contentRatings)
+                    && Objects.equals(videoUri, content.videoUri);
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (mFingerprint ^ (mFingerprint >>> 32));
+        }
+    }
+}
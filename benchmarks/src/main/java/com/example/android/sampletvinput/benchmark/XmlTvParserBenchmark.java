@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput.benchmark;
+
+import com.example.android.sampletvinput.feedgen.SyntheticFeed;
+import com.example.android.sampletvinput.xmltv.XmlTvParser;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how fast {@link XmlTvParser} parses a feed. Besides the feeds per second, the
+ * {@code bytes} and {@code programs} counters give the throughput in bytes and programs per
+ * second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class XmlTvParserBenchmark {
+    @Param({"20", "200"})
+    public int channels;
+
+    @Param({"100"})
+    public int programsPerChannel;
+
+    @Param({"64", "1024"})
+    public int descriptionLength;
+
+    private byte[] mFeed;
+    private XmlPullParserFactory mParserFactory;
+
+    @Setup
+    public void setUp() throws XmlPullParserException {
+        mFeed = new SyntheticFeed.Builder()
+                .setChannelCount(channels)
+                .setProgramsPerChannel(programsPerChannel)
+                .setDescriptionLength(descriptionLength)
+                .build()
+                .toXml();
+        mParserFactory = XmlPullParserFactory.newInstance();
+    }
+
+    @Benchmark
+    public int parse(Counters counters) throws XmlPullParserException {
+        CountingListener listener = new CountingListener();
+        if (!XmlTvParser.parse(mParserFactory.newPullParser(), new ByteArrayInputStream(mFeed),
+                listener)) {
+            throw new IllegalStateException("Failed to parse the feed");
+        }
+        counters.bytes += mFeed.length;
+        counters.programs += listener.mProgramCount;
+        return listener.mChannelCount;
+    }
+
+    /**
+     * The bytes and programs parsed, which JMH reports per second.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long bytes;
+        public long programs;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+            programs = 0;
+        }
+    }
+
+    private static final class CountingListener implements XmlTvParser.Listener {
+        int mChannelCount;
+        int mProgramCount;
+
+        @Override
+        public void onChannel(XmlTvParser.XmlTvChannel channel) {
+            mChannelCount++;
+        }
+
+        @Override
+        public void onProgram(XmlTvParser.XmlTvProgram program) {
+            mProgramCount++;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2015 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput.data;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What the input stores in {@code TvContract.Programs.COLUMN_INTERNAL_PROVIDER_DATA} to play
+ * a program.
+ *
+ * <p>It is encoded as {@code "v2:"} followed by fields of the form
+ * {@code <tag><length>:<value>}, e.g. {@code "v2:t1:0u23:http://example.com/a.mp4"}. The values
+ * are length prefixed, so they need no escaping, and the fields with unknown tags are skipped, so
+ * that fields can be added without a new version. The format of the first version,
+ * {@code "<videoType>,<videoUrl>"}, is still decoded.
+ *
+ * <p>It doesn't depend on the Android framework, so that it can be measured on a desktop JVM.
+ */
+public final class InternalProviderData {
+    private static final String VERSION_PREFIX = "v2:";
+    private static final char TAG_VIDEO_TYPE = 't';
+    private static final char TAG_VIDEO_URL = 'u';
+    private static final char TAG_ALTERNATE_URL = 'a';
+    private static final char TAG_DRM_LICENSE_URL = 'd';
+    private static final char TAG_BITRATE_HINT = 'b';
+    private static final char TAG_MANIFEST_CACHE_KEY = 'k';
+
+    // The programs of a channel share a few distinct values, so a small cache covers them.
+    private static final int CACHE_SIZE = 64;
+    private static final Map<String, InternalProviderData> sCache =
+            new LinkedHashMap<String, InternalProviderData>(CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, InternalProviderData> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            };
+
+    private static final String[] EMPTY_URLS = new String[0];
+
+    private final int mVideoType;
+    private final String mVideoUrl;
+    private final String[] mAlternateUrls;
+    private final String mDrmLicenseUrl;
+    private final int mBitrateHintBps;
+    private final String mManifestCacheKey;
+
+    private InternalProviderData(Builder builder) {
+        mVideoType = builder.mVideoType;
+        mVideoUrl = builder.mVideoUrl;
+        mAlternateUrls = builder.mAlternateUrls.isEmpty() ? EMPTY_URLS
+                : builder.mAlternateUrls.toArray(new String[builder.mAlternateUrls.size()]);
+        mDrmLicenseUrl = builder.mDrmLicenseUrl;
+        mBitrateHintBps = builder.mBitrateHintBps;
+        mManifestCacheKey = builder.mManifestCacheKey;
+    }
+
+    public int getVideoType() {
+        return mVideoType;
+    }
+
+    public String getVideoUrl() {
+        return mVideoUrl;
+    }
+
+    /** Returns the URLs to fall back to if the video URL fails, in the order to try them. */
+    public String[] getAlternateUrls() {
+        return mAlternateUrls.clone();
+    }
+
+    /** Returns the URL of the DRM license server, or {@code null} if the video isn't protected. */
+    public String getDrmLicenseUrl() {
+        return mDrmLicenseUrl;
+    }
+
+    /** Returns the bitrate to start playing at, or {@code 0} if unknown. */
+    public int getBitrateHintBps() {
+        return mBitrateHintBps;
+    }
+
+    /** Returns the key to cache the manifest of the video with, or {@code null}. */
+    public String getManifestCacheKey() {
+        return mManifestCacheKey;
+    }
+
+    public String encode() {
+        StringBuilder builder = new StringBuilder(VERSION_PREFIX);
+        appendField(builder, TAG_VIDEO_TYPE, Integer.toString(mVideoType));
+        appendField(builder, TAG_VIDEO_URL, mVideoUrl);
+        for (String url : mAlternateUrls) {
+            appendField(builder, TAG_ALTERNATE_URL, url);
+        }
+        appendField(builder, TAG_DRM_LICENSE_URL, mDrmLicenseUrl);
+        if (mBitrateHintBps > 0) {
+            appendField(builder, TAG_BITRATE_HINT, Integer.toString(mBitrateHintBps));
+        }
+        appendField(builder, TAG_MANIFEST_CACHE_KEY, mManifestCacheKey);
+        return builder.toString();
+    }
+
+    private static void appendField(StringBuilder builder, char tag, String value) {
+        if (value != null) {
+            builder.append(tag).append(value.length()).append(':').append(value);
+        }
+    }
+
+    /**
+     * Returns the decoded data, from a cache keyed by the encoded string if it has been decoded
+     * recently.
+     *
+     * @throws IllegalArgumentException If the data is malformed.
+     */
+    public static InternalProviderData parse(String data) {
+        if (data == null) {
+            throw new IllegalArgumentException("No internal provider data");
+        }
+        InternalProviderData decoded;
+        synchronized (sCache) {
+            decoded = sCache.get(data);
+        }
+        if (decoded == null) {
+            decoded = decode(data);
+            synchronized (sCache) {
+                sCache.put(data, decoded);
+            }
+        }
+        return decoded;
+    }
+
+    /**
+     * Decodes the data in a single pass, without splitting it.
+     *
+     * @throws IllegalArgumentException If the data is malformed.
+     */
+    public static InternalProviderData decode(String data) {
+        Builder builder = new Builder();
+        if (!data.startsWith(VERSION_PREFIX)) {
+            // The first version: "<videoType>,<videoUrl>".
+            int comma = data.indexOf(',');
+            if (comma < 0) {
+                throw new IllegalArgumentException(data);
+            }
+            return builder.setVideoType(parseInt(data, 0, comma))
+                    .setVideoUrl(data.substring(comma + 1))
+                    .build();
+        }
+        int i = VERSION_PREFIX.length();
+        final int length = data.length();
+        while (i < length) {
+            char tag = data.charAt(i++);
+            int colon = data.indexOf(':', i);
+            if (colon < 0) {
+                throw new IllegalArgumentException(data);
+            }
+            int valueLength = parseInt(data, i, colon);
+            int valueStart = colon + 1;
+            int valueEnd = valueStart + valueLength;
+            if (valueEnd > length) {
+                throw new IllegalArgumentException(data);
+            }
+            switch (tag) {
+                case TAG_VIDEO_TYPE:
+                    builder.setVideoType(parseInt(data, valueStart, valueEnd));
+                    break;
+                case TAG_VIDEO_URL:
+                    builder.setVideoUrl(data.substring(valueStart, valueEnd));
+                    break;
+                case TAG_ALTERNATE_URL:
+                    builder.addAlternateUrl(data.substring(valueStart, valueEnd));
+                    break;
+                case TAG_DRM_LICENSE_URL:
+                    builder.setDrmLicenseUrl(data.substring(valueStart, valueEnd));
+                    break;
+                case TAG_BITRATE_HINT:
+                    builder.setBitrateHintBps(parseInt(data, valueStart, valueEnd));
+                    break;
+                case TAG_MANIFEST_CACHE_KEY:
+                    builder.setManifestCacheKey(data.substring(valueStart, valueEnd));
+                    break;
+                default:
+                    // Written by a newer version. Skip it.
+                    break;
+            }
+            i = valueEnd;
+        }
+        return builder.build();
+    }
+
+    private static int parseInt(String data, int start, int end) {
+        if (start >= end) {
+            throw new IllegalArgumentException(data);
+        }
+        int value = 0;
+        for (int i = start; i < end; ++i) {
+            int digit = data.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || value > (Integer.MAX_VALUE - digit) / 10) {
+                throw new IllegalArgumentException(data);
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    public static final class Builder {
+        private int mVideoType;
+        private String mVideoUrl;
+        private final List<String> mAlternateUrls = new ArrayList<>();
+        private String mDrmLicenseUrl;
+        private int mBitrateHintBps;
+        private String mManifestCacheKey;
+
+        public Builder setVideoType(int videoType) {
+            mVideoType = videoType;
+            return this;
+        }
+
+        public Builder setVideoUrl(String videoUrl) {
+            mVideoUrl = videoUrl;
+            return this;
+        }
+
+        public Builder addAlternateUrl(String url) {
+            mAlternateUrls.add(url);
+            return this;
+        }
+
+        public Builder setDrmLicenseUrl(String drmLicenseUrl) {
+            mDrmLicenseUrl = drmLicenseUrl;
+            return this;
+        }
+
+        public Builder setBitrateHintBps(int bitrateHintBps) {
+            mBitrateHintBps = bitrateHintBps;
+            return this;
+        }
+
+        public Builder setManifestCacheKey(String manifestCacheKey) {
+            mManifestCacheKey = manifestCacheKey;
+            return this;
+        }
+
+        public InternalProviderData build() {
+            return new InternalProviderData(this);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput.epg;
+
+/**
+ * Builds the 64-bit FNV-1a hashes which tell whether a program has changed, without comparing all
+ * its fields. Start with {@link #OFFSET_BASIS} and add the fields one by one.
+ */
+public final class Fingerprint {
+    public static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long NULL_MARKER = 0xff;
+
+    private Fingerprint() {
+    }
+
+    public static long add(long hash, long value) {
+        for (int i = 0; i < 64; i += 8) {
+            hash = (hash ^ ((value >>> i) & 0xff)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    public static long add(long hash, String value) {
+        if (value == null) {
+            return (hash ^ NULL_MARKER) * FNV_PRIME;
+        }
+        for (int i = 0; i < value.length(); ++i) {
+            char c = value.charAt(i);
+            hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        // Terminate the string so that "ab" + "c" and "a" + "bc" differ.
+        return add(hash, value.length());
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput.epg;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Compares the new programs of a channel with the old ones, both in chronological order, and
+ * tells which old programs to update or delete and which new ones to insert.
+ *
+ * <p>If there is any overlap between the new and old programs, the old ones are updated with the
+ * new ones if they are the same program, e.g. have the same title, or replaced. The old programs
+ * after the last new one are left alone, except for the duplicates of the old programs which
+ * matched a new one exactly, e.g. inserted twice by a batch which was retried.
+ *
+ * <p>The changes are pulled one at a time with {@link #next()}, so that the caller can apply them
+ * as it likes, e.g. in batches:
+ * <pre>
+ * while (differ.next()) {
+ *     switch (differ.getOperation()) { ... }
+ * }
+ * </pre>
+ *
+ * @param <P> The type of a program.
+ */
+public final class ProgramDiffer<P> {
+    public static final int OPERATION_INSERT = 0;
+    public static final int OPERATION_UPDATE = 1;
+    public static final int OPERATION_DELETE = 2;
+
+    /**
+     * Tells the differ about the programs.
+     */
+    public interface Adapter<P> {
+        long getStartTimeMs(P program);
+
+        long getEndTimeMs(P program);
+
+        /** Returns whether the old program needs no change to become the new one. */
+        boolean isUnchanged(P oldProgram, P newProgram);
+
+        /**
+         * Returns whether the programs are the same program, so that the old one can be updated
+         * with the new one if they overlap.
+         */
+        boolean isSameProgram(P oldProgram, P newProgram);
+    }
+
+    private final Adapter<P> mAdapter;
+    private final Iterator<P> mOldPrograms;
+    private final List<P> mNewPrograms;
+    private P mNextOldProgram;
+    // The last new program which an old program matched exactly.
+    private P mLastUnchangedProgram;
+    private int mNewProgramsIndex;
+
+    private int mOperation;
+    private P mOldProgram;
+    private P mNewProgram;
+    private int mUnchangedCount;
+
+    /**
+     * @param oldPrograms The programs in the database which may overlap the new ones.
+     * @param newPrograms The programs to write.
+     */
+    public ProgramDiffer(Adapter<P> adapter, Iterator<P> oldPrograms, List<P> newPrograms) {
+        mAdapter = adapter;
+        mOldPrograms = oldPrograms;
+        mNewPrograms = newPrograms;
+        mNextOldProgram = nextOldProgram();
+    }
+
+    /**
+     * Moves on to the next change.
+     *
+     * @return {@code false} if there are no more changes.
+     */
+    public boolean next() {
+        // Compare the new programs with old programs one by one and update/delete the old one or
+        // insert new program if there is no matching program in the database.
+        while (mNewProgramsIndex < mNewPrograms.size()) {
+            if (deleteDuplicate()) {
+                return true;
+            }
+            P newProgram = mNewPrograms.get(mNewProgramsIndex);
+            P oldProgram = mNextOldProgram;
+            mOldProgram = null;
+            mNewProgram = null;
+            if (oldProgram == null) {
+                // No old programs. Just insert new programs.
+                mOperation = OPERATION_INSERT;
+                mNewProgram = newProgram;
+                mNewProgramsIndex++;
+                return true;
+            }
+            if (mAdapter.isUnchanged(oldProgram, newProgram)) {
+                // Exact match. No need to update. Move on to the next programs.
+                mLastUnchangedProgram = newProgram;
+                mNextOldProgram = nextOldProgram();
+                mNewProgramsIndex++;
+                mUnchangedCount++;
+            } else if (mAdapter.isSameProgram(oldProgram, newProgram)
+                    && mAdapter.getStartTimeMs(oldProgram) <= mAdapter.getEndTimeMs(newProgram)
+                    && mAdapter.getStartTimeMs(newProgram) <= mAdapter.getEndTimeMs(oldProgram)) {
+                // Partial match. Update the old program with the new one.
+                // NOTE: Use 'update' in this case instead of 'insert' and 'delete'. There could be
+                // application specific settings which belong to the old program.
+                mOperation = OPERATION_UPDATE;
+                mOldProgram = oldProgram;
+                mNewProgram = newProgram;
+                mNextOldProgram = nextOldProgram();
+                mNewProgramsIndex++;
+                return true;
+            } else if (mAdapter.getEndTimeMs(oldProgram) < mAdapter.getEndTimeMs(newProgram)) {
+                // No match. Remove the old program first to see if the next program in the old
+                // programs partially matches the new program.
+                mOperation = OPERATION_DELETE;
+                mOldProgram = oldProgram;
+                mNextOldProgram = nextOldProgram();
+                return true;
+            } else {
+                // No match. The new program does not match any of the old programs. Insert it as
+                // a new program.
+                mOperation = OPERATION_INSERT;
+                mNewProgram = newProgram;
+                mNewProgramsIndex++;
+                return true;
+            }
+        }
+        return deleteDuplicate();
+    }
+
+    /**
+     * Deletes the next old program if it is a duplicate of the last one which matched exactly.
+     */
+    private boolean deleteDuplicate() {
+        if (mNextOldProgram == null || mLastUnchangedProgram == null
+                || !mAdapter.isUnchanged(mNextOldProgram, mLastUnchangedProgram)) {
+            return false;
+        }
+        mOperation = OPERATION_DELETE;
+        mOldProgram = mNextOldProgram;
+        mNewProgram = null;
+        mNextOldProgram = nextOldProgram();
+        return true;
+    }
+
+    /**
+     * Returns {@link #OPERATION_INSERT}, {@link #OPERATION_UPDATE} or {@link #OPERATION_DELETE}.
+     */
+    public int getOperation() {
+        return mOperation;
+    }
+
+    /** Returns the program to update or delete. */
+    public P getOldProgram() {
+        return mOldProgram;
+    }
+
+    /** Returns the program to insert, or to update the old one with. */
+    public P getNewProgram() {
+        return mNewProgram;
+    }
+
+    /** Returns the number of old programs which matched a new one exactly so far. */
+    public int getUnchangedCount() {
+        return mUnchangedCount;
+    }
+
+    private P nextOldProgram() {
+        return mOldPrograms.hasNext() ? mOldPrograms.next() : null;
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput.epg;
+
+import com.example.android.sampletvinput.xmltv.XmlTvParser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Schedules the programs of a channel in the feed for a time range.
+ *
+ * <p>The scheduled programs are built by a {@link ProgramFactory}, so that the scheduling can be
+ * run without the Android framework.
+ */
+public final class ProgramScheduler {
+    private ProgramScheduler() {
+    }
+
+    /**
+     * Builds the programs the app stores.
+     *
+     * @param <C> The type of the content of a program, which is shared by its occurrences.
+     * @param <P> The type of a scheduled program.
+     */
+    public interface ProgramFactory<C, P> {
+        C createContent(XmlTvParser.XmlTvProgram program);
+
+        P createProgram(C content, long startTimeMs, long endTimeMs);
+    }
+
+    /**
+     * Returns the programs in the feed which belong to the given channel.
+     */
+    public static List<XmlTvParser.XmlTvProgram> getChannelPrograms(
+            XmlTvParser.XmlTvChannel channel, List<XmlTvParser.XmlTvProgram> programs) {
+        List<XmlTvParser.XmlTvProgram> channelPrograms = new ArrayList<>();
+        for (XmlTvParser.XmlTvProgram program : programs) {
+            if (program.channelId.equals(channel.id)) {
+                channelPrograms.add(program);
+            }
+        }
+        return channelPrograms;
+    }
+
+    /**
+     * Returns a hash of everything in the feed which affects the programs of the given channel.
+     * The watermark of a channel is valid only while this stays the same.
+     */
+    public static long getFeedVersion(XmlTvParser.XmlTvChannel channel,
+            List<XmlTvParser.XmlTvProgram> channelPrograms) {
+        long version = Objects.hash(channel.id, channel.repeatPrograms);
+        for (XmlTvParser.XmlTvProgram program : channelPrograms) {
+            int ratingsHash = 0;
+            for (XmlTvParser.XmlTvRating rating : program.rating) {
+                ratingsHash = 31 * ratingsHash + Objects.hash(rating.system, rating.value);
+            }
+            version = 31 * version + Objects.hash(program.title, program.description,
+                    program.icon == null ? null : program.icon.src,
+                    Arrays.hashCode(program.category), program.startTimeUtcMillis,
+                    program.endTimeUtcMillis, ratingsHash, program.videoSrc, program.videoType);
+        }
+        return version;
+    }
+
+    /**
+     * Returns until when the feed has programs for the given channel, i.e. the end of its last
+     * program, {@link Long#MAX_VALUE} if its programs repeat, or {@link Long#MIN_VALUE} if it has
+     * none.
+     */
+    public static long getFeedEndTimeMs(XmlTvParser.XmlTvChannel channel,
+            List<XmlTvParser.XmlTvProgram> channelPrograms) {
+        long endTimeMs = Long.MIN_VALUE;
+        for (XmlTvParser.XmlTvProgram program : channelPrograms) {
+            if (channel.repeatPrograms && program.getDurationMillis() > 0) {
+                return Long.MAX_VALUE;
+            }
+            endTimeMs = Math.max(endTimeMs, program.endTimeUtcMillis);
+        }
+        return channel.repeatPrograms ? Long.MIN_VALUE : endTimeMs;
+    }
+
+    /**
+     * Returns a list of programs for the given time range.
+     *
+     * @param channel The {@link XmlTvParser.XmlTvChannel} for the programs to return.
+     * @param channelPrograms The programs of the channel in the feed fetched from cloud.
+     * @param startTimeMs The start time of the range requested.
+     * @param endTimeMs The end time of the range requested.
+     * @param factory Builds the programs to return.
+     */
+    public static <C, P> List<P> schedule(XmlTvParser.XmlTvChannel channel,
+            List<XmlTvParser.XmlTvProgram> channelPrograms, long startTimeMs, long endTimeMs,
+            ProgramFactory<C, P> factory) {
+        if (startTimeMs > endTimeMs) {
+            throw new IllegalArgumentException();
+        }
+
+        List<P> programForGivenTime = new ArrayList<>();
+        if (!channel.repeatPrograms) {
+            for (XmlTvParser.XmlTvProgram program : channelPrograms) {
+                if (program.startTimeUtcMillis <= endTimeMs
+                        && program.endTimeUtcMillis >= startTimeMs) {
+                    programForGivenTime.add(factory.createProgram(factory.createContent(program),
+                            program.startTimeUtcMillis, program.endTimeUtcMillis));
+                }
+            }
+            return programForGivenTime;
+        }
+
+        // If repeat-programs is on, schedule the programs sequentially in a loop. To make every
+        // device play the same program in a given channel and time, we assumes the loop started
+        // from the epoch time.
+        long totalDurationMs = 0;
+        for (XmlTvParser.XmlTvProgram program : channelPrograms) {
+            totalDurationMs += program.getDurationMillis();
+        }
+        if (totalDurationMs <= 0) {
+            // There is nothing to loop, e.g. the channel has no programs in the feed.
+            return programForGivenTime;
+        }
+
+        long programStartTimeMs = startTimeMs - startTimeMs % totalDurationMs;
+        int i = 0;
+        final int programCount = channelPrograms.size();
+        // All the occurrences of a program in the loop share its content.
+        List<C> contents = new ArrayList<>(programCount);
+        for (int j = 0; j < programCount; ++j) {
+            contents.add(null);
+        }
+        while (programStartTimeMs < endTimeMs) {
+            int index = i++ % programCount;
+            XmlTvParser.XmlTvProgram programInfo = channelPrograms.get(index);
+            long programEndTimeMs = programStartTimeMs + programInfo.getDurationMillis();
+            if (programEndTimeMs < startTimeMs) {
+                programStartTimeMs = programEndTimeMs;
+                continue;
+            }
+            C content = contents.get(index);
+            if (content == null) {
+                content = factory.createContent(programInfo);
+                contents.set(index, content);
+            }
+            programForGivenTime.add(
+                    factory.createProgram(content, programStartTimeMs, programEndTimeMs));
+            programStartTimeMs = programEndTimeMs;
+        }
+        return programForGivenTime;
+    }
+}
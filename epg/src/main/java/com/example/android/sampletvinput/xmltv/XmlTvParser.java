@@ -16,13 +16,6 @@
 
 package com.example.android.sampletvinput.xmltv;
 
-import android.media.tv.TvContentRating;
-import android.text.TextUtils;
-import android.util.Xml;
-
-import com.example.android.sampletvinput.player.TvInputPlayer;
-import com.google.android.exoplayer.ParserException;
-
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
@@ -56,6 +49,9 @@ import java.util.List;
  * only for the program guide update.
  * video-type : The video type. Should be one of "HTTP_PROGRESSIVE", "HLS", and "MPEG-DASH". This
  * can be omitted if the xml will be used only for the program guide update.
+ *
+ * <p>This class doesn't depend on the Android framework, so that it can be run and measured on a
+ * desktop JVM. The caller provides the {@link XmlPullParser}, e.g. {@code Xml.newPullParser()}.
  */
 public class XmlTvParser {
     private static final String TAG_TV = "tv";
@@ -86,53 +82,87 @@ public class XmlTvParser {
 
     private static final String ANDROID_TV_RATING = "com.android.tv";
 
+    // The values of the video-type attribute, the same as TvInputPlayer.SOURCE_TYPE_*.
+    public static final int VIDEO_TYPE_HTTP_PROGRESSIVE = 0;
+    public static final int VIDEO_TYPE_HLS = 1;
+    public static final int VIDEO_TYPE_MPEG_DASH = 2;
+
     private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyyMMddHHmmss Z");
 
     private XmlTvParser() {
     }
 
-    public static TvContentRating[] xmlTvRatingToTvContentRating(
-            XmlTvParser.XmlTvRating[] ratings) {
-        List<TvContentRating> list = new ArrayList<>();
+    /**
+     * Returns the Android TV ratings among the given ones, separated by commas, in the format of
+     * {@code TvContract.Programs.COLUMN_CONTENT_RATING}.
+     */
+    public static String getAndroidRatings(XmlTvParser.XmlTvRating[] ratings) {
+        StringBuilder androidRatings = new StringBuilder();
         for (XmlTvParser.XmlTvRating rating : ratings) {
             if (ANDROID_TV_RATING.equals(rating.system)) {
-                list.add(TvContentRating.unflattenFromString(rating.value));
+                if (androidRatings.length() > 0) {
+                    androidRatings.append(',');
+                }
+                androidRatings.append(rating.value);
             }
         }
-        return list.toArray(new TvContentRating[list.size()]);
+        return androidRatings.toString();
     }
 
-    public static TvListing parse(InputStream inputStream) {
+    public static TvListing parse(XmlPullParser parser, InputStream inputStream) {
+        final List<XmlTvChannel> channels = new ArrayList<>();
+        final List<XmlTvProgram> programs = new ArrayList<>();
+        boolean parsed = parse(parser, inputStream, new Listener() {
+            @Override
+            public void onChannel(XmlTvChannel channel) {
+                channels.add(channel);
+            }
+
+            @Override
+            public void onProgram(XmlTvProgram program) {
+                programs.add(program);
+            }
+        });
+        return parsed ? new TvListing(channels, programs) : null;
+    }
+
+    /**
+     * Parses the document and passes each channel and program to the listener as soon as it is
+     * parsed, without keeping them.
+     *
+     * @return {@code true} if the whole document is parsed. The parse stops at the first element
+     *         which is malformed, e.g. a program without a start time.
+     */
+    public static boolean parse(XmlPullParser parser, InputStream inputStream,
+            Listener listener) {
         try {
-            XmlPullParser parser = Xml.newPullParser();
             parser.setInput(inputStream, null);
             int eventType = parser.next();
             if (eventType != XmlPullParser.START_TAG || !TAG_TV.equals(parser.getName())) {
-                throw new ParserException(
+                throw new XmlPullParserException(
                         "inputStream does not contain a xml tv description");
             }
-            return parseTvListings(parser);
-        } catch (XmlPullParserException | IOException | ParseException e) {
+            parseTvListings(parser, listener);
+            return true;
+        } catch (XmlPullParserException | IOException | ParseException
+                | IllegalArgumentException e) {
             e.printStackTrace();
         }
-        return null;
+        return false;
     }
 
-    private static TvListing parseTvListings(XmlPullParser parser)
+    private static void parseTvListings(XmlPullParser parser, Listener listener)
             throws IOException, XmlPullParserException, ParseException {
-        List<XmlTvChannel> channels = new ArrayList<>();
-        List<XmlTvProgram> programs = new ArrayList<>();
         while (parser.next() != XmlPullParser.END_DOCUMENT) {
             if (parser.getEventType() == XmlPullParser.START_TAG
                     && TAG_CHANNEL.equalsIgnoreCase(parser.getName())) {
-                channels.add(parseChannel(parser));
+                listener.onChannel(parseChannel(parser));
             }
             if (parser.getEventType() == XmlPullParser.START_TAG
                     && TAG_PROGRAM.equalsIgnoreCase(parser.getName())) {
-                programs.add(parseProgram(parser));
+                listener.onProgram(parseProgram(parser));
             }
         }
-        return new TvListing(channels, programs);
     }
 
     private static XmlTvChannel parseChannel(XmlPullParser parser)
@@ -168,7 +198,7 @@ public class XmlTvParser {
                 break;
             }
         }
-        if (TextUtils.isEmpty(id) || TextUtils.isEmpty(displayName)) {
+        if (isEmpty(id) || isEmpty(displayName)) {
             throw new IllegalArgumentException("id and display-name can not be null.");
         }
 
@@ -184,7 +214,7 @@ public class XmlTvParser {
         Long startTimeUtcMillis = null;
         Long endTimeUtcMillis = null;
         String videoSrc = null;
-        int videoType = TvInputPlayer.SOURCE_TYPE_HTTP_PROGRESSIVE;
+        int videoType = VIDEO_TYPE_HTTP_PROGRESSIVE;
         for (int i = 0; i < parser.getAttributeCount(); ++i) {
             String attr = parser.getAttributeName(i);
             String value = parser.getAttributeValue(i);
@@ -198,11 +228,11 @@ public class XmlTvParser {
                 videoSrc = value;
             } else if (ATTR_VIDEO_TYPE.equalsIgnoreCase(attr)) {
                 if (VALUE_VIDEO_TYPE_HTTP_PROGRESSIVE.equals(value)) {
-                    videoType = TvInputPlayer.SOURCE_TYPE_HTTP_PROGRESSIVE;
+                    videoType = VIDEO_TYPE_HTTP_PROGRESSIVE;
                 } else if (VALUE_VIDEO_TYPE_HLS.equals(value)) {
-                    videoType = TvInputPlayer.SOURCE_TYPE_HLS;
+                    videoType = VIDEO_TYPE_HLS;
                 } else if (VALUE_VIDEO_TYPE_MPEG_DASH.equals(value)) {
-                    videoType = TvInputPlayer.SOURCE_TYPE_MPEG_DASH;
+                    videoType = VIDEO_TYPE_MPEG_DASH;
                 }
             }
         }
@@ -230,7 +260,7 @@ public class XmlTvParser {
                 break;
             }
         }
-        if (TextUtils.isEmpty(channelId) || startTimeUtcMillis == null
+        if (isEmpty(channelId) || startTimeUtcMillis == null
                 || endTimeUtcMillis == null) {
             throw new IllegalArgumentException("channel, start, and end can not be null.");
         }
@@ -255,7 +285,7 @@ public class XmlTvParser {
                 break;
             }
         }
-        if (TextUtils.isEmpty(src)) {
+        if (isEmpty(src)) {
             throw new IllegalArgumentException("src cannot be null.");
         }
         return new XmlTvIcon(src);
@@ -282,12 +312,25 @@ public class XmlTvParser {
                 break;
             }
         }
-        if (TextUtils.isEmpty(system) || TextUtils.isEmpty(value)) {
+        if (isEmpty(system) || isEmpty(value)) {
             throw new IllegalArgumentException("system and value cannot be null.");
         }
         return new XmlTvRating(system, value);
     }
 
+    private static boolean isEmpty(String value) {
+        return value == null || value.length() == 0;
+    }
+
+    /**
+     * Receives the channels and programs in the order they appear in the document.
+     */
+    public interface Listener {
+        void onChannel(XmlTvChannel channel);
+
+        void onProgram(XmlTvProgram program);
+    }
+
     public static class TvListing {
         public final List<XmlTvChannel> channels;
         public final List<XmlTvProgram> programs;
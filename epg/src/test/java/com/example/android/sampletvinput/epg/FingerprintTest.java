@@ -0,0 +1,49 @@
+/*
+ * Copyright 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput.epg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+public class FingerprintTest {
+    @Test
+    public void add_sameFields_returnsSameHash() {
+        assertEquals(Fingerprint.add(Fingerprint.add(Fingerprint.OFFSET_BASIS, "title"), 42),
+                Fingerprint.add(Fingerprint.add(Fingerprint.OFFSET_BASIS, "title"), 42));
+    }
+
+    @Test
+    public void add_fieldsSplitDifferently_returnsDifferentHashes() {
+        assertFalse(Fingerprint.add(Fingerprint.add(Fingerprint.OFFSET_BASIS, "ab"), "c")
+                == Fingerprint.add(Fingerprint.add(Fingerprint.OFFSET_BASIS, "a"), "bc"));
+    }
+
+    @Test
+    public void add_nullAndEmpty_returnsDifferentHashes() {
+        assertFalse(Fingerprint.add(Fingerprint.OFFSET_BASIS, (String) null)
+                == Fingerprint.add(Fingerprint.OFFSET_BASIS, ""));
+    }
+
+    @Test
+    public void add_wideCharacters_returnsDifferentHashes() {
+        // Both bytes of a character count.
+        assertFalse(Fingerprint.add(Fingerprint.OFFSET_BASIS, "Ł")
+                == Fingerprint.add(Fingerprint.OFFSET_BASIS, "A"));
+    }
+}
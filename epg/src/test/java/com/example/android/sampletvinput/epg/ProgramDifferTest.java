@@ -0,0 +1,219 @@
+/*
+ * Copyright 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput.epg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class ProgramDifferTest {
+    private static final ProgramDiffer.Adapter<TestProgram> ADAPTER =
+            new ProgramDiffer.Adapter<TestProgram>() {
+                @Override
+                public long getStartTimeMs(TestProgram program) {
+                    return program.startTimeMs;
+                }
+
+                @Override
+                public long getEndTimeMs(TestProgram program) {
+                    return program.endTimeMs;
+                }
+
+                @Override
+                public boolean isUnchanged(TestProgram oldProgram, TestProgram newProgram) {
+                    return isSameProgram(oldProgram, newProgram)
+                            && oldProgram.startTimeMs == newProgram.startTimeMs
+                            && oldProgram.endTimeMs == newProgram.endTimeMs;
+                }
+
+                @Override
+                public boolean isSameProgram(TestProgram oldProgram, TestProgram newProgram) {
+                    return oldProgram.title.equals(newProgram.title);
+                }
+            };
+
+    @Test
+    public void next_noOldPrograms_insertsAll() {
+        List<TestProgram> newPrograms = Arrays.asList(
+                new TestProgram("a", 0, 10), new TestProgram("b", 10, 20));
+
+        List<Change> changes = diff(Collections.<TestProgram>emptyList(), newPrograms);
+
+        assertEquals(Arrays.asList(insert(newPrograms.get(0)), insert(newPrograms.get(1))),
+                changes);
+    }
+
+    @Test
+    public void next_unchangedPrograms_returnsNoChanges() {
+        List<TestProgram> oldPrograms = Arrays.asList(
+                new TestProgram("a", 0, 10), new TestProgram("b", 10, 20));
+        List<TestProgram> newPrograms = Arrays.asList(
+                new TestProgram("a", 0, 10), new TestProgram("b", 10, 20));
+        ProgramDiffer<TestProgram> differ =
+                new ProgramDiffer<>(ADAPTER, oldPrograms.iterator(), newPrograms);
+
+        assertEquals(Collections.emptyList(), drain(differ));
+        assertEquals(2, differ.getUnchangedCount());
+    }
+
+    @Test
+    public void next_sameProgramMoved_updatesIt() {
+        TestProgram oldProgram = new TestProgram("a", 0, 10);
+        TestProgram newProgram = new TestProgram("a", 5, 15);
+
+        List<Change> changes = diff(Arrays.asList(oldProgram), Arrays.asList(newProgram));
+
+        assertEquals(Arrays.asList(update(oldProgram, newProgram)), changes);
+    }
+
+    @Test
+    public void next_otherProgramEndingEarlier_deletesItAndInserts() {
+        TestProgram oldProgram = new TestProgram("a", 0, 10);
+        TestProgram newProgram = new TestProgram("b", 0, 15);
+
+        List<Change> changes = diff(Arrays.asList(oldProgram), Arrays.asList(newProgram));
+
+        assertEquals(Arrays.asList(delete(oldProgram), insert(newProgram)), changes);
+    }
+
+    @Test
+    public void next_mixedChanges_keepsTheOldProgramsAfterTheNewOnes() {
+        TestProgram unchanged = new TestProgram("a", 0, 10);
+        TestProgram moved = new TestProgram("b", 10, 20);
+        TestProgram replaced = new TestProgram("c", 20, 30);
+        TestProgram after = new TestProgram("e", 40, 50);
+        TestProgram newMoved = new TestProgram("b", 10, 25);
+        TestProgram newInserted = new TestProgram("d", 25, 40);
+
+        List<Change> changes = diff(Arrays.asList(unchanged, moved, replaced, after),
+                Arrays.asList(new TestProgram("a", 0, 10), newMoved, newInserted));
+
+        assertEquals(Arrays.asList(update(moved, newMoved), delete(replaced),
+                insert(newInserted)), changes);
+    }
+
+    @Test
+    public void next_duplicatedOldPrograms_deletesTheDuplicates() {
+        TestProgram first = new TestProgram("a", 0, 10);
+        TestProgram firstDuplicate = new TestProgram("a", 0, 10);
+        TestProgram last = new TestProgram("b", 10, 20);
+        TestProgram lastDuplicate = new TestProgram("b", 10, 20);
+
+        List<Change> changes = diff(Arrays.asList(first, firstDuplicate, last, lastDuplicate),
+                Arrays.asList(new TestProgram("a", 0, 10), new TestProgram("b", 10, 20)));
+
+        assertEquals(Arrays.asList(delete(firstDuplicate), delete(lastDuplicate)), changes);
+    }
+
+    @Test
+    public void next_update_returnsBothPrograms() {
+        TestProgram oldProgram = new TestProgram("a", 0, 10);
+        TestProgram newProgram = new TestProgram("a", 0, 15);
+        ProgramDiffer<TestProgram> differ = new ProgramDiffer<>(ADAPTER,
+                Arrays.asList(oldProgram).iterator(), Arrays.asList(newProgram));
+
+        differ.next();
+
+        assertEquals(ProgramDiffer.OPERATION_UPDATE, differ.getOperation());
+        assertSame(oldProgram, differ.getOldProgram());
+        assertSame(newProgram, differ.getNewProgram());
+    }
+
+    private static List<Change> diff(List<TestProgram> oldPrograms,
+            List<TestProgram> newPrograms) {
+        return drain(new ProgramDiffer<>(ADAPTER, oldPrograms.iterator(), newPrograms));
+    }
+
+    private static List<Change> drain(ProgramDiffer<TestProgram> differ) {
+        List<Change> changes = new ArrayList<>();
+        while (differ.next()) {
+            changes.add(new Change(differ.getOperation(), differ.getOldProgram(),
+                    differ.getNewProgram()));
+        }
+        return changes;
+    }
+
+    private static Change insert(TestProgram newProgram) {
+        return new Change(ProgramDiffer.OPERATION_INSERT, null, newProgram);
+    }
+
+    private static Change update(TestProgram oldProgram, TestProgram newProgram) {
+        return new Change(ProgramDiffer.OPERATION_UPDATE, oldProgram, newProgram);
+    }
+
+    private static Change delete(TestProgram oldProgram) {
+        return new Change(ProgramDiffer.OPERATION_DELETE, oldProgram, null);
+    }
+
+    private static final class TestProgram {
+        final String title;
+        final long startTimeMs;
+        final long endTimeMs;
+
+        TestProgram(String title, long startTimeMs, long endTimeMs) {
+            this.title = title;
+            this.startTimeMs = startTimeMs;
+            this.endTimeMs = endTimeMs;
+        }
+
+        @Override
+        public String toString() {
+            return title + "[" + startTimeMs + ", " + endTimeMs + ")";
+        }
+    }
+
+    /**
+     * A change returned by the differ. The programs are compared by identity.
+     */
+    private static final class Change {
+        final int operation;
+        final TestProgram oldProgram;
+        final TestProgram newProgram;
+
+        Change(int operation, TestProgram oldProgram, TestProgram newProgram) {
+            this.operation = operation;
+            this.oldProgram = oldProgram;
+            this.newProgram = newProgram;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Change)) {
+                return false;
+            }
+            Change other = (Change) o;
+            return operation == other.operation && oldProgram == other.oldProgram
+                    && newProgram == other.newProgram;
+        }
+
+        @Override
+        public int hashCode() {
+            return operation;
+        }
+
+        @Override
+        public String toString() {
+            return operation + " " + oldProgram + " -> " + newProgram;
+        }
+    }
+}
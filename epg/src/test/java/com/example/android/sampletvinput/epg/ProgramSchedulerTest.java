@@ -0,0 +1,173 @@
+/*
+ * Copyright 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput.epg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.example.android.sampletvinput.xmltv.TestFeeds;
+import com.example.android.sampletvinput.xmltv.XmlTvParser;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+public class ProgramSchedulerTest {
+    private static final long HOUR_MS = 1000 * 60 * 60;
+    private static final long NOW_MS = 1000L * 60 * 60 * 24 * 365 * 45;
+
+    private static final ProgramScheduler.ProgramFactory<XmlTvParser.XmlTvProgram, Slot> FACTORY =
+            new ProgramScheduler.ProgramFactory<XmlTvParser.XmlTvProgram, Slot>() {
+                @Override
+                public XmlTvParser.XmlTvProgram createContent(XmlTvParser.XmlTvProgram program) {
+                    return program;
+                }
+
+                @Override
+                public Slot createProgram(XmlTvParser.XmlTvProgram content, long startTimeMs,
+                        long endTimeMs) {
+                    return new Slot(content, startTimeMs, endTimeMs);
+                }
+            };
+
+    @Test
+    public void schedule_channel_returnsTheProgramsWhichOverlapTheRange() {
+        XmlTvParser.TvListing listing = TestFeeds.parse(TestFeeds.feed(
+                TestFeeds.channel("a", false),
+                TestFeeds.program("a", "before", NOW_MS - 2 * HOUR_MS, NOW_MS - HOUR_MS),
+                TestFeeds.program("a", "current", NOW_MS - HOUR_MS, NOW_MS + HOUR_MS),
+                TestFeeds.program("a", "next", NOW_MS + HOUR_MS, NOW_MS + 2 * HOUR_MS),
+                TestFeeds.program("a", "after", NOW_MS + 3 * HOUR_MS, NOW_MS + 4 * HOUR_MS)));
+
+        List<Slot> slots = ProgramScheduler.schedule(listing.channels.get(0), listing.programs,
+                NOW_MS, NOW_MS + 2 * HOUR_MS, FACTORY);
+
+        assertEquals(2, slots.size());
+        assertEquals("current", slots.get(0).program.title);
+        assertEquals(NOW_MS - HOUR_MS, slots.get(0).startTimeMs);
+        assertEquals("next", slots.get(1).program.title);
+        assertEquals(NOW_MS + 2 * HOUR_MS, slots.get(1).endTimeMs);
+    }
+
+    @Test
+    public void schedule_repeatedChannel_loopsFromTheEpoch() {
+        // The feed times only give the durations of the programs in the loop.
+        XmlTvParser.TvListing listing = TestFeeds.parse(TestFeeds.feed(
+                TestFeeds.channel("a", true),
+                TestFeeds.program("a", "first", 0, HOUR_MS),
+                TestFeeds.program("a", "second", HOUR_MS, 3 * HOUR_MS)));
+        // The loop is three hours long, so a loop starts at NOW_MS.
+        long startTimeMs = NOW_MS + 30 * 60 * 1000;
+
+        List<Slot> slots = ProgramScheduler.schedule(listing.channels.get(0), listing.programs,
+                startTimeMs, NOW_MS + 6 * HOUR_MS, FACTORY);
+
+        assertEquals(4, slots.size());
+        String[] titles = {"first", "second", "first", "second"};
+        long[] startTimesMs = {NOW_MS, NOW_MS + HOUR_MS, NOW_MS + 3 * HOUR_MS,
+                NOW_MS + 4 * HOUR_MS};
+        for (int i = 0; i < slots.size(); ++i) {
+            assertEquals(titles[i], slots.get(i).program.title);
+            assertEquals(startTimesMs[i], slots.get(i).startTimeMs);
+        }
+        assertEquals(NOW_MS + 6 * HOUR_MS, slots.get(3).endTimeMs);
+        // The occurrences of a program share its content.
+        assertSame(slots.get(0).program, slots.get(2).program);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void schedule_startAfterEnd_throws() {
+        XmlTvParser.TvListing listing = TestFeeds.parse(TestFeeds.feed(
+                TestFeeds.channel("a", false)));
+
+        ProgramScheduler.schedule(listing.channels.get(0), listing.programs, NOW_MS + 1, NOW_MS,
+                FACTORY);
+    }
+
+    @Test
+    public void schedule_repeatedChannelWithoutPrograms_returnsNothing() {
+        XmlTvParser.TvListing listing = TestFeeds.parse(TestFeeds.feed(
+                TestFeeds.channel("a", true)));
+
+        List<Slot> slots = ProgramScheduler.schedule(listing.channels.get(0),
+                Collections.<XmlTvParser.XmlTvProgram>emptyList(), NOW_MS, NOW_MS + HOUR_MS,
+                FACTORY);
+
+        assertTrue(slots.isEmpty());
+    }
+
+    @Test
+    public void schedule_repeatedChannelWithZeroDurationPrograms_returnsNothing() {
+        XmlTvParser.TvListing listing = TestFeeds.parse(TestFeeds.feed(
+                TestFeeds.channel("a", true),
+                TestFeeds.program("a", "first", NOW_MS, NOW_MS),
+                TestFeeds.program("a", "second", NOW_MS, NOW_MS)));
+
+        List<Slot> slots = ProgramScheduler.schedule(listing.channels.get(0), listing.programs,
+                NOW_MS, NOW_MS + HOUR_MS, FACTORY);
+
+        assertEquals(0, slots.size());
+    }
+
+    @Test
+    public void getFeedEndTimeMs_channel_returnsTheEndOfTheLastProgram() {
+        XmlTvParser.TvListing listing = TestFeeds.parse(TestFeeds.feed(
+                TestFeeds.channel("a", false),
+                TestFeeds.program("a", "first", NOW_MS, NOW_MS + 2 * HOUR_MS),
+                TestFeeds.program("a", "second", NOW_MS + HOUR_MS, NOW_MS + HOUR_MS)));
+
+        assertEquals(NOW_MS + 2 * HOUR_MS, ProgramScheduler.getFeedEndTimeMs(
+                listing.channels.get(0), listing.programs));
+    }
+
+    @Test
+    public void getFeedEndTimeMs_repeatedChannel_returnsMaxValue() {
+        XmlTvParser.TvListing listing = TestFeeds.parse(TestFeeds.feed(
+                TestFeeds.channel("a", true),
+                TestFeeds.program("a", "first", 0, HOUR_MS)));
+
+        assertEquals(Long.MAX_VALUE, ProgramScheduler.getFeedEndTimeMs(
+                listing.channels.get(0), listing.programs));
+    }
+
+    @Test
+    public void getFeedEndTimeMs_channelWithoutPrograms_returnsMinValue() {
+        XmlTvParser.TvListing listing = TestFeeds.parse(TestFeeds.feed(
+                TestFeeds.channel("a", false),
+                TestFeeds.channel("b", true)));
+        List<XmlTvParser.XmlTvProgram> noPrograms = Collections.emptyList();
+
+        assertEquals(Long.MIN_VALUE, ProgramScheduler.getFeedEndTimeMs(
+                listing.channels.get(0), noPrograms));
+        assertEquals(Long.MIN_VALUE, ProgramScheduler.getFeedEndTimeMs(
+                listing.channels.get(1), noPrograms));
+    }
+
+    private static final class Slot {
+        final XmlTvParser.XmlTvProgram program;
+        final long startTimeMs;
+        final long endTimeMs;
+
+        Slot(XmlTvParser.XmlTvProgram program, long startTimeMs, long endTimeMs) {
+            this.program = program;
+            this.startTimeMs = startTimeMs;
+            this.endTimeMs = endTimeMs;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput.xmltv;
+
+import org.kxml2.io.KXmlParser;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Builds small XMLTV feeds for the tests.
+ */
+public final class TestFeeds {
+    private TestFeeds() {
+    }
+
+    public static String feed(String... elements) {
+        StringBuilder feed =
+                new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<tv>\n");
+        for (String element : elements) {
+            feed.append(element).append('\n');
+        }
+        return feed.append("</tv>\n").toString();
+    }
+
+    public static String channel(String id, boolean repeatPrograms) {
+        return "<channel id=\"" + id + "\" repeat-programs=\"" + repeatPrograms + "\">"
+                + "<display-name>" + id + "</display-name>"
+                + "<display-number>1</display-number></channel>";
+    }
+
+    public static String program(String channelId, String title, long startTimeMs,
+            long endTimeMs) {
+        return "<programme channel=\"" + channelId + "\" start=\"" + formatTime(startTimeMs)
+                + "\" stop=\"" + formatTime(endTimeMs) + "\"><title>" + title + "</title>"
+                + "</programme>";
+    }
+
+    /**
+     * Returns the listing of the feed, or {@code null} if it can't be parsed in full.
+     */
+    public static XmlTvParser.TvListing parse(String feed) {
+        return XmlTvParser.parse(new KXmlParser(),
+                new ByteArrayInputStream(feed.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String formatTime(long timeMs) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMddHHmmss Z");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(timeMs));
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput.xmltv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.kxml2.io.KXmlParser;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class XmlTvParserTest {
+    private static final long HOUR_MS = 1000 * 60 * 60;
+    private static final long START_MS = 1000L * 60 * 60 * 24 * 365 * 45;
+
+    @Test
+    public void parse_feed_returnsChannelsAndPrograms() {
+        XmlTvParser.TvListing listing = TestFeeds.parse(TestFeeds.feed(
+                TestFeeds.channel("a", true),
+                TestFeeds.channel("b", false),
+                TestFeeds.program("a", "first", START_MS, START_MS + HOUR_MS),
+                "<programme channel=\"b\" start=\"19700101000000 +0100\""
+                        + " stop=\"19700101010000 +0000\"><title>second</title>"
+                        + "<desc>text</desc><category>News</category><category>Sports</category>"
+                        + "<rating system=\"com.android.tv\"><value>US_TV_PG</value></rating>"
+                        + "<rating system=\"other\"><value>12</value></rating>"
+                        + "</programme>"));
+
+        assertNotNull(listing);
+        assertEquals(2, listing.channels.size());
+        assertEquals("a", listing.channels.get(0).id);
+        assertTrue(listing.channels.get(0).repeatPrograms);
+        assertFalse(listing.channels.get(1).repeatPrograms);
+        assertEquals(2, listing.programs.size());
+        XmlTvParser.XmlTvProgram first = listing.programs.get(0);
+        assertEquals("first", first.title);
+        assertEquals(START_MS, first.startTimeUtcMillis);
+        assertEquals(HOUR_MS, first.getDurationMillis());
+        XmlTvParser.XmlTvProgram second = listing.programs.get(1);
+        assertEquals("b", second.channelId);
+        assertEquals("text", second.description);
+        // The time zones of the times are taken into account.
+        assertEquals(2 * HOUR_MS, second.getDurationMillis());
+        assertEquals(2, second.category.length);
+        assertEquals(2, second.rating.length);
+        assertEquals("US_TV_PG", XmlTvParser.getAndroidRatings(second.rating));
+    }
+
+    @Test
+    public void parse_truncatedFeed_returnsNull() {
+        String feed = TestFeeds.feed(TestFeeds.channel("a", false),
+                TestFeeds.program("a", "first", START_MS, START_MS + HOUR_MS));
+
+        assertNull(TestFeeds.parse(feed.substring(0, feed.length() / 2)));
+    }
+
+    @Test
+    public void parse_notXmlTv_returnsNull() {
+        assertNull(TestFeeds.parse("<?xml version=\"1.0\"?><rss></rss>"));
+        assertNull(TestFeeds.parse("not xml"));
+        assertNull(TestFeeds.parse(""));
+    }
+
+    @Test
+    public void parse_programWithoutStop_returnsNull() {
+        assertNull(TestFeeds.parse(TestFeeds.feed(TestFeeds.channel("a", false),
+                "<programme channel=\"a\" start=\"20150101000000 +0000\">"
+                        + "<title>first</title></programme>")));
+    }
+
+    @Test
+    public void parse_programWithBadTime_returnsNull() {
+        assertNull(TestFeeds.parse(TestFeeds.feed(TestFeeds.channel("a", false),
+                "<programme channel=\"a\" start=\"tomorrow\" stop=\"20150101000000 +0000\">"
+                        + "<title>first</title></programme>")));
+    }
+
+    @Test
+    public void parse_channelWithoutDisplayName_returnsNull() {
+        assertNull(TestFeeds.parse(TestFeeds.feed("<channel id=\"a\"></channel>")));
+    }
+
+    @Test
+    public void parse_emptyFeed_returnsEmptyListing() {
+        XmlTvParser.TvListing listing = TestFeeds.parse(TestFeeds.feed());
+
+        assertNotNull(listing);
+        assertTrue(listing.channels.isEmpty());
+        assertTrue(listing.programs.isEmpty());
+    }
+
+    @Test
+    public void parseWithListener_truncatedFeed_passesTheElementsBeforeTheCut() {
+        String feed = TestFeeds.feed(TestFeeds.channel("a", false),
+                TestFeeds.program("a", "first", START_MS, START_MS + HOUR_MS),
+                TestFeeds.program("a", "second", START_MS + HOUR_MS, START_MS + 2 * HOUR_MS));
+        String truncatedFeed = feed.substring(0, feed.indexOf("second"));
+        final List<String> elements = new ArrayList<>();
+
+        boolean parsed = XmlTvParser.parse(new KXmlParser(),
+                new ByteArrayInputStream(truncatedFeed.getBytes(StandardCharsets.UTF_8)),
+                new XmlTvParser.Listener() {
+                    @Override
+                    public void onChannel(XmlTvParser.XmlTvChannel channel) {
+                        elements.add(channel.id);
+                    }
+
+                    @Override
+                    public void onProgram(XmlTvParser.XmlTvProgram program) {
+                        elements.add(program.title);
+                    }
+                });
+
+        assertFalse(parsed);
+        assertEquals(2, elements.size());
+        assertEquals("a", elements.get(0));
+        assertEquals("first", elements.get(1));
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput.feedgen;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+
+/**
+ * Writes a {@link SyntheticFeed} to a file, or serves it over HTTP, as a stand-in for the feed of
+ * the rich input. Point the app at it with {@code adb shell dumpsys activity service
+ * com.example.android.sampletvinput/.syncadapter.SyncService feed-uri <uri>}, where the URI is
+ * e.g. {@code http://10.0.2.2:8080/feed.xml} from the emulator, or a {@code file} URI of a feed
+ * pushed to the device.
+ *
+ * <pre>
+ * feedgen [--channels N] [--programs N] [--duration MIN-MAX] [--repeat-percent N]
+ *         [--ratings R1,R2,...] [--unrated-percent N] [--description N]
+ *         [--malformed-percent N] [--seed N] [--now] (--out FILE | --serve PORT)
+ * </pre>
+ *
+ * <p>The server answers {@code GET /feed.xml} with an ETag, and with 304 Not Modified to a
+ * matching {@code If-None-Match}, like the real feed server.
+ */
+public final class FeedGenerator {
+    private static final String FEED_PATH = "/feed.xml";
+
+    private FeedGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        SyntheticFeed.Builder builder = new SyntheticFeed.Builder();
+        String outPath = null;
+        int port = -1;
+        for (int i = 0; i < args.length; ++i) {
+            String arg = args[i];
+            if ("--now".equals(arg)) {
+                // So that the programs are current when the app syncs them.
+                builder.setStartTimeMs(System.currentTimeMillis() / 3600000 * 3600000);
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                usage("Missing value of " + arg);
+            }
+            String value = args[++i];
+            if ("--channels".equals(arg)) {
+                builder.setChannelCount(Integer.parseInt(value));
+            } else if ("--programs".equals(arg)) {
+                builder.setProgramsPerChannel(Integer.parseInt(value));
+            } else if ("--duration".equals(arg)) {
+                String[] range = value.split("-");
+                builder.setDurationMinutes(Integer.parseInt(range[0]),
+                        Integer.parseInt(range[range.length - 1]));
+            } else if ("--repeat-percent".equals(arg)) {
+                builder.setRepeatChannelPercent(Integer.parseInt(value));
+            } else if ("--ratings".equals(arg)) {
+                builder.setRatings(value.isEmpty() ? new String[0] : value.split(","));
+            } else if ("--unrated-percent".equals(arg)) {
+                builder.setUnratedPercent(Integer.parseInt(value));
+            } else if ("--description".equals(arg)) {
+                builder.setDescriptionLength(Integer.parseInt(value));
+            } else if ("--malformed-percent".equals(arg)) {
+                builder.setMalformedPercent(Integer.parseInt(value));
+            } else if ("--seed".equals(arg)) {
+                builder.setSeed(Long.parseLong(value));
+            } else if ("--out".equals(arg)) {
+                outPath = value;
+            } else if ("--serve".equals(arg)) {
+                port = Integer.parseInt(value);
+            } else {
+                usage("Unknown option " + arg);
+            }
+        }
+        SyntheticFeed feed = builder.build();
+        if (outPath != null) {
+            try (OutputStream output = new BufferedOutputStream(new FileOutputStream(outPath))) {
+                feed.writeTo(output);
+            }
+            System.out.println("Wrote " + outPath);
+        } else if (port >= 0) {
+            serve(feed.toXml(), port);
+        } else {
+            usage("Either --out or --serve is required");
+        }
+    }
+
+    private static void serve(final byte[] feed, int port) throws IOException {
+        final String eTag = "\"" + Integer.toHexString(Arrays.hashCode(feed)) + "\"";
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext(FEED_PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    exchange.getResponseHeaders().set("ETag", eTag);
+                    if (eTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                        exchange.sendResponseHeaders(304, -1);
+                        return;
+                    }
+                    exchange.getResponseHeaders().set("Content-Type", "text/xml; charset=utf-8");
+                    if ("HEAD".equals(exchange.getRequestMethod())) {
+                        exchange.sendResponseHeaders(200, -1);
+                        return;
+                    }
+                    exchange.sendResponseHeaders(200, feed.length);
+                    exchange.getResponseBody().write(feed);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+        System.out.println("Serving " + feed.length + " bytes at http://localhost:" + port
+                + FEED_PATH);
+    }
+
+    private static void usage(String error) {
+        System.err.println(error);
+        System.err.println("Usage: feedgen [--channels N] [--programs N] [--duration MIN-MAX]"
+                + " [--repeat-percent N] [--ratings R1,R2,...] [--unrated-percent N]"
+                + " [--description N] [--malformed-percent N] [--seed N] [--now]"
+                + " (--out FILE | --serve PORT)");
+        System.exit(1);
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sampletvinput.feedgen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Generates an XMLTV feed in the format of the rich input, at any scale. The same parameters
+ * always generate the same feed, so that the runs of a test or a benchmark can be compared.
+ *
+ * <p>The feed is written as it is generated, so that large feeds don't have to fit in memory.
+ * Besides the lineup size, the share of repeated channels, the ratings, the length of the
+ * descriptions and the share of malformed programs can be set. See {@link Builder}.
+ */
+public final class SyntheticFeed {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    // 2015-06-01 00:00:00 UTC, so that the feed doesn't depend on when it is generated.
+    private static final long DEFAULT_START_TIME_MS = 1433116800000L;
+    private static final long MINUTE_MS = 60 * 1000;
+
+    private static final String[] WORDS = {
+            "news", "live", "morning", "evening", "report", "weather", "sports", "match", "final",
+            "season", "episode", "documentary", "nature", "ocean", "city", "history", "science",
+            "cooking", "travel", "music", "concert", "drama", "comedy", "movie", "classic"};
+    private static final String[] GENRES = {
+            "NEWS", "SPORTS", "MOVIES", "DRAMA", "COMEDY", "MUSIC", "TRAVEL", "EDUCATION"};
+    private static final String[] DEFAULT_RATINGS = {
+            "com.android.tv/US_TV/US_TV_Y", "com.android.tv/US_TV/US_TV_G",
+            "com.android.tv/US_TV/US_TV_PG", "com.android.tv/US_TV/US_TV_14",
+            "com.android.tv/US_TV/US_TV_MA"};
+    private static final String ANDROID_TV_RATING_SYSTEM = "com.android.tv";
+    private static final String[] VIDEO_TYPES = {"HTTP_PROGRESSIVE", "HLS", "MPEG_DASH"};
+    // The distinct titles of a channel. The programs reuse them like a real lineup does.
+    private static final int TITLES_PER_CHANNEL = 16;
+
+    // The ways a program can be malformed, in the order they are picked.
+    private static final int MALFORMED_NO_STOP = 0;
+    private static final int MALFORMED_BAD_TIME = 1;
+    private static final int MALFORMED_UNKNOWN_CHANNEL = 2;
+    private static final int MALFORMED_NO_ICON_SRC = 3;
+    private static final int MALFORMED_KIND_COUNT = 4;
+
+    private final int mChannelCount;
+    private final int mProgramsPerChannel;
+    private final int mMinDurationMinutes;
+    private final int mMaxDurationMinutes;
+    private final int mRepeatChannelPercent;
+    private final String[] mRatings;
+    private final int mUnratedPercent;
+    private final int mDescriptionLength;
+    private final int mMalformedPercent;
+    private final long mStartTimeMs;
+    private final long mSeed;
+
+    private SyntheticFeed(Builder builder) {
+        mChannelCount = builder.mChannelCount;
+        mProgramsPerChannel = builder.mProgramsPerChannel;
+        mMinDurationMinutes = builder.mMinDurationMinutes;
+        mMaxDurationMinutes = builder.mMaxDurationMinutes;
+        mRepeatChannelPercent = builder.mRepeatChannelPercent;
+        mRatings = builder.mRatings;
+        mUnratedPercent = builder.mUnratedPercent;
+        mDescriptionLength = builder.mDescriptionLength;
+        mMalformedPercent = builder.mMalformedPercent;
+        mStartTimeMs = builder.mStartTimeMs;
+        mSeed = builder.mSeed;
+    }
+
+    public byte[] toXml() {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            writeTo(output);
+        } catch (IOException e) {
+            // Not thrown by ByteArrayOutputStream.
+            throw new IllegalStateException(e);
+        }
+        return output.toByteArray();
+    }
+
+    public String toXmlString() {
+        return new String(toXml(), UTF_8);
+    }
+
+    /**
+     * Writes the feed in UTF-8. The stream is flushed but not closed.
+     */
+    public void writeTo(OutputStream output) throws IOException {
+        Writer writer = new OutputStreamWriter(output, UTF_8);
+        writeTo(writer);
+        writer.flush();
+    }
+
+    public void writeTo(Writer writer) throws IOException {
+        Random random = new Random(mSeed);
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMddHHmmss Z", Locale.US);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<tv>\n");
+        for (int i = 0; i < mChannelCount; ++i) {
+            boolean repeatPrograms = random.nextInt(100) < mRepeatChannelPercent;
+            xml.append("<channel id=\"ch").append(i).append("\" repeat-programs=\"")
+                    .append(repeatPrograms).append("\">\n")
+                    .append("  <display-name>Channel ").append(i).append("</display-name>\n")
+                    .append("  <display-number>").append(i / 10 + 1).append('-')
+                    .append(i % 10 + 1).append("</display-number>\n")
+                    .append("  <icon src=\"http://example.com/logo/").append(i)
+                    .append(".png\"/>\n</channel>\n");
+            writer.append(xml);
+            xml.setLength(0);
+        }
+        int durationSteps = (mMaxDurationMinutes - mMinDurationMinutes) / 5 + 1;
+        for (int i = 0; i < mChannelCount; ++i) {
+            String[] titles = new String[TITLES_PER_CHANNEL];
+            for (int j = 0; j < titles.length; ++j) {
+                titles[j] = appendWords(new StringBuilder(), random, 16).toString();
+            }
+            long startMs = mStartTimeMs;
+            for (int j = 0; j < mProgramsPerChannel; ++j) {
+                // In steps of 5 minutes.
+                long endMs = startMs
+                        + (mMinDurationMinutes + random.nextInt(durationSteps) * 5) * MINUTE_MS;
+                int title = random.nextInt(titles.length);
+                int malformed = random.nextInt(100) < mMalformedPercent
+                        ? random.nextInt(MALFORMED_KIND_COUNT) : -1;
+                String start = malformed == MALFORMED_BAD_TIME ? "tomorrow"
+                        : dateFormat.format(new Date(startMs));
+                String channelId = malformed == MALFORMED_UNKNOWN_CHANNEL ? "unknown" : "ch" + i;
+                xml.append("<programme start=\"").append(start).append('"');
+                if (malformed != MALFORMED_NO_STOP) {
+                    xml.append(" stop=\"").append(dateFormat.format(new Date(endMs))).append('"');
+                }
+                xml.append(" channel=\"").append(channelId)
+                        .append("\" video-src=\"http://example.com/video/").append(i).append('/')
+                        .append(title).append(".m3u8\" video-type=\"")
+                        .append(VIDEO_TYPES[random.nextInt(VIDEO_TYPES.length)]).append("\">\n")
+                        .append("  <title>").append(titles[title]).append("</title>\n")
+                        .append("  <desc>");
+                appendWords(xml, random, mDescriptionLength).append("</desc>\n");
+                if (malformed == MALFORMED_NO_ICON_SRC) {
+                    xml.append("  <icon/>\n");
+                } else {
+                    xml.append("  <icon src=\"http://example.com/poster/").append(i).append('/')
+                            .append(title).append(".jpg\"/>\n");
+                }
+                xml.append("  <category>").append(GENRES[random.nextInt(GENRES.length)])
+                        .append("</category>\n");
+                if (mRatings.length > 0 && random.nextInt(100) >= mUnratedPercent) {
+                    String rating = mRatings[random.nextInt(mRatings.length)];
+                    xml.append("  <rating system=\"").append(getRatingSystem(rating))
+                            .append("\"><value>").append(escape(rating))
+                            .append("</value></rating>\n");
+                }
+                xml.append("</programme>\n");
+                writer.append(xml);
+                xml.setLength(0);
+                startMs = endMs;
+            }
+        }
+        writer.append("</tv>\n");
+    }
+
+    /**
+     * Returns the system of the rating, {@code com.android.tv} for the flattened Android TV
+     * ratings, e.g. {@code com.android.tv/US_TV/US_TV_PG}, and otherwise the part before the
+     * first slash, e.g. {@code MPAA} for {@code MPAA/PG}.
+     */
+    private static String getRatingSystem(String rating) {
+        if (rating.startsWith(ANDROID_TV_RATING_SYSTEM + "/")) {
+            return ANDROID_TV_RATING_SYSTEM;
+        }
+        int slash = rating.indexOf('/');
+        return escape(slash < 0 ? rating : rating.substring(0, slash));
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;")
+                .replace("\"", "&quot;");
+    }
+
+    /**
+     * Appends random words until at least {@code length} characters are appended.
+     */
+    private static StringBuilder appendWords(StringBuilder builder, Random random, int length) {
+        int end = builder.length() + length;
+        while (builder.length() < end) {
+            if (builder.length() > end - length) {
+                builder.append(' ');
+            }
+            builder.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return builder;
+    }
+
+    public static final class Builder {
+        private int mChannelCount = 20;
+        private int mProgramsPerChannel = 100;
+        private int mMinDurationMinutes = 15;
+        private int mMaxDurationMinutes = 120;
+        private int mRepeatChannelPercent;
+        private String[] mRatings = DEFAULT_RATINGS;
+        private int mUnratedPercent;
+        private int mDescriptionLength = 200;
+        private int mMalformedPercent;
+        private long mStartTimeMs = DEFAULT_START_TIME_MS;
+        private long mSeed;
+
+        public Builder setChannelCount(int channelCount) {
+            mChannelCount = channelCount;
+            return this;
+        }
+
+        public Builder setProgramsPerChannel(int programsPerChannel) {
+            mProgramsPerChannel = programsPerChannel;
+            return this;
+        }
+
+        /**
+         * Sets the range of the program durations, which sets how densely the programs are
+         * packed. They are rounded down to multiples of 5 minutes.
+         */
+        public Builder setDurationMinutes(int minDurationMinutes, int maxDurationMinutes) {
+            if (minDurationMinutes < 5 || maxDurationMinutes < minDurationMinutes) {
+                throw new IllegalArgumentException(
+                        "Invalid durations: " + minDurationMinutes + "-" + maxDurationMinutes);
+            }
+            mMinDurationMinutes = minDurationMinutes - minDurationMinutes % 5;
+            mMaxDurationMinutes = maxDurationMinutes - maxDurationMinutes % 5;
+            return this;
+        }
+
+        /** Sets the share of the channels whose programs repeat in a loop. */
+        public Builder setRepeatChannelPercent(int repeatChannelPercent) {
+            mRepeatChannelPercent = repeatChannelPercent;
+            return this;
+        }
+
+        /** Makes every channel repeat its programs in a loop, or none. */
+        public Builder setRepeatPrograms(boolean repeatPrograms) {
+            return setRepeatChannelPercent(repeatPrograms ? 100 : 0);
+        }
+
+        /**
+         * Sets the ratings to pick from, which may be repeated to weight them. The flattened
+         * Android TV ratings, e.g. {@code com.android.tv/US_TV/US_TV_PG}, get the
+         * {@code com.android.tv} system, and other ones, e.g. {@code MPAA/PG}, the system before
+         * the slash, which the app ignores.
+         */
+        public Builder setRatings(String... ratings) {
+            mRatings = ratings.clone();
+            return this;
+        }
+
+        /** Sets the share of the programs without a rating. */
+        public Builder setUnratedPercent(int unratedPercent) {
+            mUnratedPercent = unratedPercent;
+            return this;
+        }
+
+        /** Sets the length of the descriptions in characters. */
+        public Builder setDescriptionLength(int descriptionLength) {
+            mDescriptionLength = descriptionLength;
+            return this;
+        }
+
+        /**
+         * Sets the share of the programs which are malformed: no stop time, an unparsable start
+         * time, an unknown channel or an icon without a source.
+         */
+        public Builder setMalformedPercent(int malformedPercent) {
+            mMalformedPercent = malformedPercent;
+            return this;
+        }
+
+        /**
+         * Sets when the programs of every channel start. A fixed time by default, so that the feed
+         * is the same whenever it is generated.
+         */
+        public Builder setStartTimeMs(long startTimeMs) {
+            mStartTimeMs = startTimeMs;
+            return this;
+        }
+
+        public Builder setSeed(long seed) {
+            mSeed = seed;
+            return this;
+        }
+
+        public SyntheticFeed build() {
+            return new SyntheticFeed(this);
+        }
+    }
+}